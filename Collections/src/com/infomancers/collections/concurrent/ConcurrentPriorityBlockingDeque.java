@@ -0,0 +1,762 @@
+package com.infomancers.collections.concurrent;
+
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * An optionally-bounded {@linkplain BlockingDeque blocking deque} based on
+ * a {@linkplain ConcurrentSkipListMap concurrent skip list}.
+ * <p/>
+ * <p>Unlike {@link PriorityBlockingDeque}, the non-blocking operations
+ * (<tt>offer</tt>, <tt>poll</tt>, <tt>peek</tt> and their variants) never
+ * acquire a lock, so many producers and consumers can work on the deque at
+ * the same time. A lock is only taken by threads which have to block in
+ * <tt>take</tt> or <tt>put</tt> because the deque is empty or full, and by
+ * the threads which wake them up.
+ * <p/>
+ * <p>Elements which are equal according to the ordering are kept in
+ * insertion order: <tt>pollFirst</tt> returns the earliest inserted of
+ * them, and <tt>pollLast</tt> the latest.
+ * <p/>
+ * <p>The optional capacity bound constructor argument serves as a
+ * way to prevent excessive expansion. The capacity, if unspecified,
+ * is equal to {@link Integer#MAX_VALUE}.
+ * <p/>
+ * <p>Unlike most collections, the <tt>size</tt> method is a constant-time
+ * operation; it may however include elements which are in the middle of
+ * being inserted. Iterators are <i>weakly consistent</i>, returning
+ * elements reflecting the state of the deque at some point at or since the
+ * creation of the iterator.
+ *
+ * @author Aviad Ben Dov
+ * @param <E> the type of elements held in this collection
+ * @since 0.4
+ */
+public class ConcurrentPriorityBlockingDeque<E>
+        extends AbstractQueue<E>
+        implements BlockingDeque<E>, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Every element is wrapped in a node carrying a sequence number, which
+     * breaks ties between elements the ordering considers equal. The count
+     * is reserved before a node is inserted and released after it is
+     * removed, so that it never goes below the number of nodes in the map
+     * and never above the capacity.
+     *
+     * Blocked threads register themselves in a waiter count while holding
+     * the lock and then check the map again before awaiting; threads which
+     * change the map check the waiter count afterwards and only take the
+     * lock to signal when someone is waiting.
+     */
+
+    private final int capacity;
+
+    private final ConcurrentSkipListMap<Node<E>, Boolean> map;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Lock guarding the conditions; never held by non-blocking operations.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition for waiting takes
+     */
+    private final Condition notEmpty = lock.newCondition();
+    /**
+     * Condition for waiting puts
+     */
+    private final Condition notFull = lock.newCondition();
+
+    private final AtomicInteger waitingTakers = new AtomicInteger();
+
+    private final AtomicInteger waitingPutters = new AtomicInteger();
+
+    /**
+     * Creates a <tt>ConcurrentPriorityBlockingDeque</tt> with a capacity of
+     * {@link Integer#MAX_VALUE}.
+     */
+    public ConcurrentPriorityBlockingDeque() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a <tt>ConcurrentPriorityBlockingDeque</tt> with the given (fixed) capacity.
+     *
+     * @param capacity the capacity of this deque
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public ConcurrentPriorityBlockingDeque(int capacity) {
+        this(null, capacity);
+    }
+
+    public ConcurrentPriorityBlockingDeque(Comparator<E> comparator, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.map = new ConcurrentSkipListMap<Node<E>, Boolean>(new NodeComparator<E>(comparator));
+    }
+
+    /**
+     * An element together with its insertion sequence number.
+     */
+    private static final class Node<E> implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final E item;
+        final long seq;
+
+        Node(E item, long seq) {
+            this.item = item;
+            this.seq = seq;
+        }
+    }
+
+    private static final class NodeComparator<E> implements Comparator<Node<E>>, java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Comparator<E> comparator;
+
+        NodeComparator(Comparator<E> comparator) {
+            this.comparator = comparator;
+        }
+
+        @SuppressWarnings("unchecked")
+        public int compare(Node<E> a, Node<E> b) {
+            int result = comparator == null ? ((Comparable<E>) a.item).compareTo(b.item) : comparator.compare(a.item, b.item);
+            if (result != 0)
+                return result;
+
+            return a.seq < b.seq ? -1 : (a.seq > b.seq ? 1 : 0);
+        }
+    }
+
+    // Basic adding and removing operations, never blocking
+
+    /**
+     * Adds e or returns false if full.
+     *
+     * @param e The element to add.
+     * @return Whether adding was successful.
+     */
+    private boolean innerAdd(E e) {
+        for (; ;) {
+            int c = count.get();
+            if (c >= capacity)
+                return false;
+            if (count.compareAndSet(c, c + 1))
+                break;
+        }
+
+        map.put(new Node<E>(e, sequence.getAndIncrement()), Boolean.TRUE);
+        signalIfWaiting(waitingTakers, notEmpty);
+
+        return true;
+    }
+
+    /**
+     * Removes and returns first element, or null if empty.
+     *
+     * @return The removed element.
+     */
+    private E innerRemoveFirst() {
+        Map.Entry<Node<E>, Boolean> f = map.pollFirstEntry();
+        if (f == null)
+            return null;
+
+        released(1);
+        return f.getKey().item;
+    }
+
+    /**
+     * Removes and returns last element, or null if empty.
+     *
+     * @return The removed element.
+     */
+    private E innerRemoveLast() {
+        Map.Entry<Node<E>, Boolean> l = map.pollLastEntry();
+        if (l == null)
+            return null;
+
+        released(1);
+        return l.getKey().item;
+    }
+
+    private boolean innerRemove(Node<E> node) {
+        if (map.remove(node) == null)
+            return false;
+
+        released(1);
+        return true;
+    }
+
+    private void released(int n) {
+        count.addAndGet(-n);
+        signalIfWaiting(waitingPutters, notFull);
+    }
+
+    private void signalIfWaiting(AtomicInteger waiters, Condition condition) {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // BlockingDeque methods
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void addFirst(E e) {
+        if (!offerFirst(e))
+            throw new IllegalStateException("Deque full");
+    }
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void addLast(E e) {
+        if (!offerLast(e))
+            throw new IllegalStateException("Deque full");
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerFirst(E e) {
+        if (e == null) throw new NullPointerException();
+        return innerAdd(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerLast(E e) {
+        if (e == null) throw new NullPointerException();
+        return innerAdd(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putFirst(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putLast(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offerFirst(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offerLast(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Adds an element, waiting if necessary for space to become available.
+     *
+     * @param e     The element to add.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return Whether adding was successful.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean innerPut(E e, boolean timed, long nanos) throws InterruptedException {
+        if (innerAdd(e))
+            return true;
+
+        lock.lockInterruptibly();
+        waitingPutters.incrementAndGet();
+        try {
+            for (; ;) {
+                if (innerAdd(e))
+                    return true;
+                if (timed && nanos <= 0)
+                    return false;
+                if (timed)
+                    nanos = notFull.awaitNanos(nanos);
+                else
+                    notFull.await();
+            }
+        } finally {
+            waitingPutters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeFirst() {
+        E x = pollFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeLast() {
+        E x = pollLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    public E pollFirst() {
+        return innerRemoveFirst();
+    }
+
+    public E pollLast() {
+        return innerRemoveLast();
+    }
+
+    public E takeFirst() throws InterruptedException {
+        return innerTake(true, false, 0);
+    }
+
+    public E takeLast() throws InterruptedException {
+        return innerTake(false, false, 0);
+    }
+
+    public E pollFirst(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTake(true, true, unit.toNanos(timeout));
+    }
+
+    public E pollLast(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTake(false, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes an element from either end, waiting if necessary.
+     *
+     * @param first Whether to remove the first or the last element.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return The removed element, or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private E innerTake(boolean first, boolean timed, long nanos) throws InterruptedException {
+        E x = first ? innerRemoveFirst() : innerRemoveLast();
+        if (x != null)
+            return x;
+
+        lock.lockInterruptibly();
+        waitingTakers.incrementAndGet();
+        try {
+            for (; ;) {
+                x = first ? innerRemoveFirst() : innerRemoveLast();
+                if (x != null)
+                    return x;
+                if (timed && nanos <= 0)
+                    return null;
+                if (timed)
+                    nanos = notEmpty.awaitNanos(nanos);
+                else
+                    notEmpty.await();
+            }
+        } finally {
+            waitingTakers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getFirst() {
+        E x = peekFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getLast() {
+        E x = peekLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    public E peekFirst() {
+        Map.Entry<Node<E>, Boolean> f = map.firstEntry();
+        return f == null ? null : f.getKey().item;
+    }
+
+    public E peekLast() {
+        Map.Entry<Node<E>, Boolean> l = map.lastEntry();
+        return l == null ? null : l.getKey().item;
+    }
+
+    public boolean removeFirstOccurrence(Object o) {
+        if (o == null) return false;
+        for (Node<E> node : map.keySet()) {
+            if (o.equals(node.item) && innerRemove(node))
+                return true;
+        }
+        return false;
+    }
+
+    public boolean removeLastOccurrence(Object o) {
+        if (o == null) return false;
+        for (Node<E> node : map.descendingKeySet()) {
+            if (o.equals(node.item) && innerRemove(node))
+                return true;
+        }
+        return false;
+    }
+
+    // BlockingQueue methods
+
+    /**
+     * Inserts the specified element to the deque unless it would
+     * violate capacity restrictions.  When using a capacity-restricted deque,
+     * it is generally preferable to use method {@link #offer(Object) offer}.
+     * <p/>
+     * <p>This method is equivalent to {@link #addLast}.
+     *
+     * @throws IllegalStateException if the element cannot be added at this
+     *                               time due to capacity restrictions
+     * @throws NullPointerException  if the specified element is null
+     */
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        return offerLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void put(E e) throws InterruptedException {
+        putLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return offerLast(e, timeout, unit);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     * This method differs from {@link #poll poll} only in that it throws an
+     * exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #removeFirst() removeFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    public E poll() {
+        return pollFirst();
+    }
+
+    public E take() throws InterruptedException {
+        return takeFirst();
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return pollFirst(timeout, unit);
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.  This method differs from {@link #peek peek} only in that
+     * it throws an exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #getFirst() getFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    public E peek() {
+        return peekFirst();
+    }
+
+    /**
+     * Returns the number of additional elements that this deque can ideally
+     * (in the absence of memory or resource constraints) accept without
+     * blocking. This is always equal to the initial capacity of this deque
+     * less the current <tt>size</tt> of this deque.
+     * <p/>
+     * <p>Note that you <em>cannot</em> always tell if an attempt to insert
+     * an element will succeed by inspecting <tt>remainingCapacity</tt>
+     * because it may be the case that another thread is about to
+     * insert or remove an element.
+     */
+    public int remainingCapacity() {
+        return capacity - count.get();
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+
+        return innerDrain(c, maxElements);
+    }
+
+    /**
+     * Removes up to maxElements from the head of the deque, waking up
+     * all waiting putters once at the end.
+     *
+     * @param c           The collection to add the elements to, or null to discard them.
+     * @param maxElements The maximal amount of elements to remove.
+     * @return The amount of removed elements.
+     */
+    private int innerDrain(Collection<? super E> c, int maxElements) {
+        int n = 0;
+        Map.Entry<Node<E>, Boolean> e;
+        while (n < maxElements && (e = map.pollFirstEntry()) != null) {
+            if (c != null)
+                c.add(e.getKey().item);
+            ++n;
+        }
+
+        if (n > 0) {
+            count.addAndGet(-n);
+            if (waitingPutters.get() > 0) {
+                lock.lock();
+                try {
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return n;
+    }
+
+    // Stack methods
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E pop() {
+        return removeFirst();
+    }
+
+    // Collection methods
+
+    /**
+     * Removes the first occurrence of the specified element from this deque.
+     * If the deque does not contain the element, it is unchanged.
+     * More formally, removes the first element <tt>e</tt> such that
+     * <tt>o.equals(e)</tt> (if such an element exists).
+     * Returns <tt>true</tt> if this deque contained the specified element
+     * (or equivalently, if this deque changed as a result of the call).
+     * <p/>
+     * <p>This method is equivalent to
+     * {@link #removeFirstOccurrence(Object) removeFirstOccurrence}.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return <tt>true</tt> if this deque changed as a result of the call
+     */
+    @Override
+    public boolean remove(Object o) {
+        return removeFirstOccurrence(o);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this deque contains the specified element.
+     * More formally, returns <tt>true</tt> if and only if this deque contains
+     * at least one element <tt>e</tt> such that <tt>o.equals(e)</tt>.
+     *
+     * @param o object to be checked for containment in this deque
+     * @return <tt>true</tt> if this deque contains the specified element
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        for (Node<E> node : map.keySet()) {
+            if (o.equals(node.item))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all of the elements from this deque.
+     */
+    @Override
+    public void clear() {
+        innerDrain(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in proper sequence.
+     * The elements will be returned in order from first (head) to last (tail).
+     * The returned iterator is weakly consistent.
+     *
+     * @return an iterator over the elements in this deque in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(map.keySet().iterator());
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in reverse
+     * sequential order. The elements will be returned in order from
+     * last (tail) to first (head). The returned iterator is weakly consistent.
+     *
+     * @return an iterator over the elements in this deque in reverse order
+     */
+    public Iterator<E> descendingIterator() {
+        return new Itr(map.descendingKeySet().iterator());
+    }
+
+    private class Itr implements Iterator<E> {
+        private final Iterator<Node<E>> nodes;
+        private Node<E> lastRet;
+
+        Itr(Iterator<Node<E>> nodes) {
+            this.nodes = nodes;
+        }
+
+        public boolean hasNext() {
+            return nodes.hasNext();
+        }
+
+        public E next() {
+            lastRet = nodes.next();
+            return lastRet.item;
+        }
+
+        public void remove() {
+            if (lastRet == null)
+                throw new IllegalStateException();
+
+            innerRemove(lastRet);
+            lastRet = null;
+        }
+    }
+}
@@ -0,0 +1,783 @@
+package com.infomancers.collections.concurrent;
+
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * An unbounded {@linkplain BlockingDeque blocking deque} of
+ * {@link Delayed} elements, ordered by their delay.
+ * <p/>
+ * <p>The head of the deque is the element whose delay expires first.
+ * Like {@link java.util.concurrent.DelayQueue}, the head can only be
+ * removed once its delay has expired: <tt>pollFirst</tt> returns
+ * <tt>null</tt> and <tt>takeFirst</tt> waits until then. Only one of the
+ * threads waiting in <tt>takeFirst</tt> waits for the delay of the head
+ * to expire; the others wait until they are needed.
+ * <p/>
+ * <p>The tail of the deque is the element whose delay expires last. It
+ * can be removed at any time, regardless of its delay, so that the
+ * furthest scheduled elements can be cancelled or handed elsewhere:
+ * <tt>pollLast</tt> only returns <tt>null</tt> and <tt>takeLast</tt>
+ * only waits when the deque is empty.
+ * <p/>
+ * <p><tt>peekFirst</tt> and <tt>peekLast</tt> return the elements at the
+ * ends of the deque whether their delay has expired or not, and
+ * <tt>drainTo</tt> only removes expired elements.
+ * <p/>
+ * <p>The elements are kept in a {@link PriorityBlockingDeque}, and the
+ * iterators of this deque iterate over it. Their <tt>remove</tt> wakes
+ * up the waiters for the head like the other removals do.
+ *
+ * @author Aviad Ben Dov
+ * @param <E> the type of elements held in this collection
+ * @since 0.4
+ */
+public class DelayBlockingDeque<E extends Delayed>
+        extends AbstractQueue<E>
+        implements BlockingDeque<E>, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * All access to the underlying deque is made while holding the lock,
+     * so that checking the delay of the head and removing it is atomic.
+     *
+     * Threads waiting for the head follow the leader/follower pattern of
+     * DelayQueue: the leader waits for the delay of the head, followers
+     * wait indefinitely. Whenever the head changes the leader is reset
+     * and a waiter is woken up to become the new leader. Threads waiting
+     * for the tail only wait for the deque to become non-empty, on a
+     * separate condition.
+     */
+
+    private final PriorityBlockingDeque<E> deque = new PriorityBlockingDeque<E>();
+    /**
+     * Main lock guarding all access
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition for waiting takes of the first element
+     */
+    private final Condition available = lock.newCondition();
+    /**
+     * Condition for waiting takes of the last element
+     */
+    private final Condition notEmpty = lock.newCondition();
+    /**
+     * The thread waiting for the delay of the head to expire, if any.
+     */
+    private transient Thread leader;
+
+    /**
+     * Creates an empty <tt>DelayBlockingDeque</tt>.
+     */
+    public DelayBlockingDeque() {
+    }
+
+    /**
+     * Creates a <tt>DelayBlockingDeque</tt> initially containing the
+     * elements of the given collection.
+     *
+     * @param c the elements to add
+     * @throws NullPointerException if the collection or any of its elements is null
+     */
+    public DelayBlockingDeque(Collection<? extends E> c) {
+        deque.offerAll(c);
+    }
+
+    // Basic adding and removing operations, called only while holding lock
+
+    /**
+     * Adds e, waking up waiters as needed.
+     *
+     * @param e The element to add.
+     */
+    private void innerAdd(E e) {
+        deque.offer(e);
+        if (deque.peekFirst() == e) {
+            leader = null;
+            available.signal();
+        }
+        notEmpty.signal();
+    }
+
+    /**
+     * Removes and returns the first element if its delay has expired.
+     *
+     * @return The removed element, or null if there is none.
+     */
+    private E innerRemoveExpired() {
+        E first = deque.peekFirst();
+        if (first == null || first.getDelay(TimeUnit.NANOSECONDS) > 0)
+            return null;
+
+        return deque.pollFirst();
+    }
+
+    /**
+     * Wakes up the next waiter for the head, unless a leader is already
+     * waiting for it.
+     */
+    private void signalNextIfNeeded() {
+        if (leader == null && !deque.isEmpty())
+            available.signal();
+    }
+
+    /**
+     * Removes an expired first element, waiting if necessary.
+     *
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return The removed element, or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private E innerTakeFirst(boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (; ;) {
+                E first = deque.peekFirst();
+                if (first == null) {
+                    if (timed && nanos <= 0)
+                        return null;
+                    if (timed)
+                        nanos = available.awaitNanos(nanos);
+                    else
+                        available.await();
+                    continue;
+                }
+
+                long delay = first.getDelay(TimeUnit.NANOSECONDS);
+                if (delay <= 0)
+                    return deque.pollFirst();
+                if (timed && nanos <= 0)
+                    return null;
+
+                if (leader != null || (timed && nanos < delay)) {
+                    if (timed)
+                        nanos = available.awaitNanos(nanos);
+                    else
+                        available.await();
+                } else {
+                    Thread thisThread = Thread.currentThread();
+                    leader = thisThread;
+                    try {
+                        long left = available.awaitNanos(delay);
+                        if (timed)
+                            nanos -= delay - left;
+                    } finally {
+                        if (leader == thisThread)
+                            leader = null;
+                    }
+                }
+            }
+        } finally {
+            signalNextIfNeeded();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the last element regardless of its delay, waiting if
+     * necessary for the deque to become non-empty.
+     *
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return The removed element, or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private E innerTakeLast(boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (; ;) {
+                E x = innerRemoveLast();
+                if (x != null)
+                    return x;
+                if (timed && nanos <= 0)
+                    return null;
+                if (timed)
+                    nanos = notEmpty.awaitNanos(nanos);
+                else
+                    notEmpty.await();
+            }
+        } finally {
+            if (!deque.isEmpty())
+                notEmpty.signal();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the last element, or null if empty.
+     *
+     * @return The removed element.
+     */
+    private E innerRemoveLast() {
+        E last = deque.pollLast();
+        if (last != null && deque.isEmpty()) {
+            // the head was removed as well; let the leader go
+            leader = null;
+        }
+        return last;
+    }
+
+    // BlockingDeque methods
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void addFirst(E e) {
+        offerFirst(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void addLast(E e) {
+        offerLast(e);
+    }
+
+    /**
+     * Inserts the specified element into this deque. As the deque is
+     * unbounded this method never returns <tt>false</tt>; the position of
+     * the element is determined by its delay.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerFirst(E e) {
+        if (e == null) throw new NullPointerException();
+        lock.lock();
+        try {
+            innerAdd(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the specified element into this deque. As the deque is
+     * unbounded this method never returns <tt>false</tt>; the position of
+     * the element is determined by its delay.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerLast(E e) {
+        return offerFirst(e);
+    }
+
+    /**
+     * Inserts the specified element into this deque. As the deque is
+     * unbounded this method never blocks.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void putFirst(E e) {
+        offerFirst(e);
+    }
+
+    /**
+     * Inserts the specified element into this deque. As the deque is
+     * unbounded this method never blocks.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void putLast(E e) {
+        offerFirst(e);
+    }
+
+    /**
+     * Inserts the specified element into this deque. As the deque is
+     * unbounded this method never blocks.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerFirst(E e, long timeout, TimeUnit unit) {
+        return offerFirst(e);
+    }
+
+    /**
+     * Inserts the specified element into this deque. As the deque is
+     * unbounded this method never blocks.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerLast(E e, long timeout, TimeUnit unit) {
+        return offerFirst(e);
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeFirst() {
+        E x = pollFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeLast() {
+        E x = pollLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * Retrieves and removes the first element of this deque, or returns
+     * <tt>null</tt> if this deque has no elements with an expired delay.
+     *
+     * @return the first element of this deque, or <tt>null</tt> if this
+     *         deque has no elements with an expired delay
+     */
+    public E pollFirst() {
+        lock.lock();
+        try {
+            E x = innerRemoveExpired();
+            if (x != null)
+                signalNextIfNeeded();
+            return x;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the last element of this deque, whether its
+     * delay has expired or not, or returns <tt>null</tt> if this deque is
+     * empty.
+     *
+     * @return the last element of this deque, or <tt>null</tt> if this
+     *         deque is empty
+     */
+    public E pollLast() {
+        lock.lock();
+        try {
+            return innerRemoveLast();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the first element of this deque, waiting if
+     * necessary until an element with an expired delay is available.
+     *
+     * @return the first element of this deque
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public E takeFirst() throws InterruptedException {
+        return innerTakeFirst(false, 0);
+    }
+
+    /**
+     * Retrieves and removes the last element of this deque, whether its
+     * delay has expired or not, waiting if necessary until an element is
+     * available.
+     *
+     * @return the last element of this deque
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public E takeLast() throws InterruptedException {
+        return innerTakeLast(false, 0);
+    }
+
+    /**
+     * Retrieves and removes the first element of this deque, waiting up
+     * to the specified wait time if necessary until an element with an
+     * expired delay is available.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public E pollFirst(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTakeFirst(true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Retrieves and removes the last element of this deque, whether its
+     * delay has expired or not, waiting up to the specified wait time if
+     * necessary until an element is available.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public E pollLast(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTakeLast(true, unit.toNanos(timeout));
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getFirst() {
+        E x = peekFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getLast() {
+        E x = peekLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * Retrieves, but does not remove, the first element of this deque,
+     * whether its delay has expired or not.
+     *
+     * @return the first element of this deque, or <tt>null</tt> if this deque is empty
+     */
+    public E peekFirst() {
+        lock.lock();
+        try {
+            return deque.peekFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves, but does not remove, the last element of this deque,
+     * whether its delay has expired or not.
+     *
+     * @return the last element of this deque, or <tt>null</tt> if this deque is empty
+     */
+    public E peekLast() {
+        lock.lock();
+        try {
+            return deque.peekLast();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean removeFirstOccurrence(Object o) {
+        lock.lock();
+        try {
+            return innerRemoveOccurrence(o, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean removeLastOccurrence(Object o) {
+        lock.lock();
+        try {
+            return innerRemoveOccurrence(o, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean innerRemoveOccurrence(Object o, boolean first) {
+        E head = deque.peekFirst();
+        if (!(first ? deque.removeFirstOccurrence(o) : deque.removeLastOccurrence(o)))
+            return false;
+
+        signalIfHeadChanged(head);
+        return true;
+    }
+
+    /**
+     * Resets the leader and wakes up a waiter for the head if the head
+     * is no longer the given element, so that the new head's delay is
+     * waited for instead of the old one's.
+     *
+     * @param head The head before the removal.
+     */
+    private void signalIfHeadChanged(E head) {
+        if (deque.peekFirst() != head) {
+            leader = null;
+            available.signal();
+        }
+    }
+
+    // BlockingQueue methods
+
+    /**
+     * Inserts the specified element into this deque.
+     * <p/>
+     * <p>This method is equivalent to {@link #addLast}.
+     *
+     * @throws NullPointerException if the specified element is null
+     */
+    @Override
+    public boolean add(E e) {
+        return offerLast(e);
+    }
+
+    /**
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        return offerLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void put(E e) {
+        putLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offerLast(e, timeout, unit);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     * This method differs from {@link #poll poll} only in that it throws an
+     * exception if this deque has no elements with an expired delay.
+     * <p/>
+     * <p>This method is equivalent to {@link #removeFirst() removeFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque has no elements with an expired delay
+     */
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    public E poll() {
+        return pollFirst();
+    }
+
+    public E take() throws InterruptedException {
+        return takeFirst();
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return pollFirst(timeout, unit);
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.  This method differs from {@link #peek peek} only in that
+     * it throws an exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #getFirst() getFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    public E peek() {
+        return peekFirst();
+    }
+
+    /**
+     * Always returns <tt>Integer.MAX_VALUE</tt> because a
+     * <tt>DelayBlockingDeque</tt> is not capacity constrained.
+     *
+     * @return <tt>Integer.MAX_VALUE</tt>
+     */
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Removes all elements with an expired delay from this deque and adds
+     * them to the given collection.
+     *
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of elements with an expired delay
+     * from this deque and adds them to the given collection.
+     *
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        lock.lock();
+        try {
+            int n = 0;
+            E x;
+            while (n < maxElements && (x = innerRemoveExpired()) != null) {
+                c.add(x);
+                ++n;
+            }
+
+            if (n > 0)
+                signalNextIfNeeded();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stack methods
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E pop() {
+        return removeFirst();
+    }
+
+    // Collection methods
+
+    /**
+     * Removes a single instance of the specified element from this deque,
+     * if it is present, whether or not its delay has expired.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return <tt>true</tt> if this deque changed as a result of the call
+     */
+    @Override
+    public boolean remove(Object o) {
+        return removeFirstOccurrence(o);
+    }
+
+    /**
+     * Returns the number of elements in this deque, whether their delay
+     * has expired or not.
+     *
+     * @return the number of elements in this deque
+     */
+    @Override
+    public int size() {
+        return deque.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return deque.contains(o);
+    }
+
+    /**
+     * Atomically removes all of the elements from this deque, whether
+     * their delay has expired or not.
+     */
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            deque.clear();
+            leader = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over all of the elements in this deque, whether
+     * their delay has expired or not, in order of their delays. The
+     * returned iterator is weakly consistent.
+     *
+     * @return an iterator over the elements in this deque in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(deque.iterator());
+    }
+
+    /**
+     * Returns an iterator over all of the elements in this deque, whether
+     * their delay has expired or not, in reverse order of their delays.
+     * The returned iterator is weakly consistent.
+     *
+     * @return an iterator over the elements in this deque in reverse order
+     */
+    public Iterator<E> descendingIterator() {
+        return new Itr(deque.descendingIterator());
+    }
+
+    /**
+     * Iterator over the underlying deque, removing elements while
+     * holding the lock so that a removed head wakes up its waiters.
+     */
+    private class Itr implements Iterator<E> {
+        private final Iterator<E> it;
+
+        Itr(Iterator<E> it) {
+            this.it = it;
+        }
+
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        public E next() {
+            return it.next();
+        }
+
+        public void remove() {
+            lock.lock();
+            try {
+                E head = deque.peekFirst();
+                it.remove();
+                signalIfHeadChanged(head);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.infomancers.collections.concurrent;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Counters describing the behaviour of a {@link PriorityBlockingDeque},
+ * collected after {@link PriorityBlockingDeque#enableMetrics()} was called.
+ * <p/>
+ * <p>The deque records each operation after releasing its lock, so
+ * threads record concurrently. Counters and histograms are therefore
+ * striped over several cache lines, so that threads updating them at the
+ * same time do not contend with each other, and recording never
+ * allocates. Histograms use buckets of powers of two, so the percentiles
+ * they report are upper bounds which are at most twice the real value.
+ * <p/>
+ * <p>The metrics can be read through this class or, after
+ * {@link #registerMBean(String)}, through JMX.
+ *
+ * @author Aviad Ben Dov
+ * @since 0.4
+ */
+public class DequeMetrics implements DequeMetricsMBean {
+
+    /**
+     * A counter spread over a number of cells, each on its own cache line,
+     * picked by the id of the updating thread.
+     */
+    private static final class StripedCounter {
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray cells;
+        private final int mask;
+
+        StripedCounter(int stripes) {
+            cells = new AtomicLongArray(stripes * PADDING);
+            mask = stripes - 1;
+        }
+
+        void add(long x) {
+            cells.getAndAdd(stripe(mask) * PADDING, x);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < cells.length(); i += PADDING) {
+                sum += cells.get(i);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int i = 0; i < cells.length(); i += PADDING) {
+                cells.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Picks the stripe of the current thread.
+     *
+     * @param mask The number of stripes less one, a power of two less one.
+     * @return The stripe.
+     */
+    private static int stripe(int mask) {
+        return (int) Thread.currentThread().getId() & mask;
+    }
+
+    /**
+     * Counts values in buckets of powers of two: bucket b holds the
+     * values between 2^(b-1) and 2^b - 1, and bucket 0 holds zero.
+     * Every stripe has its own 64 buckets, which span whole cache lines.
+     */
+    private static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets;
+        private final int mask;
+
+        Histogram(int stripes) {
+            buckets = new AtomicLongArray(stripes * BUCKETS);
+            mask = stripes - 1;
+        }
+
+        void record(long value) {
+            int bucket = value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+            buckets.incrementAndGet(stripe(mask) * BUCKETS + bucket);
+        }
+
+        long[] counts() {
+            long[] result = new long[BUCKETS];
+            for (int i = 0; i < buckets.length(); i++) {
+                result[i % BUCKETS] += buckets.get(i);
+            }
+            return result;
+        }
+
+        long percentile(double p) {
+            long[] counts = counts();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            if (total == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(p * total));
+            for (int b = 0; b < counts.length; b++) {
+                rank -= counts[b];
+                if (rank <= 0)
+                    return b == 0 ? 0 : (b == 63 ? Long.MAX_VALUE : (1L << b) - 1);
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    private final StripedCounter enqueued;
+    private final StripedCounter dequeued;
+    private final StripedCounter rejected;
+    private final StripedCounter lockAcquisitions;
+    private final StripedCounter lockWaitNanos;
+    private final StripedCounter notEmptyAwaitNanos;
+    private final StripedCounter notFullAwaitNanos;
+
+    private final Histogram depth;
+    private final Histogram offerLatency;
+    private final Histogram pollLatency;
+
+    private volatile long resetAt = System.nanoTime();
+
+    DequeMetrics() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        enqueued = new StripedCounter(stripes);
+        dequeued = new StripedCounter(stripes);
+        rejected = new StripedCounter(stripes);
+        lockAcquisitions = new StripedCounter(stripes);
+        lockWaitNanos = new StripedCounter(stripes);
+        notEmptyAwaitNanos = new StripedCounter(stripes);
+        notFullAwaitNanos = new StripedCounter(stripes);
+        depth = new Histogram(stripes);
+        offerLatency = new Histogram(stripes);
+        pollLatency = new Histogram(stripes);
+    }
+
+    // Recording, called by the deque after releasing its lock
+
+    /**
+     * Records an insertion.
+     *
+     * @param start         When the operation started.
+     * @param acquired      When the lock was acquired.
+     * @param awaitNanos    How long the operation waited for room.
+     * @param added         The number of elements added.
+     * @param rejectedCount The number of elements rejected.
+     * @param size          The size of the deque after the operation.
+     */
+    void offered(long start, long acquired, long awaitNanos, int added, int rejectedCount, int size) {
+        lockAcquired(start, acquired);
+        if (awaitNanos > 0)
+            notFullAwaitNanos.add(awaitNanos);
+        if (added > 0) {
+            enqueued.add(added);
+            depth.record(size);
+        }
+        if (rejectedCount > 0)
+            rejected.add(rejectedCount);
+        offerLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Records a removal.
+     *
+     * @param start      When the operation started.
+     * @param acquired   When the lock was acquired.
+     * @param awaitNanos How long the operation waited for an element.
+     * @param removed    The number of elements removed.
+     */
+    void polled(long start, long acquired, long awaitNanos, int removed) {
+        lockAcquired(start, acquired);
+        if (awaitNanos > 0)
+            notEmptyAwaitNanos.add(awaitNanos);
+        if (removed > 0)
+            dequeued.add(removed);
+        pollLatency.record(System.nanoTime() - start);
+    }
+
+    private void lockAcquired(long start, long acquired) {
+        lockAcquisitions.add(1);
+        lockWaitNanos.add(acquired - start);
+    }
+
+    // Reading
+
+    /**
+     * Returns the number of elements added to the deque.
+     */
+    public long getEnqueueCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * Returns the number of elements removed from the head or tail of the
+     * deque, including by <tt>drainTo</tt>.
+     */
+    public long getDequeueCount() {
+        return dequeued.sum();
+    }
+
+    /**
+     * Returns the number of elements which could not be added to the deque,
+     * because it was full or, for an indexed deque, already contained them.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the average number of elements added per second since the
+     * metrics were enabled or reset.
+     */
+    public double getEnqueueRate() {
+        return perSecond(getEnqueueCount());
+    }
+
+    /**
+     * Returns the average number of elements removed per second since the
+     * metrics were enabled or reset.
+     */
+    public double getDequeueRate() {
+        return perSecond(getDequeueCount());
+    }
+
+    private double perSecond(long count) {
+        long nanos = System.nanoTime() - resetAt;
+        return nanos <= 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the number of times the lock was acquired by an instrumented
+     * operation.
+     */
+    public long getLockAcquisitionCount() {
+        return lockAcquisitions.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting to acquire the lock.
+     */
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting for the deque to become non-empty.
+     */
+    public long getNotEmptyAwaitNanos() {
+        return notEmptyAwaitNanos.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting for the deque to become non-full.
+     */
+    public long getNotFullAwaitNanos() {
+        return notFullAwaitNanos.sum();
+    }
+
+    /**
+     * Returns the depth of the deque sampled after every insertion, in
+     * buckets of powers of two: element b counts depths between 2^(b-1)
+     * and 2^b - 1.
+     */
+    public long[] getDepthHistogram() {
+        return depth.counts();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the time taken by
+     * the offer and put operations, including waiting.
+     *
+     * @param percentile The percentile, between 0 and 1.
+     * @return The latency in nanoseconds.
+     */
+    public long getOfferLatencyPercentile(double percentile) {
+        return offerLatency.percentile(percentile);
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the time taken by
+     * the poll and take operations, including waiting.
+     *
+     * @param percentile The percentile, between 0 and 1.
+     * @return The latency in nanoseconds.
+     */
+    public long getPollLatencyPercentile(double percentile) {
+        return pollLatency.percentile(percentile);
+    }
+
+    public long getOfferLatencyMedianNanos() {
+        return getOfferLatencyPercentile(0.5);
+    }
+
+    public long getOfferLatency99thPercentileNanos() {
+        return getOfferLatencyPercentile(0.99);
+    }
+
+    public long getPollLatencyMedianNanos() {
+        return getPollLatencyPercentile(0.5);
+    }
+
+    public long getPollLatency99thPercentileNanos() {
+        return getPollLatencyPercentile(0.99);
+    }
+
+    /**
+     * Sets all counters and histograms back to zero. Updates made while
+     * resetting may be lost.
+     */
+    public void reset() {
+        enqueued.reset();
+        dequeued.reset();
+        rejected.reset();
+        lockAcquisitions.reset();
+        lockWaitNanos.reset();
+        notEmptyAwaitNanos.reset();
+        notFullAwaitNanos.reset();
+        depth.reset();
+        offerLatency.reset();
+        pollLatency.reset();
+        resetAt = System.nanoTime();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     *
+     * @param name The object name to register under, for example
+     *             <tt>"com.example:type=PriorityBlockingDeque,name=jobs"</tt>.
+     * @return The object name.
+     * @throws JMException If the name is malformed or already registered.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+}
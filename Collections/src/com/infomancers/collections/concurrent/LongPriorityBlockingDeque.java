@@ -0,0 +1,1077 @@
+package com.infomancers.collections.concurrent;
+
+import com.infomancers.collections.util.LongTransformation;
+
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * An optionally-bounded {@linkplain BlockingDeque blocking deque} ordered
+ * by a primitive <tt>long</tt> priority, smallest first.
+ * <p/>
+ * <p>The priority of an element is computed once, when it is inserted,
+ * either by the {@link LongTransformation} given to the constructor or
+ * explicitly through {@link #offer(long, Object)} and
+ * {@link #put(long, Object)}. The priorities are kept in an array next
+ * to the elements, so that ordering the heap only compares primitives and
+ * never touches the elements themselves. A deque created without a
+ * transformation only accepts elements with an explicit priority.
+ * <p/>
+ * <p>Elements with equal priorities are returned in no particular order.
+ * <p/>
+ * <p>The optional capacity bound constructor argument serves as a
+ * way to prevent excessive expansion. The capacity, if unspecified,
+ * is equal to {@link Integer#MAX_VALUE}.
+ * <p/>
+ * <p>This class and its iterator implement all of the
+ * <em>optional</em> methods of the {@link Collection} and {@link
+ * Iterator} interfaces.
+ *
+ * @author Aviad Ben Dov
+ * @param <E> the type of elements held in this collection
+ * @see PriorityBlockingDeque
+ * @since 0.4
+ */
+public class LongPriorityBlockingDeque<E>
+        extends AbstractQueue<E>
+        implements BlockingDeque<E>, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * Implemented as a min-max heap, laid out the same way as in
+     * PriorityBlockingDeque, over two parallel arrays: keys[n] holds the
+     * priority of items[n]. The heap is protected by a single lock and
+     * uses conditions to manage blocking.
+     */
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    private final int capacity;
+
+    private final LongTransformation<? super E> priority;
+
+    private final Heap heap;
+    /**
+     * Main lock guarding all access
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition for waiting takes
+     */
+    private final Condition notEmpty = lock.newCondition();
+    /**
+     * Condition for waiting puts
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Creates a <tt>LongPriorityBlockingDeque</tt> with a capacity of
+     * {@link Integer#MAX_VALUE}, which only accepts elements with an
+     * explicit priority.
+     */
+    public LongPriorityBlockingDeque() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a <tt>LongPriorityBlockingDeque</tt> with the given (fixed)
+     * capacity, which only accepts elements with an explicit priority.
+     *
+     * @param capacity the capacity of this deque
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public LongPriorityBlockingDeque(int capacity) {
+        this(null, capacity);
+    }
+
+    /**
+     * Creates a <tt>LongPriorityBlockingDeque</tt> with a capacity of
+     * {@link Integer#MAX_VALUE}.
+     *
+     * @param priority computes the priority of inserted elements
+     */
+    public LongPriorityBlockingDeque(LongTransformation<? super E> priority) {
+        this(priority, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a <tt>LongPriorityBlockingDeque</tt> with the given (fixed) capacity.
+     *
+     * @param priority computes the priority of inserted elements, or null
+     *                 to only accept elements with an explicit priority
+     * @param capacity the capacity of this deque
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public LongPriorityBlockingDeque(LongTransformation<? super E> priority, int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.priority = priority;
+        this.heap = new Heap(Math.min(capacity, DEFAULT_INITIAL_CAPACITY));
+    }
+
+    /**
+     * A min-max heap of elements and their priorities. Not thread safe.
+     */
+    private static final class Heap extends MinMaxHeap {
+        private static final long serialVersionUID = 1L;
+
+        long[] keys;
+        Object[] items;
+        int count;
+
+        private transient long heldKey;
+        private transient Object heldItem;
+
+        Heap(int initialCapacity) {
+            keys = new long[initialCapacity];
+            items = new Object[initialCapacity];
+        }
+
+        Heap(Heap other) {
+            keys = Arrays.copyOf(other.keys, other.count);
+            items = Arrays.copyOf(other.items, other.count);
+            count = other.count;
+        }
+
+        int size() {
+            return count;
+        }
+
+        int compare(int i, int j) {
+            return compare(keys[i], keys[j]);
+        }
+
+        int compareToHeld(int i) {
+            return compare(keys[i], heldKey);
+        }
+
+        private static int compare(long a, long b) {
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+
+        void swap(int i, int j) {
+            long k = keys[i];
+            keys[i] = keys[j];
+            keys[j] = k;
+
+            Object tmp = items[i];
+            items[i] = items[j];
+            items[j] = tmp;
+        }
+
+        void hold(int i) {
+            heldKey = keys[i];
+            heldItem = items[i];
+        }
+
+        void move(int from, int to) {
+            keys[to] = keys[from];
+            items[to] = items[from];
+        }
+
+        void exchangeHeld(int i) {
+            long k = keys[i];
+            Object tmp = items[i];
+            keys[i] = heldKey;
+            items[i] = heldItem;
+            heldKey = k;
+            heldItem = tmp;
+        }
+
+        void place(int i) {
+            keys[i] = heldKey;
+            items[i] = heldItem;
+            heldItem = null;
+        }
+
+        /**
+         * Makes room for at least minCapacity elements, but never for
+         * more than maxCapacity.
+         */
+        void ensureCapacity(int minCapacity, int maxCapacity) {
+            if (minCapacity <= items.length)
+                return;
+
+            int newLength = items.length < 64 ? items.length * 2 + 2 : items.length + (items.length >> 1);
+            if (newLength < minCapacity)
+                newLength = minCapacity;
+            if (newLength < 0 || newLength > maxCapacity)
+                newLength = maxCapacity;
+
+            keys = Arrays.copyOf(keys, newLength);
+            items = Arrays.copyOf(items, newLength);
+        }
+
+        void add(long key, Object item) {
+            keys[count] = key;
+            items[count] = item;
+            bubbleUp(count++);
+        }
+
+        Object removeAt(int i) {
+            Object result = items[i];
+            int last = --count;
+
+            if (i != last) {
+                keys[i] = keys[last];
+                items[i] = items[last];
+                items[last] = null;
+                bubbleUp(trickleDown(i));
+            } else {
+                items[last] = null;
+            }
+
+            return result;
+        }
+
+        void clear() {
+            Arrays.fill(items, 0, count, null);
+            count = 0;
+        }
+    }
+
+    private long priorityOf(E e) {
+        if (priority == null)
+            throw new UnsupportedOperationException("Deque has no priority transformation; use offer(long, E)");
+        return priority.transform(e);
+    }
+
+    // Basic adding and removing operations, called only while holding lock
+
+    /**
+     * Adds e or returns false if full.
+     *
+     * @param key The priority of the element.
+     * @param e   The element to add.
+     * @return Whether adding was successful.
+     */
+    private boolean innerAdd(long key, E e) {
+        if (heap.count >= capacity)
+            return false;
+
+        heap.ensureCapacity(heap.count + 1, capacity);
+        heap.add(key, e);
+        notEmpty.signal();
+
+        return true;
+    }
+
+    /**
+     * Removes and returns the element at either end, or null if empty.
+     *
+     * @param first Whether to remove the first or the last element.
+     * @return The removed element.
+     */
+    @SuppressWarnings("unchecked")
+    private E innerRemove(boolean first) {
+        if (heap.count == 0)
+            return null;
+
+        E x = (E) heap.removeAt(first ? 0 : heap.lastIndex());
+        notFull.signal();
+        return x;
+    }
+
+    /**
+     * Removes up to maxElements from one end of the deque, waking up all
+     * waiting putters once at the end.
+     *
+     * @param c           The collection to add the elements to, or null to discard them.
+     * @param maxElements The maximal amount of elements to remove.
+     * @param first       Whether to remove from the first or the last end.
+     * @return The amount of removed elements.
+     */
+    @SuppressWarnings("unchecked")
+    private int innerDrain(Collection<? super E> c, int maxElements, boolean first) {
+        int n = Math.min(maxElements, heap.count);
+        if (n <= 0)
+            return 0;
+
+        if (c == null && n == heap.count) {
+            heap.clear();
+        } else {
+            for (int i = 0; i < n; i++) {
+                E x = (E) heap.removeAt(first ? 0 : heap.lastIndex());
+                if (c != null)
+                    c.add(x);
+            }
+        }
+
+        notFull.signalAll();
+        return n;
+    }
+
+    /**
+     * Removes the element which equals o and is closest to the given end.
+     *
+     * @param o         The object to remove.
+     * @param ascending Whether to prefer the smallest matching element.
+     * @return Whether an element was removed.
+     */
+    private boolean innerRemoveOccurrence(Object o, boolean ascending) {
+        int found = -1;
+        for (int i = 0; i < heap.count; i++) {
+            if (o.equals(heap.items[i]) && (found < 0 || heap.isBetter(i, found, ascending)))
+                found = i;
+        }
+
+        if (found < 0)
+            return false;
+
+        heap.removeAt(found);
+        notFull.signal();
+        return true;
+    }
+
+    /**
+     * Adds an element, waiting if necessary for space to become available.
+     *
+     * @param key   The priority of the element.
+     * @param e     The element to add.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return Whether adding was successful.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean innerPut(long key, E e, boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (; ;) {
+                if (innerAdd(key, e))
+                    return true;
+                if (timed && nanos <= 0)
+                    return false;
+                if (timed)
+                    nanos = notFull.awaitNanos(nanos);
+                else
+                    notFull.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an element from either end, waiting if necessary.
+     *
+     * @param first Whether to remove the first or the last element.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return The removed element, or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private E innerTake(boolean first, boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            for (; ;) {
+                E x = innerRemove(first);
+                if (x != null)
+                    return x;
+                if (timed && nanos <= 0)
+                    return null;
+                if (timed)
+                    nanos = notEmpty.awaitNanos(nanos);
+                else
+                    notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Priority methods
+
+    /**
+     * Inserts the specified element with the given priority, unless it
+     * would violate capacity restrictions.
+     *
+     * @param priority the priority of the element; smaller is first
+     * @param e        the element to add
+     * @return <tt>true</tt> if the element was added to this deque, else <tt>false</tt>
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(long priority, E e) {
+        if (e == null) throw new NullPointerException();
+        lock.lock();
+        try {
+            return innerAdd(priority, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the specified element with the given priority, waiting up to
+     * the specified wait time if necessary for space to become available.
+     *
+     * @param priority the priority of the element; smaller is first
+     * @param e        the element to add
+     * @param timeout  how long to wait before giving up, in units of <tt>unit</tt>
+     * @param unit     a <tt>TimeUnit</tt> determining how to interpret the <tt>timeout</tt> parameter
+     * @return <tt>true</tt> if successful, or <tt>false</tt> if the specified waiting time
+     *         elapses before space is available
+     * @throws NullPointerException if the specified element is null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean offer(long priority, E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(priority, e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Inserts the specified element with the given priority, waiting if
+     * necessary for space to become available.
+     *
+     * @param priority the priority of the element; smaller is first
+     * @param e        the element to add
+     * @throws NullPointerException if the specified element is null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(long priority, E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(priority, e, false, 0);
+    }
+
+    /**
+     * Inserts as many of the given elements as capacity allows, while
+     * holding the lock once and waking up the waiting takers once.
+     * The priorities are computed before the lock is taken.
+     *
+     * @param c the elements to insert
+     * @return the number of elements inserted
+     * @throws NullPointerException          if the collection or any of its elements is null
+     * @throws UnsupportedOperationException if this deque has no priority transformation
+     */
+    @SuppressWarnings("unchecked")
+    public int offerAll(Collection<? extends E> c) {
+        Object[] elements = c.toArray();
+        long[] keys = new long[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            if (elements[i] == null) throw new NullPointerException();
+            keys[i] = priorityOf((E) elements[i]);
+        }
+
+        lock.lock();
+        try {
+            int n = Math.min(elements.length, capacity - heap.count);
+            if (n <= 0)
+                return 0;
+
+            heap.ensureCapacity(heap.count + n, capacity);
+            if (n > heap.count) {
+                System.arraycopy(keys, 0, heap.keys, heap.count, n);
+                System.arraycopy(elements, 0, heap.items, heap.count, n);
+                heap.count += n;
+                heap.heapify();
+            } else {
+                for (int i = 0; i < n; i++) {
+                    heap.add(keys[i], elements[i]);
+                }
+            }
+
+            notEmpty.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the priority of the first element of this deque.
+     *
+     * @return the smallest priority in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public long peekPriority() {
+        lock.lock();
+        try {
+            if (heap.count == 0) throw new NoSuchElementException();
+            return heap.keys[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the priority of the last element of this deque.
+     *
+     * @return the largest priority in this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public long peekLastPriority() {
+        lock.lock();
+        try {
+            if (heap.count == 0) throw new NoSuchElementException();
+            return heap.keys[heap.lastIndex()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // BlockingDeque methods
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void addFirst(E e) {
+        if (!offerFirst(e))
+            throw new IllegalStateException("Deque full");
+    }
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void addLast(E e) {
+        if (!offerLast(e))
+            throw new IllegalStateException("Deque full");
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerFirst(E e) {
+        if (e == null) throw new NullPointerException();
+        return offer(priorityOf(e), e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerLast(E e) {
+        if (e == null) throw new NullPointerException();
+        return offer(priorityOf(e), e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putFirst(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(priorityOf(e), e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putLast(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(priorityOf(e), e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offerFirst(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(priorityOf(e), e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offerLast(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(priorityOf(e), e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeFirst() {
+        E x = pollFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeLast() {
+        E x = pollLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    public E pollFirst() {
+        lock.lock();
+        try {
+            return innerRemove(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public E pollLast() {
+        lock.lock();
+        try {
+            return innerRemove(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns up to <tt>n</tt> elements from the head of this
+     * deque, smallest first, while holding the lock once.
+     *
+     * @param n the maximal number of elements to remove
+     * @return the removed elements; empty if this deque is empty
+     * @throws IllegalArgumentException if <tt>n</tt> is negative
+     */
+    public List<E> pollFirst(int n) {
+        return innerPoll(n, true);
+    }
+
+    /**
+     * Removes and returns up to <tt>n</tt> elements from the tail of this
+     * deque, largest first, while holding the lock once.
+     *
+     * @param n the maximal number of elements to remove
+     * @return the removed elements; empty if this deque is empty
+     * @throws IllegalArgumentException if <tt>n</tt> is negative
+     */
+    public List<E> pollLast(int n) {
+        return innerPoll(n, false);
+    }
+
+    private List<E> innerPoll(int n, boolean first) {
+        if (n < 0) throw new IllegalArgumentException();
+        lock.lock();
+        try {
+            List<E> result = new ArrayList<E>(Math.min(n, heap.count));
+            innerDrain(result, n, first);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public E takeFirst() throws InterruptedException {
+        return innerTake(true, false, 0);
+    }
+
+    public E takeLast() throws InterruptedException {
+        return innerTake(false, false, 0);
+    }
+
+    public E pollFirst(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTake(true, true, unit.toNanos(timeout));
+    }
+
+    public E pollLast(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTake(false, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getFirst() {
+        E x = peekFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getLast() {
+        E x = peekLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peekFirst() {
+        lock.lock();
+        try {
+            return heap.count == 0 ? null : (E) heap.items[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peekLast() {
+        lock.lock();
+        try {
+            return heap.count == 0 ? null : (E) heap.items[heap.lastIndex()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean removeFirstOccurrence(Object o) {
+        if (o == null) return false;
+        lock.lock();
+        try {
+            return innerRemoveOccurrence(o, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean removeLastOccurrence(Object o) {
+        if (o == null) return false;
+        lock.lock();
+        try {
+            return innerRemoveOccurrence(o, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // BlockingQueue methods
+
+    /**
+     * Inserts the specified element to the deque unless it would
+     * violate capacity restrictions.  When using a capacity-restricted deque,
+     * it is generally preferable to use method {@link #offer(Object) offer}.
+     * <p/>
+     * <p>This method is equivalent to {@link #addLast}.
+     *
+     * @throws IllegalStateException if the element cannot be added at this
+     *                               time due to capacity restrictions
+     * @throws NullPointerException  if the specified element is null
+     */
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        return offerLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void put(E e) throws InterruptedException {
+        putLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return offerLast(e, timeout, unit);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     * This method differs from {@link #poll poll} only in that it throws an
+     * exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #removeFirst() removeFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    public E poll() {
+        return pollFirst();
+    }
+
+    public E take() throws InterruptedException {
+        return takeFirst();
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return pollFirst(timeout, unit);
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.  This method differs from {@link #peek peek} only in that
+     * it throws an exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #getFirst() getFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    public E peek() {
+        return peekFirst();
+    }
+
+    /**
+     * Returns the number of additional elements that this deque can ideally
+     * (in the absence of memory or resource constraints) accept without
+     * blocking. This is always equal to the initial capacity of this deque
+     * less the current <tt>size</tt> of this deque.
+     * <p/>
+     * <p>Note that you <em>cannot</em> always tell if an attempt to insert
+     * an element will succeed by inspecting <tt>remainingCapacity</tt>
+     * because it may be the case that another thread is about to
+     * insert or remove an element.
+     */
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - heap.count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        lock.lock();
+        try {
+            return innerDrain(c, maxElements, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stack methods
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E pop() {
+        return removeFirst();
+    }
+
+    // Collection methods
+
+    /**
+     * Removes the first occurrence of the specified element from this deque.
+     * If the deque does not contain the element, it is unchanged.
+     * More formally, removes the first element <tt>e</tt> such that
+     * <tt>o.equals(e)</tt> (if such an element exists).
+     * Returns <tt>true</tt> if this deque contained the specified element
+     * (or equivalently, if this deque changed as a result of the call).
+     * <p/>
+     * <p>This method is equivalent to
+     * {@link #removeFirstOccurrence(Object) removeFirstOccurrence}.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return <tt>true</tt> if this deque changed as a result of the call
+     */
+    @Override
+    public boolean remove(Object o) {
+        return removeFirstOccurrence(o);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return heap.count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if this deque contains the specified element.
+     * More formally, returns <tt>true</tt> if and only if this deque contains
+     * at least one element <tt>e</tt> such that <tt>o.equals(e)</tt>.
+     *
+     * @param o object to be checked for containment in this deque
+     * @return <tt>true</tt> if this deque contains the specified element
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        lock.lock();
+        try {
+            for (int i = 0; i < heap.count; i++) {
+                if (o.equals(heap.items[i]))
+                    return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically removes all of the elements from this deque.
+     * The deque will be empty after this call returns.
+     */
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            innerDrain(null, Integer.MAX_VALUE, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in proper sequence.
+     * The elements will be returned in order from first (head) to last (tail).
+     * The returned iterator is <i>weakly consistent</i>: it works on a copy
+     * of the deque taken when the iterator is created, and does not reflect
+     * later changes.
+     *
+     * @return an iterator over the elements in this deque in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(true);
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in reverse
+     * sequential order. The elements will be returned in order from
+     * last (tail) to first (head). The returned iterator is weakly
+     * consistent, in the same way as the one returned by {@link #iterator}.
+     *
+     * @return an iterator over the elements in this deque in reverse order
+     */
+    public Iterator<E> descendingIterator() {
+        return new Itr(false);
+    }
+
+    /**
+     * Iterator over a copy of the heap. The lock is only held while the
+     * heap is copied; the elements are then removed from the copy in order,
+     * so that walking only part of the deque does not sort all of it.
+     */
+    private class Itr implements Iterator<E> {
+        private final Heap copy;
+        private final boolean ascending;
+        private Object lastRet;
+
+        Itr(boolean ascending) {
+            lock.lock();
+            try {
+                this.copy = new Heap(heap);
+            } finally {
+                lock.unlock();
+            }
+            this.ascending = ascending;
+        }
+
+        public boolean hasNext() {
+            return copy.count > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (copy.count == 0)
+                throw new NoSuchElementException();
+
+            lastRet = copy.removeAt(ascending ? 0 : copy.lastIndex());
+            return (E) lastRet;
+        }
+
+        public void remove() {
+            if (lastRet == null)
+                throw new IllegalStateException();
+
+            Object x = lastRet;
+            lastRet = null;
+
+            lock.lock();
+            try {
+                for (int i = 0; i < heap.count; i++) {
+                    if (heap.items[i] == x) {
+                        heap.removeAt(i);
+                        notFull.signal();
+                        break;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
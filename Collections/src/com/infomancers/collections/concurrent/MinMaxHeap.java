@@ -0,0 +1,235 @@
+package com.infomancers.collections.concurrent;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+/**
+ * The algorithms of a min-max heap laid out in an array, shared by the
+ * deques backed by one. The elements on even levels are smaller than all
+ * of their descendants, and those on odd levels are larger, so that both
+ * the smallest and the largest element are found in constant time.
+ * <p/>
+ * Subclasses store the elements and define how they are compared and
+ * moved around. Trickling an element down sets it aside and moves the
+ * elements it passes instead of swapping it all the way, which is why
+ * there is a single held element besides the ones in the heap.
+ * <p/>
+ * Not thread safe.
+ *
+ * @since 0.4
+ */
+abstract class MinMaxHeap implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return The amount of elements in the heap.
+     */
+    abstract int size();
+
+    /**
+     * Compares the elements at indexes i and j.
+     */
+    abstract int compare(int i, int j);
+
+    /**
+     * Compares the element at index i with the held element.
+     */
+    abstract int compareToHeld(int i);
+
+    abstract void swap(int i, int j);
+
+    /**
+     * Sets the element at index i aside, leaving a hole at i.
+     */
+    abstract void hold(int i);
+
+    /**
+     * Copies the element at index from into the hole at index to.
+     */
+    abstract void move(int from, int to);
+
+    /**
+     * Exchanges the held element with the element at index i.
+     */
+    abstract void exchangeHeld(int i);
+
+    /**
+     * Places the held element into the hole at index i.
+     */
+    abstract void place(int i);
+
+    static boolean isMinLevel(int i) {
+        return ((31 - Integer.numberOfLeadingZeros(i + 1)) & 1) == 0;
+    }
+
+    /**
+     * Moves the element at index i up towards the root until
+     * the heap ordering is restored.
+     *
+     * @param i The index of the element to move.
+     */
+    final void bubbleUp(int i) {
+        if (i == 0)
+            return;
+
+        int parent = (i - 1) >>> 1;
+        if (isMinLevel(i)) {
+            if (compare(i, parent) > 0) {
+                swap(i, parent);
+                bubbleUp(parent, false);
+            } else {
+                bubbleUp(i, true);
+            }
+        } else {
+            if (compare(i, parent) < 0) {
+                swap(i, parent);
+                bubbleUp(parent, true);
+            } else {
+                bubbleUp(i, false);
+            }
+        }
+    }
+
+    private void bubbleUp(int i, boolean minLevel) {
+        while (i > 2) {
+            int grandparent = (((i - 1) >>> 1) - 1) >>> 1;
+            int cmp = compare(i, grandparent);
+            if (minLevel ? cmp >= 0 : cmp <= 0)
+                return;
+
+            swap(i, grandparent);
+            i = grandparent;
+        }
+    }
+
+    /**
+     * Moves the element at index i down towards the leaves until
+     * the heap ordering is restored.
+     *
+     * @param i The index of the element to move.
+     * @return The index at which the element was finally placed.
+     */
+    final int trickleDown(int i) {
+        boolean minLevel = isMinLevel(i);
+        int placedAt = -1;
+
+        hold(i);
+        for (; ;) {
+            int m = extremeDescendant(i, minLevel);
+            if (m < 0)
+                break;
+
+            int cmp = compareToHeld(m);
+            if (minLevel ? cmp >= 0 : cmp <= 0)
+                break;
+
+            move(m, i);
+            int parent = (m - 1) >>> 1;
+            if (parent == i) {
+                // m is a child of i, and therefore a leaf.
+                i = m;
+                break;
+            }
+
+            i = m;
+            cmp = compareToHeld(parent);
+            if (minLevel ? cmp < 0 : cmp > 0) {
+                exchangeHeld(parent);
+                if (placedAt < 0)
+                    placedAt = parent;
+            }
+        }
+
+        place(i);
+        return placedAt < 0 ? i : placedAt;
+    }
+
+    /**
+     * Finds the smallest (or largest, for max levels) element among the
+     * children and grandchildren of the node at index i.
+     *
+     * @param i        The index of the node.
+     * @param minLevel Whether to look for the smallest element.
+     * @return The index of the found element, or -1 if the node is a leaf.
+     */
+    private int extremeDescendant(int i, boolean minLevel) {
+        int count = size();
+        int child = 2 * i + 1;
+        if (child >= count)
+            return -1;
+
+        int result = child;
+        if (child + 1 < count && isBetter(child + 1, result, minLevel))
+            result = child + 1;
+
+        for (int grandchild = 4 * i + 3, end = Math.min(4 * i + 7, count); grandchild < end; grandchild++) {
+            if (isBetter(grandchild, result, minLevel))
+                result = grandchild;
+        }
+
+        return result;
+    }
+
+    /**
+     * @return Whether the element at index i is smaller (or larger,
+     *         if not minLevel) than the element at index j.
+     */
+    final boolean isBetter(int i, int j, boolean minLevel) {
+        int cmp = compare(i, j);
+        return minLevel ? cmp < 0 : cmp > 0;
+    }
+
+    /**
+     * @return The index of the largest element, or -1 if the heap is empty.
+     */
+    final int lastIndex() {
+        switch (size()) {
+            case 0:
+                return -1;
+            case 1:
+                return 0;
+            case 2:
+                return 1;
+            default:
+                return compare(1, 2) >= 0 ? 1 : 2;
+        }
+    }
+
+    /**
+     * Restores the heap ordering of the whole array by trickling down
+     * every inner node, starting from the last one. This takes O(n) time.
+     */
+    final void heapify() {
+        for (int i = (size() >>> 1) - 1; i >= 0; i--) {
+            trickleDown(i);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.infomancers.collections.concurrent;
 
+import com.infomancers.collections.util.LongTransformation;
+
 import java.util.*;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -40,7 +42,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An optionally-bounded {@linkplain BlockingDeque blocking deque} based on
- * a navigable set.
+ * an array-backed min-max heap.
  * <p/>
  * <p> The optional capacity bound constructor argument serves as a
  * way to prevent excessive expansion. The capacity, if unspecified,
@@ -50,6 +52,25 @@ import java.util.concurrent.locks.ReentrantLock;
  * <em>optional</em> methods of the {@link Collection} and {@link
  * Iterator} interfaces.
  * <p/>
+ * <p>Inserting and removing at either end of the deque takes O(log n) time;
+ * peeking at either end takes constant time.
+ * <p/>
+ * <p>A deque may be given a <em>weigher</em>, in which case its capacity is
+ * measured in the total weight of its elements instead of their number.
+ * A deque may also be given an {@link EvictionListener}, in which case it
+ * never blocks or rejects an element because it is full if the element is
+ * better than its last one: instead, the last elements are evicted until
+ * the new element fits.
+ * <p/>
+ * <p>An <em>indexed</em> deque keeps track of the position of every element
+ * in the heap, so that <tt>contains</tt> takes constant time and removing
+ * an arbitrary element takes O(log n) time, at the cost of updating the
+ * index whenever elements move. An indexed deque does not accept an
+ * element which is equal to one already in it: <tt>offer</tt> returns
+ * <tt>false</tt> and <tt>put</tt> returns for such an element without
+ * waiting or evicting anything, and <tt>add</tt> throws an
+ * {@link IllegalArgumentException}.
+ * <p/>
  * This code is loosely based on the {@linkplain java.util.concurrent.LinkedBlockingDeque linked blocking deque} code.
  *
  * @author Aviad Ben Dov
@@ -61,13 +82,47 @@ public class PriorityBlockingDeque<E>
         implements BlockingDeque<E>, java.io.Serializable {
 
     /*
-     * Implemented as a navigable set protected by a
+     * Implemented as a min-max heap protected by a
      * single lock and using conditions to manage blocking.
+     *
+     * The heap is laid out in an array: the children of queue[n] are
+     * queue[2*n+1] and queue[2*n+2]. Nodes on even levels (starting
+     * with the root) are smaller than or equal to all of their
+     * descendants, and nodes on odd levels are greater than or equal
+     * to all of their descendants. The smallest element is therefore
+     * queue[0], and the largest is the greater of queue[1] and queue[2].
      */
 
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
     private final int capacity;
 
-    private final LinkedList<E> list;
+    private Object[] queue;
+
+    private int count;
+
+    private long weight;
+
+    private final LongTransformation<? super E> weigher;
+
+    private final EvictionListener<? super E> evictionListener;
+
+    /**
+     * Position in the heap of every element, if indexed. The positions are
+     * single-element arrays updated in place, so that sifting doesn't allocate
+     */
+    private final Map<Object, int[]> index;
+
+    /**
+     * The min-max heap algorithms, working on queue
+     */
+    private final Heap heap = new Heap();
+
+    /**
+     * Metrics of this deque, if enabled. Not serialized, so a deserialized
+     * deque starts with metrics disabled
+     */
+    private transient volatile DequeMetrics metrics;
     /**
      * Main lock guarding all access
      */
@@ -101,49 +156,509 @@ public class PriorityBlockingDeque<E>
     }
 
     public PriorityBlockingDeque(Comparator<E> comparator, int capacity) {
+        this(comparator, capacity, null, null);
+    }
+
+    /**
+     * Creates a <tt>PriorityBlockingDeque</tt> whose capacity is measured in
+     * the total weight of its elements. The weigher must return the same,
+     * non-negative weight for an element for as long as it is in the deque.
+     *
+     * @param comparator the ordering of the elements, or null for their natural ordering
+     * @param capacity   the maximal total weight of the elements in this deque
+     * @param weigher    computes the weight of an element, or null to count elements
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public PriorityBlockingDeque(Comparator<E> comparator, int capacity, LongTransformation<? super E> weigher) {
+        this(comparator, capacity, weigher, null);
+    }
+
+    /**
+     * Creates an evicting <tt>PriorityBlockingDeque</tt>. When an element
+     * does not fit, the last elements of the deque are evicted to make room
+     * for it, provided they all come after it in the ordering. Otherwise
+     * the new element is the one dropped: <tt>offer</tt> returns
+     * <tt>false</tt>, and <tt>put</tt> hands it to the listener and returns
+     * without blocking.
+     *
+     * @param comparator       the ordering of the elements, or null for their natural ordering
+     * @param capacity         the maximal total weight of the elements in this deque
+     * @param weigher          computes the weight of an element, or null to count elements
+     * @param evictionListener notified of evicted elements, or null to block or reject
+     *                         elements instead of evicting
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public PriorityBlockingDeque(Comparator<E> comparator, int capacity,
+                                 LongTransformation<? super E> weigher, EvictionListener<? super E> evictionListener) {
+        this(comparator, capacity, weigher, evictionListener, false);
+    }
+
+    /**
+     * Creates an optionally indexed <tt>PriorityBlockingDeque</tt>.
+     *
+     * @param comparator the ordering of the elements, or null for their natural ordering
+     * @param capacity   the capacity of this deque
+     * @param indexed    whether to keep an index of the positions of the elements
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public PriorityBlockingDeque(Comparator<E> comparator, int capacity, boolean indexed) {
+        this(comparator, capacity, null, null, indexed);
+    }
+
+    /**
+     * Creates a <tt>PriorityBlockingDeque</tt> with all of the optional
+     * behaviours: a weigher, an eviction listener and an index.
+     *
+     * @param comparator       the ordering of the elements, or null for their natural ordering
+     * @param capacity         the maximal total weight of the elements in this deque
+     * @param weigher          computes the weight of an element, or null to count elements
+     * @param evictionListener notified of evicted elements, or null to block or reject
+     *                         elements instead of evicting
+     * @param indexed          whether to keep an index of the positions of the elements
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public PriorityBlockingDeque(Comparator<E> comparator, int capacity,
+                                 LongTransformation<? super E> weigher, EvictionListener<? super E> evictionListener,
+                                 boolean indexed) {
         if (capacity <= 0) throw new IllegalArgumentException();
         this.capacity = capacity;
-        this.list = new LinkedList<E>();
+        this.queue = new Object[Math.min(capacity, DEFAULT_INITIAL_CAPACITY)];
         this.comparator = comparator;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+        this.index = indexed ? new HashMap<Object, int[]>() : null;
+    }
+
+    // Heap operations, called only while holding lock
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object a, Object b) {
+        return comparator == null ? ((Comparable<Object>) a).compareTo(b) : comparator.compare((E) a, (E) b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int i) {
+        return (E) queue[i];
+    }
+
+    /**
+     * Places x at index i, keeping the index up to date.
+     */
+    private void set(int i, Object x) {
+        queue[i] = x;
+        if (index != null) {
+            int[] position = index.get(x);
+            if (position == null)
+                index.put(x, new int[]{i});
+            else
+                position[0] = i;
+        }
+    }
+
+    /**
+     * Returns the index of an element equal to o, or -1 if there is none.
+     *
+     * @param o         The object to look for.
+     * @param ascending Whether to prefer the smallest matching element.
+     * @return The index of the element.
+     */
+    private int indexOf(Object o, boolean ascending) {
+        if (index != null) {
+            int[] position = index.get(o);
+            return position == null ? -1 : position[0];
+        }
+
+        int found = -1;
+        for (int i = 0; i < count; i++) {
+            if (o.equals(queue[i]) && (found < 0 || heap.isBetter(i, found, ascending)))
+                found = i;
+        }
+        return found;
+    }
+
+    /**
+     * Empties the heap without restoring any ordering.
+     */
+    private void removeAll() {
+        Arrays.fill(queue, 0, count, null);
+        count = 0;
+        weight = 0;
+        if (index != null)
+            index.clear();
+    }
+
+    private void swap(int i, int j) {
+        Object tmp = queue[i];
+        set(i, queue[j]);
+        set(j, tmp);
+    }
+
+    private void grow() {
+        int newLength = queue.length < 64 ? queue.length * 2 + 2 : queue.length + (queue.length >> 1);
+        if (newLength < 0 || (weigher == null && newLength > capacity)) {
+            newLength = weigher == null ? capacity : Integer.MAX_VALUE;
+        }
+        queue = Arrays.copyOf(queue, newLength);
+    }
+
+    /**
+     * The min-max heap over queue, placing the elements through set so
+     * that the index is kept up to date.
+     */
+    private class Heap extends MinMaxHeap {
+        private static final long serialVersionUID = 1L;
+
+        private transient Object held;
+
+        int size() {
+            return count;
+        }
+
+        int compare(int i, int j) {
+            return PriorityBlockingDeque.this.compare(queue[i], queue[j]);
+        }
+
+        int compareToHeld(int i) {
+            return PriorityBlockingDeque.this.compare(queue[i], held);
+        }
+
+        void swap(int i, int j) {
+            PriorityBlockingDeque.this.swap(i, j);
+        }
+
+        void hold(int i) {
+            held = queue[i];
+        }
+
+        void move(int from, int to) {
+            set(to, queue[from]);
+        }
+
+        void exchangeHeld(int i) {
+            Object tmp = queue[i];
+            set(i, held);
+            held = tmp;
+        }
+
+        void place(int i) {
+            set(i, held);
+            held = null;
+        }
+    }
+
+    /**
+     * Removes the element at index i, restoring the heap ordering.
+     *
+     * @param i The index of the element to remove.
+     * @return The removed element.
+     */
+    private E removeAt(int i) {
+        E result = elementAt(i);
+        weight -= weigh(result);
+        if (index != null)
+            index.remove(result);
+
+        int last = --count;
+        Object moved = queue[last];
+        queue[last] = null;
+
+        if (i != last) {
+            set(i, moved);
+            heap.bubbleUp(heap.trickleDown(i));
+        }
+
+        return result;
     }
 
     // Basic adding and removing operations, called only while holding lock
 
     /**
-     * Adds e or returns false if full.
+     * Returns whether e can never be added because it is indexed already.
+     *
+     * @param e The element to check.
+     * @return Whether an equal element is in the deque.
+     */
+    private boolean isDuplicate(Object e) {
+        return index != null && index.containsKey(e);
+    }
+
+    /**
+     * Adds e or returns false if full or a duplicate.
      *
      * @param e The element to add.
      * @return Whether adding was successful.
      */
     private boolean innerAdd(E e) {
-        if (list.size() >= capacity)
+        if (isDuplicate(e))
             return false;
 
-        int insertionPoint = Collections.binarySearch(list, e, comparator);
-        if (insertionPoint < 0) {
-            // this means the key didn't exist, so the insertion point is negative minus 1.
-            insertionPoint = -insertionPoint - 1;
-        }
+        long w = weigh(e);
+        if (w > capacity || (weight + w > capacity && !makeRoom(e, w)))
+            return false;
+
+        if (count == queue.length)
+            grow();
 
-        list.add(insertionPoint, e);
-//        Collections.sort(list, comparator);
+        set(count, e);
+        heap.bubbleUp(count++);
+        weight += w;
         notEmpty.signal();
 
         return true;
     }
 
+    /**
+     * Wakes up putters after a single element was removed. With a weigher,
+     * the room freed may fit several of them, or not fit the one a single
+     * signal would wake, so all of them are woken to check.
+     */
+    private void signalNotFull() {
+        if (weigher == null)
+            notFull.signal();
+        else
+            notFull.signalAll();
+    }
+
+    private long weigh(E e) {
+        if (weigher == null)
+            return 1;
+
+        long w = weigher.transform(e);
+        if (w < 0) throw new IllegalArgumentException("Negative weight: " + w);
+        return w;
+    }
+
+    /**
+     * Evicts the last elements until an element of the given weight fits,
+     * as long as they all come after e. If e itself would have to be
+     * evicted, the deque is left unchanged.
+     *
+     * @param e The element to make room for.
+     * @param w The weight of the element.
+     * @return Whether there is now room for e.
+     */
+    private boolean makeRoom(E e, long w) {
+        if (evictionListener == null)
+            return false;
+
+        List<E> evicted = new ArrayList<E>(1);
+        while (weight + w > capacity) {
+            int last = heap.lastIndex();
+            if (compare(e, queue[last]) >= 0) {
+                for (E x : evicted) {
+                    set(count, x);
+                    heap.bubbleUp(count++);
+                    weight += weigh(x);
+                }
+                return false;
+            }
+
+            evicted.add(removeAt(last));
+        }
+
+        for (E x : evicted) {
+            evictionListener.evicted(x);
+        }
+        return true;
+    }
+
+    // Locking operations, recording metrics if enabled. The metrics are
+    // recorded after unlocking, so that they don't lengthen the time the
+    // lock is held.
+
+    /**
+     * Adds e without waiting.
+     *
+     * @param e         The element to add.
+     * @param exception Whether to throw instead of returning false.
+     * @return Whether adding was successful.
+     * @throws IllegalArgumentException If e is a duplicate and exception is set.
+     * @throws IllegalStateException    If the deque is full and exception is set.
+     */
+    private boolean tryAdd(E e, boolean exception) {
+        DequeMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        boolean duplicate;
+        boolean added;
+        int size;
+        lock.lock();
+        try {
+            if (m != null) acquired = System.nanoTime();
+            duplicate = isDuplicate(e);
+            added = !duplicate && innerAdd(e);
+            size = count;
+        } finally {
+            lock.unlock();
+        }
+
+        if (m != null) m.offered(start, acquired, 0, added ? 1 : 0, added ? 0 : 1, size);
+        if (!added && exception) {
+            if (duplicate)
+                throw new IllegalArgumentException("Element already in deque");
+            throw new IllegalStateException("Deque full");
+        }
+        return added;
+    }
+
+    /**
+     * Adds e, waiting if necessary for space to become available. An
+     * evicting deque never waits: if e does not fit it is dropped, and
+     * handed to the eviction listener unless the call is timed. A duplicate
+     * in an indexed deque is rejected right away, before any of that.
+     *
+     * @param e     The element to add.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return Whether adding was successful.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean innerPut(E e, boolean timed, long nanos) throws InterruptedException {
+        DequeMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        long awaitNanos = 0;
+        boolean added;
+        int size;
+        if (timed)
+            lock.lockInterruptibly();
+        else
+            lock.lock();
+        try {
+            if (m != null) acquired = System.nanoTime();
+            for (; ;) {
+                if (isDuplicate(e)) {
+                    added = false;
+                    break;
+                }
+                if (innerAdd(e)) {
+                    added = true;
+                    break;
+                }
+                if ((timed && nanos <= 0) || evictionListener != null) {
+                    if (!timed && evictionListener != null)
+                        evictionListener.evicted(e);
+                    added = false;
+                    break;
+                }
+
+                long awaitStart = m == null ? 0 : System.nanoTime();
+                if (timed)
+                    nanos = notFull.awaitNanos(nanos);
+                else
+                    notFull.await();
+                if (m != null) awaitNanos += System.nanoTime() - awaitStart;
+            }
+            size = count;
+        } finally {
+            lock.unlock();
+        }
+
+        if (m != null) m.offered(start, acquired, awaitNanos, added ? 1 : 0, added ? 0 : 1, size);
+        return added;
+    }
+
+    /**
+     * Removes an element from either end without waiting.
+     *
+     * @param first Whether to remove the first or the last element.
+     * @return The removed element, or null if empty.
+     */
+    private E tryRemove(boolean first) {
+        DequeMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        E x;
+        lock.lock();
+        try {
+            if (m != null) acquired = System.nanoTime();
+            x = first ? innerRemoveFirst() : innerRemoveLast();
+        } finally {
+            lock.unlock();
+        }
+
+        if (m != null) m.polled(start, acquired, 0, x == null ? 0 : 1);
+        return x;
+    }
+
+    /**
+     * Removes an element from either end, waiting if necessary.
+     *
+     * @param first Whether to remove the first or the last element.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return The removed element, or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private E innerTake(boolean first, boolean timed, long nanos) throws InterruptedException {
+        DequeMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        long awaitNanos = 0;
+        E x;
+        if (timed)
+            lock.lockInterruptibly();
+        else
+            lock.lock();
+        try {
+            if (m != null) acquired = System.nanoTime();
+            for (; ;) {
+                x = first ? innerRemoveFirst() : innerRemoveLast();
+                if (x != null || (timed && nanos <= 0))
+                    break;
+
+                long awaitStart = m == null ? 0 : System.nanoTime();
+                if (timed)
+                    nanos = notEmpty.awaitNanos(nanos);
+                else
+                    notEmpty.await();
+                if (m != null) awaitNanos += System.nanoTime() - awaitStart;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (m != null) m.polled(start, acquired, awaitNanos, x == null ? 0 : 1);
+        return x;
+    }
+
+    /**
+     * Removes up to maxElements from one end of the deque while holding
+     * the lock once.
+     *
+     * @param c           The collection to add the elements to.
+     * @param maxElements The maximal amount of elements to remove.
+     * @param first       Whether to remove from the first or the last end.
+     * @return The amount of removed elements.
+     */
+    private int lockedDrain(Collection<? super E> c, int maxElements, boolean first) {
+        DequeMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        int n;
+        lock.lock();
+        try {
+            if (m != null) acquired = System.nanoTime();
+            n = innerDrain(c, maxElements, first);
+        } finally {
+            lock.unlock();
+        }
+
+        if (m != null) m.polled(start, acquired, 0, n);
+        return n;
+    }
+
     /**
      * Removes and returns first element, or null if empty.
      *
      * @return The removed element.
      */
     private E innerRemoveFirst() {
-        E f = list.pollFirst();
-        if (f == null)
+        if (count == 0)
             return null;
 
-
-        notFull.signal();
+        E f = removeAt(0);
+        signalNotFull();
         return f;
     }
 
@@ -153,90 +668,304 @@ public class PriorityBlockingDeque<E>
      * @return The removed element.
      */
     private E innerRemoveLast() {
-        E l = list.pollLast();
-        if (l == null)
+        if (count == 0)
             return null;
 
-        notFull.signal();
+        E l = removeAt(heap.lastIndex());
+        signalNotFull();
         return l;
     }
 
-    // BlockingDeque methods
+    /**
+     * Adds as many of the given elements as capacity allows. When the batch
+     * is large compared to the heap, the elements are appended and the heap
+     * is rebuilt in linear time instead of inserting them one by one.
+     *
+     * @param elements The elements to add.
+     * @return The amount of elements added.
+     */
+    @SuppressWarnings("unchecked")
+    private int innerAddAll(Object[] elements) {
+        if (weigher != null || evictionListener != null || index != null) {
+            int added = 0;
+            for (Object e : elements) {
+                if (innerAdd((E) e))
+                    ++added;
+            }
+            return added;
+        }
+
+        int n = Math.min(elements.length, capacity - count);
+        if (n <= 0)
+            return 0;
+
+        if (count + n > queue.length) {
+            int newLength = Math.max(count + n, queue.length + (queue.length >> 1));
+            queue = Arrays.copyOf(queue, newLength < 0 || newLength > capacity ? capacity : newLength);
+        }
+
+        System.arraycopy(elements, 0, queue, count, n);
+        weight += n;
+        if (n > count) {
+            count += n;
+            heap.heapify();
+        } else {
+            for (int i = 0; i < n; i++) {
+                heap.bubbleUp(count++);
+            }
+        }
+
+        notEmpty.signalAll();
+        return n;
+    }
 
     /**
-     * @throws IllegalStateException {@inheritDoc}
-     * @throws NullPointerException  {@inheritDoc}
+     * Removes up to maxElements from one end of the deque, waking up all
+     * waiting putters once at the end. Removing every element sorts the
+     * array in place instead of removing the elements one by one.
+     *
+     * @param c           The collection to add the elements to.
+     * @param maxElements The maximal amount of elements to remove.
+     * @param first       Whether to remove from the first or the last end.
+     * @return The amount of removed elements.
      */
-    public void addFirst(E e) {
-        if (!offerFirst(e))
-            throw new IllegalStateException("Deque full");
+    @SuppressWarnings("unchecked")
+    private int innerDrain(Collection<? super E> c, int maxElements, boolean first) {
+        int n = Math.min(maxElements, count);
+        if (n <= 0)
+            return 0;
+
+        if (n == count) {
+            Object[] sorted = sortedCopy();
+            removeAll();
+            if (first) {
+                for (Object o : sorted) c.add((E) o);
+            } else {
+                for (int i = sorted.length - 1; i >= 0; i--) c.add((E) sorted[i]);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                c.add(removeAt(first ? 0 : heap.lastIndex()));
+            }
+        }
+
+        notFull.signalAll();
+        return n;
     }
 
     /**
-     * @throws IllegalStateException {@inheritDoc}
-     * @throws NullPointerException  {@inheritDoc}
+     * Removes the element which equals o and is closest to the given end.
+     *
+     * @param o         The object to remove.
+     * @param ascending Whether to prefer the smallest matching element.
+     * @return Whether an element was removed.
      */
-    public void addLast(E e) {
-        if (!offerLast(e))
-            throw new IllegalStateException("Deque full");
+    private boolean innerRemoveOccurrence(Object o, boolean ascending) {
+        int found = indexOf(o, ascending);
+        if (found < 0)
+            return false;
+
+        removeAt(found);
+        signalNotFull();
+        return true;
     }
 
     /**
-     * @throws NullPointerException {@inheritDoc}
+     * Removes the given instance, compared by identity rather than by equals.
+     * Used by iterators, whose element may have been removed by another
+     * thread since their snapshot was taken.
+     *
+     * @param o The instance to remove.
+     * @return Whether the instance was still in the deque and was removed.
      */
-    public boolean offerFirst(E e) {
-        if (e == null) throw new NullPointerException();
+    boolean removeEq(Object o) {
         lock.lock();
         try {
-            return innerAdd(e);
+            if (index != null) {
+                int[] position = index.get(o);
+                if (position == null || queue[position[0]] != o)
+                    return false;
+
+                removeAt(position[0]);
+                signalNotFull();
+                return true;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (queue[i] == o) {
+                    removeAt(i);
+                    signalNotFull();
+                    return true;
+                }
+            }
+            return false;
         } finally {
             lock.unlock();
         }
     }
 
     /**
-     * @throws NullPointerException {@inheritDoc}
+     * Returns a copy of the elements of the heap, sorted in ascending order.
+     *
+     * @return The sorted copy.
      */
-    public boolean offerLast(E e) {
-        if (e == null) throw new NullPointerException();
+    private Object[] sortedCopy() {
+        return sort(Arrays.copyOf(queue, count));
+    }
+
+    /**
+     * Returns an unsorted copy of the elements of the heap, taking the
+     * lock only for the duration of the copy.
+     *
+     * @return The copy.
+     */
+    private Object[] snapshot() {
         lock.lock();
         try {
-            return innerAdd(e);
+            return Arrays.copyOf(queue, count);
         } finally {
             lock.unlock();
         }
     }
 
     /**
-     * @throws NullPointerException {@inheritDoc}
-     * @throws InterruptedException {@inheritDoc}
+     * Sorts the given elements in ascending order. Does not need the lock.
+     *
+     * @param elements The elements to sort.
+     * @return The given array, sorted.
      */
-    public void putFirst(E e) throws InterruptedException {
-        if (e == null) throw new NullPointerException();
+    @SuppressWarnings("unchecked")
+    private Object[] sort(Object[] elements) {
+        if (comparator == null) {
+            Arrays.sort(elements);
+        } else {
+            Arrays.sort(elements, (Comparator<Object>) comparator);
+        }
+        return elements;
+    }
+
+    /**
+     * Starts collecting metrics about this deque, if not collecting them
+     * already. Until this method is called, no metrics are collected and
+     * no time is spent on them.
+     *
+     * @return the metrics of this deque
+     */
+    public DequeMetrics enableMetrics() {
         lock.lock();
         try {
-            while (!innerAdd(e))
-                notFull.await();
+            if (metrics == null)
+                metrics = new DequeMetrics();
+            return metrics;
         } finally {
             lock.unlock();
         }
     }
 
     /**
-     * @throws NullPointerException {@inheritDoc}
-     * @throws InterruptedException {@inheritDoc}
+     * Stops collecting metrics about this deque.
      */
-    public void putLast(E e) throws InterruptedException {
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Returns the metrics of this deque, or null if they are not enabled.
+     *
+     * @return the metrics of this deque
+     */
+    public DequeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Moves an element whose priority has changed to its new place in the
+     * deque. The element in the deque which equals <tt>e</tt> is replaced
+     * by <tt>e</tt>, and moved towards the head or the tail as its new
+     * priority requires. This is cheaper than removing the element and
+     * inserting it again, particularly for an indexed deque.
+     * <p/>
+     * <p>The priority of an element must only change while the element is
+     * in the deque if this method is called right after the change.
+     *
+     * @param e the element whose priority changed
+     * @return <tt>true</tt> if this deque contained the element
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean updatePriority(E e) {
         if (e == null) throw new NullPointerException();
         lock.lock();
         try {
-            while (!innerAdd(e))
-                notFull.await();
+            int i = indexOf(e, true);
+            if (i < 0)
+                return false;
+
+            set(i, e);
+            heap.bubbleUp(heap.trickleDown(i));
+            return true;
         } finally {
             lock.unlock();
         }
     }
 
+    // BlockingDeque methods
+
+    /**
+     * @throws IllegalStateException    {@inheritDoc}
+     * @throws NullPointerException     {@inheritDoc}
+     * @throws IllegalArgumentException if this deque is indexed and already
+     *                                  contains an equal element
+     */
+    public void addFirst(E e) {
+        if (e == null) throw new NullPointerException();
+        tryAdd(e, true);
+    }
+
+    /**
+     * @throws IllegalStateException    {@inheritDoc}
+     * @throws NullPointerException     {@inheritDoc}
+     * @throws IllegalArgumentException if this deque is indexed and already
+     *                                  contains an equal element
+     */
+    public void addLast(E e) {
+        if (e == null) throw new NullPointerException();
+        tryAdd(e, true);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerFirst(E e) {
+        if (e == null) throw new NullPointerException();
+        return tryAdd(e, false);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerLast(E e) {
+        if (e == null) throw new NullPointerException();
+        return tryAdd(e, false);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putFirst(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putLast(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(e, false, 0);
+    }
+
     /**
      * @throws NullPointerException {@inheritDoc}
      * @throws InterruptedException {@inheritDoc}
@@ -244,19 +973,7 @@ public class PriorityBlockingDeque<E>
     public boolean offerFirst(E e, long timeout, TimeUnit unit)
             throws InterruptedException {
         if (e == null) throw new NullPointerException();
-        long nanos = unit.toNanos(timeout);
-        lock.lockInterruptibly();
-        try {
-            for (; ;) {
-                if (innerAdd(e))
-                    return true;
-                if (nanos <= 0)
-                    return false;
-                nanos = notFull.awaitNanos(nanos);
-            }
-        } finally {
-            lock.unlock();
-        }
+        return innerPut(e, true, unit.toNanos(timeout));
     }
 
     /**
@@ -266,19 +983,7 @@ public class PriorityBlockingDeque<E>
     public boolean offerLast(E e, long timeout, TimeUnit unit)
             throws InterruptedException {
         if (e == null) throw new NullPointerException();
-        long nanos = unit.toNanos(timeout);
-        lock.lockInterruptibly();
-        try {
-            for (; ;) {
-                if (innerAdd(e))
-                    return true;
-                if (nanos <= 0)
-                    return false;
-                nanos = notFull.awaitNanos(nanos);
-            }
-        } finally {
-            lock.unlock();
-        }
+        return innerPut(e, true, unit.toNanos(timeout));
     }
 
     /**
@@ -300,81 +1005,60 @@ public class PriorityBlockingDeque<E>
     }
 
     public E pollFirst() {
-        lock.lock();
-        try {
-            return innerRemoveFirst();
-        } finally {
-            lock.unlock();
-        }
+        return tryRemove(true);
     }
 
     public E pollLast() {
-        lock.lock();
-        try {
-            return innerRemoveLast();
-        } finally {
-            lock.unlock();
-        }
+        return tryRemove(false);
+    }
+
+    /**
+     * Removes and returns up to <tt>n</tt> elements from the head of this
+     * deque, smallest first, while holding the lock once.
+     *
+     * @param n the maximal number of elements to remove
+     * @return the removed elements; empty if this deque is empty
+     * @throws IllegalArgumentException if <tt>n</tt> is negative
+     */
+    public List<E> pollFirst(int n) {
+        return innerPoll(n, true);
+    }
+
+    /**
+     * Removes and returns up to <tt>n</tt> elements from the tail of this
+     * deque, largest first, while holding the lock once.
+     *
+     * @param n the maximal number of elements to remove
+     * @return the removed elements; empty if this deque is empty
+     * @throws IllegalArgumentException if <tt>n</tt> is negative
+     */
+    public List<E> pollLast(int n) {
+        return innerPoll(n, false);
+    }
+
+    private List<E> innerPoll(int n, boolean first) {
+        if (n < 0) throw new IllegalArgumentException();
+        List<E> result = new ArrayList<E>(Math.min(n, 16));
+        lockedDrain(result, n, first);
+        return result;
     }
 
     public E takeFirst() throws InterruptedException {
-        lock.lock();
-        try {
-            E x;
-            while ((x = innerRemoveFirst()) == null)
-                notEmpty.await();
-            return x;
-        } finally {
-            lock.unlock();
-        }
+        return innerTake(true, false, 0);
     }
 
     public E takeLast() throws InterruptedException {
-        lock.lock();
-        try {
-            E x;
-            while ((x = innerRemoveLast()) == null)
-                notEmpty.await();
-            return x;
-        } finally {
-            lock.unlock();
-        }
+        return innerTake(false, false, 0);
     }
 
     public E pollFirst(long timeout, TimeUnit unit)
             throws InterruptedException {
-        long nanos = unit.toNanos(timeout);
-        lock.lockInterruptibly();
-        try {
-            for (; ;) {
-                E x = innerRemoveFirst();
-                if (x != null)
-                    return x;
-                if (nanos <= 0)
-                    return null;
-                nanos = notEmpty.awaitNanos(nanos);
-            }
-        } finally {
-            lock.unlock();
-        }
+        return innerTake(true, true, unit.toNanos(timeout));
     }
 
     public E pollLast(long timeout, TimeUnit unit)
             throws InterruptedException {
-        long nanos = unit.toNanos(timeout);
-        lock.lockInterruptibly();
-        try {
-            for (; ;) {
-                E x = innerRemoveLast();
-                if (x != null)
-                    return x;
-                if (nanos <= 0)
-                    return null;
-                nanos = notEmpty.awaitNanos(nanos);
-            }
-        } finally {
-            lock.unlock();
-        }
+        return innerTake(false, true, unit.toNanos(timeout));
     }
 
     /**
@@ -398,7 +1082,7 @@ public class PriorityBlockingDeque<E>
     public E peekFirst() {
         lock.lock();
         try {
-            return list.size() == 0 ? null : list.peekFirst();
+            return count == 0 ? null : elementAt(0);
         } finally {
             lock.unlock();
         }
@@ -407,7 +1091,7 @@ public class PriorityBlockingDeque<E>
     public E peekLast() {
         lock.lock();
         try {
-            return list.size() == 0 ? null : list.peekLast();
+            return count == 0 ? null : elementAt(heap.lastIndex());
         } finally {
             lock.unlock();
         }
@@ -417,14 +1101,7 @@ public class PriorityBlockingDeque<E>
         if (o == null) return false;
         lock.lock();
         try {
-            for (Iterator<E> it = list.iterator(); it.hasNext();) {
-                E e = it.next();
-                if (o.equals(e)) {
-                    it.remove();
-                    return true;
-                }
-            }
-            return false;
+            return innerRemoveOccurrence(o, true);
         } finally {
             lock.unlock();
         }
@@ -434,14 +1111,7 @@ public class PriorityBlockingDeque<E>
         if (o == null) return false;
         lock.lock();
         try {
-            for (Iterator<E> it = list.descendingIterator(); it.hasNext();) {
-                E e = it.next();
-                if (o.equals(e)) {
-                    it.remove();
-                    return true;
-                }
-            }
-            return false;
+            return innerRemoveOccurrence(o, false);
         } finally {
             lock.unlock();
         }
@@ -456,9 +1126,11 @@ public class PriorityBlockingDeque<E>
      * <p/>
      * <p>This method is equivalent to {@link #addLast}.
      *
-     * @throws IllegalStateException if the element cannot be added at this
-     *                               time due to capacity restrictions
-     * @throws NullPointerException  if the specified element is null
+     * @throws IllegalStateException    if the element cannot be added at this
+     *                                  time due to capacity restrictions
+     * @throws NullPointerException     if the specified element is null
+     * @throws IllegalArgumentException if this deque is indexed and already
+     *                                  contains an equal element
      */
     @Override
     public boolean add(E e) {
@@ -490,6 +1162,39 @@ public class PriorityBlockingDeque<E>
         return offerLast(e, timeout, unit);
     }
 
+    /**
+     * Inserts as many of the given elements as capacity allows, while
+     * holding the lock once and waking up the waiting takers once.
+     * Elements beyond the remaining capacity are not inserted.
+     *
+     * @param c the elements to insert
+     * @return the number of elements inserted
+     * @throws NullPointerException if the collection or any of its elements is null
+     */
+    public int offerAll(Collection<? extends E> c) {
+        Object[] elements = c.toArray();
+        for (Object e : elements) {
+            if (e == null) throw new NullPointerException();
+        }
+
+        DequeMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        long acquired = 0;
+        int added;
+        int size;
+        lock.lock();
+        try {
+            if (m != null) acquired = System.nanoTime();
+            added = innerAddAll(elements);
+            size = count;
+        } finally {
+            lock.unlock();
+        }
+
+        if (m != null) m.offered(start, acquired, 0, added, elements.length - added, size);
+        return added;
+    }
+
     /**
      * Retrieves and removes the head of the queue represented by this deque.
      * This method differs from {@link #poll poll} only in that it throws an
@@ -540,7 +1245,8 @@ public class PriorityBlockingDeque<E>
      * Returns the number of additional elements that this deque can ideally
      * (in the absence of memory or resource constraints) accept without
      * blocking. This is always equal to the initial capacity of this deque
-     * less the current <tt>size</tt> of this deque.
+     * less the current <tt>size</tt> of this deque; for a deque with a
+     * weigher, it is the capacity less the total weight of the elements.
      * <p/>
      * <p>Note that you <em>cannot</em> always tell if an attempt to insert
      * an element will succeed by inspecting <tt>remainingCapacity</tt>
@@ -550,7 +1256,7 @@ public class PriorityBlockingDeque<E>
     public int remainingCapacity() {
         lock.lock();
         try {
-            return capacity - list.size();
+            return (int) (capacity - weight);
         } finally {
             lock.unlock();
         }
@@ -567,18 +1273,7 @@ public class PriorityBlockingDeque<E>
             throw new NullPointerException();
         if (c == this)
             throw new IllegalArgumentException();
-        lock.lock();
-        try {
-            for (E e : list) {
-                c.add(e);
-            }
-            int n = list.size();
-            list.clear();
-            notFull.signalAll();
-            return n;
-        } finally {
-            lock.unlock();
-        }
+        return lockedDrain(c, Integer.MAX_VALUE, true);
     }
 
     /**
@@ -592,21 +1287,7 @@ public class PriorityBlockingDeque<E>
             throw new NullPointerException();
         if (c == this)
             throw new IllegalArgumentException();
-        lock.lock();
-        try {
-            int n = 0;
-            for (Iterator<E> it = list.iterator(); n < maxElements && it.hasNext();) {
-                E e = it.next();
-                c.add(e);
-                it.remove();
-                ++n;
-            }
-
-            notFull.signalAll();
-            return n;
-        } finally {
-            lock.unlock();
-        }
+        return lockedDrain(c, maxElements, true);
     }
 
     // Stack methods
@@ -656,7 +1337,7 @@ public class PriorityBlockingDeque<E>
     public int size() {
         lock.lock();
         try {
-            return list.size();
+            return count;
         } finally {
             lock.unlock();
         }
@@ -675,7 +1356,7 @@ public class PriorityBlockingDeque<E>
         if (o == null) return false;
         lock.lock();
         try {
-            return list.contains(o);
+            return indexOf(o, true) >= 0;
         } finally {
             lock.unlock();
         }
@@ -696,12 +1377,7 @@ public class PriorityBlockingDeque<E>
      */
     @Override
     public Object[] toArray() {
-        lock.lock();
-        try {
-            return list.toArray();
-        } finally {
-            lock.unlock();
-        }
+        return sort(snapshot());
     }
 
     /**
@@ -741,23 +1417,17 @@ public class PriorityBlockingDeque<E>
      * @throws NullPointerException if the specified array is null
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T[] toArray(T[] a) {
-        lock.lock();
-        try {
-            return list.toArray(a);
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    @Override
-    public String toString() {
-        lock.lock();
-        try {
-            return super.toString();
-        } finally {
-            lock.unlock();
-        }
+        Object[] sorted = sort(snapshot());
+        int n = sorted.length;
+        if (a.length < n)
+            return (T[]) Arrays.copyOf(sorted, n, a.getClass());
+
+        System.arraycopy(sorted, 0, a, 0, n);
+        if (a.length > n)
+            a[n] = null;
+        return a;
     }
 
     /**
@@ -768,19 +1438,86 @@ public class PriorityBlockingDeque<E>
     public void clear() {
         lock.lock();
         try {
-            list.clear();
+            removeAll();
             notFull.signalAll();
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Returns an iterator over the elements in this deque in proper sequence.
+     * The elements will be returned in order from first (head) to last (tail).
+     * The returned iterator is <i>weakly consistent</i>: it works on a copy
+     * of the deque taken when the iterator is created, never throws
+     * {@link ConcurrentModificationException}, and does not reflect later
+     * changes. Its <tt>remove</tt> method removes the returned element from
+     * the deque if it is still there. Producers are only blocked while the
+     * copy is taken; sorting it happens outside of the lock.
+     *
+     * @return an iterator over the elements in this deque in proper sequence
+     */
     @Override
     public Iterator<E> iterator() {
-        return list.iterator();
+        return new Itr(true);
     }
 
+    /**
+     * Returns an iterator over the elements in this deque in reverse
+     * sequential order. The elements will be returned in order from
+     * last (tail) to first (head). The returned iterator is weakly
+     * consistent, in the same way as the one returned by {@link #iterator}.
+     *
+     * @return an iterator over the elements in this deque in reverse order
+     */
     public Iterator<E> descendingIterator() {
-        return list.descendingIterator();
+        return new Itr(false);
+    }
+
+    /**
+     * Iterator over a copy of the heap. The lock is only held while the
+     * heap array is copied; the copy is sorted outside of the lock, when
+     * the first element is requested.
+     */
+    private class Itr implements Iterator<E> {
+        private final Object[] array;
+        private final boolean ascending;
+        private boolean sorted;
+        private int cursor;
+        private int lastRet = -1;
+
+        Itr(boolean ascending) {
+            this.array = snapshot();
+            this.ascending = ascending;
+        }
+
+        public boolean hasNext() {
+            return cursor < array.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (cursor >= array.length)
+                throw new NoSuchElementException();
+
+            if (!sorted) {
+                sort(array);
+                sorted = true;
+            }
+
+            lastRet = ascending ? cursor : array.length - 1 - cursor;
+            cursor++;
+            return (E) array[lastRet];
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+
+            Object x = array[lastRet];
+            lastRet = -1;
+
+            removeEq(x);
+        }
     }
 }
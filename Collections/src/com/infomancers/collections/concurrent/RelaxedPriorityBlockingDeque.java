@@ -0,0 +1,855 @@
+package com.infomancers.collections.concurrent;
+
+import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * An optionally-bounded {@linkplain BlockingDeque blocking deque} which
+ * trades strict priority order for scalability.
+ * <p/>
+ * <p>The elements are spread over a number of independently locked
+ * {@linkplain PriorityBlockingDeque priority deques}, called shards. An
+ * element is inserted into a randomly chosen shard; an element is removed
+ * by looking at the ends of two randomly chosen shards and taking from the
+ * better one. Threads therefore rarely contend on the same lock, but
+ * <tt>pollFirst</tt> is not guaranteed to return the smallest element of
+ * the deque, only one of the smallest: the expected rank of the removed
+ * element grows linearly with the number of shards. A deque with a single
+ * shard is strictly ordered.
+ * <p/>
+ * <p><tt>peekFirst</tt> and <tt>peekLast</tt> look at all of the shards and
+ * so do return the smallest and largest elements, but the element they
+ * return is not necessarily the one the next <tt>poll</tt> removes.
+ * <p/>
+ * <p>The optional capacity bound constructor argument serves as a
+ * way to prevent excessive expansion. The capacity, if unspecified,
+ * is equal to {@link Integer#MAX_VALUE}.
+ * <p/>
+ * <p>Unlike most collections, the <tt>size</tt> method is a constant-time
+ * operation; it may however include elements which are in the middle of
+ * being inserted. Iterators return the elements in order, from a snapshot
+ * taken when the iterator is created.
+ *
+ * @author Aviad Ben Dov
+ * @param <E> the type of elements held in this collection
+ * @since 0.4
+ */
+public class RelaxedPriorityBlockingDeque<E>
+        extends AbstractQueue<E>
+        implements BlockingDeque<E>, java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /*
+     * The count is reserved before an element is offered to its shard and
+     * released after it was removed from one, the same way as in
+     * ConcurrentPriorityBlockingDeque, and blocked threads park on a
+     * single lock shared by all of the shards.
+     *
+     * A removal gives up sampling after a few unlucky attempts (both
+     * shards empty, or emptied under its feet) and falls back to scanning
+     * all of the shards, so that it never reports an empty deque while
+     * another shard still holds elements.
+     */
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private final int capacity;
+
+    private final List<PriorityBlockingDeque<E>> shards;
+
+    private final Comparator<E> comparator;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Lock guarding the conditions; never held by non-blocking operations.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Condition for waiting takes
+     */
+    private final Condition notEmpty = lock.newCondition();
+    /**
+     * Condition for waiting puts
+     */
+    private final Condition notFull = lock.newCondition();
+
+    private final AtomicInteger waitingTakers = new AtomicInteger();
+
+    private final AtomicInteger waitingPutters = new AtomicInteger();
+
+    /**
+     * Creates a <tt>RelaxedPriorityBlockingDeque</tt> with a capacity of
+     * {@link Integer#MAX_VALUE} and the default number of shards.
+     */
+    public RelaxedPriorityBlockingDeque() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a <tt>RelaxedPriorityBlockingDeque</tt> with the given (fixed)
+     * capacity and the default number of shards.
+     *
+     * @param capacity the capacity of this deque
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public RelaxedPriorityBlockingDeque(int capacity) {
+        this(null, capacity);
+    }
+
+    /**
+     * Creates a <tt>RelaxedPriorityBlockingDeque</tt> with twice as many
+     * shards as there are available processors.
+     *
+     * @param comparator the ordering of the elements, or null for their natural ordering
+     * @param capacity   the capacity of this deque
+     * @throws IllegalArgumentException if <tt>capacity</tt> is less than 1
+     */
+    public RelaxedPriorityBlockingDeque(Comparator<E> comparator, int capacity) {
+        this(comparator, capacity, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a <tt>RelaxedPriorityBlockingDeque</tt> with the given number
+     * of shards. More shards allow more threads to work on the deque at the
+     * same time, at the cost of a larger error in the order of removal.
+     *
+     * @param comparator the ordering of the elements, or null for their natural ordering
+     * @param capacity   the capacity of this deque
+     * @param shards     the number of shards
+     * @throws IllegalArgumentException if <tt>capacity</tt> or <tt>shards</tt> is less than 1
+     */
+    public RelaxedPriorityBlockingDeque(Comparator<E> comparator, int capacity, int shards) {
+        if (capacity <= 0 || shards <= 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.comparator = comparator;
+        this.shards = new ArrayList<PriorityBlockingDeque<E>>(shards);
+        for (int i = 0; i < shards; i++) {
+            this.shards.add(new PriorityBlockingDeque<E>(comparator, Integer.MAX_VALUE));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        return comparator == null ? ((Comparable<E>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    /**
+     * Returns whether a should be removed before b from the given end.
+     * A null element is never better.
+     */
+    private boolean isBetter(E a, E b, boolean first) {
+        if (a == null)
+            return false;
+        if (b == null)
+            return true;
+
+        int c = compare(a, b);
+        return first ? c < 0 : c > 0;
+    }
+
+    private static <E> E peekEnd(PriorityBlockingDeque<E> shard, boolean first) {
+        return first ? shard.peekFirst() : shard.peekLast();
+    }
+
+    private static <E> E pollEnd(PriorityBlockingDeque<E> shard, boolean first) {
+        return first ? shard.pollFirst() : shard.pollLast();
+    }
+
+    // Basic adding and removing operations, never blocking
+
+    /**
+     * Adds e or returns false if full.
+     *
+     * @param e The element to add.
+     * @return Whether adding was successful.
+     */
+    private boolean innerAdd(E e) {
+        for (; ;) {
+            int c = count.get();
+            if (c >= capacity)
+                return false;
+            if (count.compareAndSet(c, c + 1))
+                break;
+        }
+
+        shards.get(random.get().nextInt(shards.size())).offer(e);
+        signalIfWaiting(waitingTakers, notEmpty);
+
+        return true;
+    }
+
+    /**
+     * Removes and returns an element from the given end, or null if empty.
+     *
+     * @param first Whether to remove from the first or the last end.
+     * @return The removed element.
+     */
+    private E innerRemove(boolean first) {
+        E x = removeFromShards(first);
+        if (x != null)
+            released(1);
+        return x;
+    }
+
+    /**
+     * Removes an element from the given end of one of the shards without
+     * releasing its count.
+     *
+     * @param first Whether to remove from the first or the last end.
+     * @return The removed element, or null if all shards are empty.
+     */
+    private E removeFromShards(boolean first) {
+        if (count.get() == 0)
+            return null;
+
+        int n = shards.size();
+        Random r = random.get();
+        for (int attempt = 0; attempt < 2 * n; attempt++) {
+            PriorityBlockingDeque<E> a = shards.get(r.nextInt(n));
+            PriorityBlockingDeque<E> b = shards.get(r.nextInt(n));
+            PriorityBlockingDeque<E> chosen = isBetter(peekEnd(b, first), peekEnd(a, first), first) ? b : a;
+
+            E x = pollEnd(chosen, first);
+            if (x != null)
+                return x;
+        }
+
+        for (int attempt = 0; attempt < n; attempt++) {
+            PriorityBlockingDeque<E> chosen = bestShard(first);
+            if (chosen == null)
+                return null;
+
+            E x = pollEnd(chosen, first);
+            if (x != null)
+                return x;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the shard holding the best element for the given end,
+     * or null if all shards are empty.
+     */
+    private PriorityBlockingDeque<E> bestShard(boolean first) {
+        PriorityBlockingDeque<E> best = null;
+        E bestItem = null;
+        for (PriorityBlockingDeque<E> shard : shards) {
+            E item = peekEnd(shard, first);
+            if (isBetter(item, bestItem, first)) {
+                best = shard;
+                bestItem = item;
+            }
+        }
+        return best;
+    }
+
+    private void released(int n) {
+        count.addAndGet(-n);
+        signalIfWaiting(waitingPutters, notFull);
+    }
+
+    private void signalIfWaiting(AtomicInteger waiters, Condition condition) {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // BlockingDeque methods
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void addFirst(E e) {
+        if (!offerFirst(e))
+            throw new IllegalStateException("Deque full");
+    }
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void addLast(E e) {
+        if (!offerLast(e))
+            throw new IllegalStateException("Deque full");
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerFirst(E e) {
+        if (e == null) throw new NullPointerException();
+        return innerAdd(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offerLast(E e) {
+        if (e == null) throw new NullPointerException();
+        return innerAdd(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putFirst(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void putLast(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        innerPut(e, false, 0);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offerFirst(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offerLast(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        return innerPut(e, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Adds an element, waiting if necessary for space to become available.
+     *
+     * @param e     The element to add.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return Whether adding was successful.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean innerPut(E e, boolean timed, long nanos) throws InterruptedException {
+        if (innerAdd(e))
+            return true;
+
+        lock.lockInterruptibly();
+        waitingPutters.incrementAndGet();
+        try {
+            for (; ;) {
+                if (innerAdd(e))
+                    return true;
+                if (timed && nanos <= 0)
+                    return false;
+                if (timed)
+                    nanos = notFull.awaitNanos(nanos);
+                else
+                    notFull.await();
+            }
+        } finally {
+            waitingPutters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeFirst() {
+        E x = pollFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E removeLast() {
+        E x = pollLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    public E pollFirst() {
+        return innerRemove(true);
+    }
+
+    public E pollLast() {
+        return innerRemove(false);
+    }
+
+    public E takeFirst() throws InterruptedException {
+        return innerTake(true, false, 0);
+    }
+
+    public E takeLast() throws InterruptedException {
+        return innerTake(false, false, 0);
+    }
+
+    public E pollFirst(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTake(true, true, unit.toNanos(timeout));
+    }
+
+    public E pollLast(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return innerTake(false, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes an element from either end, waiting if necessary.
+     *
+     * @param first Whether to remove the first or the last element.
+     * @param timed Whether to give up after the given time.
+     * @param nanos How long to wait, if timed.
+     * @return The removed element, or null if the timeout elapsed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private E innerTake(boolean first, boolean timed, long nanos) throws InterruptedException {
+        E x = innerRemove(first);
+        if (x != null)
+            return x;
+
+        lock.lockInterruptibly();
+        waitingTakers.incrementAndGet();
+        try {
+            for (; ;) {
+                x = innerRemove(first);
+                if (x != null)
+                    return x;
+                if (timed && nanos <= 0)
+                    return null;
+                if (timed)
+                    nanos = notEmpty.awaitNanos(nanos);
+                else
+                    notEmpty.await();
+            }
+        } finally {
+            waitingTakers.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getFirst() {
+        E x = peekFirst();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E getLast() {
+        E x = peekLast();
+        if (x == null) throw new NoSuchElementException();
+        return x;
+    }
+
+    public E peekFirst() {
+        PriorityBlockingDeque<E> shard = bestShard(true);
+        return shard == null ? null : shard.peekFirst();
+    }
+
+    public E peekLast() {
+        PriorityBlockingDeque<E> shard = bestShard(false);
+        return shard == null ? null : shard.peekLast();
+    }
+
+    public boolean removeFirstOccurrence(Object o) {
+        if (o == null) return false;
+        for (PriorityBlockingDeque<E> shard : shards) {
+            if (shard.removeFirstOccurrence(o)) {
+                released(1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean removeLastOccurrence(Object o) {
+        if (o == null) return false;
+        for (PriorityBlockingDeque<E> shard : shards) {
+            if (shard.removeLastOccurrence(o)) {
+                released(1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // BlockingQueue methods
+
+    /**
+     * Inserts the specified element to the deque unless it would
+     * violate capacity restrictions.  When using a capacity-restricted deque,
+     * it is generally preferable to use method {@link #offer(Object) offer}.
+     * <p/>
+     * <p>This method is equivalent to {@link #addLast}.
+     *
+     * @throws IllegalStateException if the element cannot be added at this
+     *                               time due to capacity restrictions
+     * @throws NullPointerException  if the specified element is null
+     */
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    /**
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        return offerLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public void put(E e) throws InterruptedException {
+        putLast(e);
+    }
+
+    /**
+     * @throws NullPointerException {@inheritDoc}
+     * @throws InterruptedException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return offerLast(e, timeout, unit);
+    }
+
+    /**
+     * Retrieves and removes the head of the queue represented by this deque.
+     * This method differs from {@link #poll poll} only in that it throws an
+     * exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #removeFirst() removeFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    public E poll() {
+        return pollFirst();
+    }
+
+    public E take() throws InterruptedException {
+        return takeFirst();
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return pollFirst(timeout, unit);
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of the queue represented by
+     * this deque.  This method differs from {@link #peek peek} only in that
+     * it throws an exception if this deque is empty.
+     * <p/>
+     * <p>This method is equivalent to {@link #getFirst() getFirst}.
+     *
+     * @return the head of the queue represented by this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    public E peek() {
+        return peekFirst();
+    }
+
+    /**
+     * Returns the number of additional elements that this deque can ideally
+     * (in the absence of memory or resource constraints) accept without
+     * blocking. This is always equal to the initial capacity of this deque
+     * less the current <tt>size</tt> of this deque.
+     * <p/>
+     * <p>Note that you <em>cannot</em> always tell if an attempt to insert
+     * an element will succeed by inspecting <tt>remainingCapacity</tt>
+     * because it may be the case that another thread is about to
+     * insert or remove an element.
+     */
+    public int remainingCapacity() {
+        return capacity - count.get();
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+
+        return innerDrain(c, maxElements);
+    }
+
+    /**
+     * Removes up to maxElements from the head of the deque, waking up
+     * all waiting putters once at the end.
+     *
+     * @param c           The collection to add the elements to, or null to discard them.
+     * @param maxElements The maximal amount of elements to remove.
+     * @return The amount of removed elements.
+     */
+    private int innerDrain(Collection<? super E> c, int maxElements) {
+        int n = 0;
+        E x;
+        while (n < maxElements && (x = removeFromShards(true)) != null) {
+            if (c != null)
+                c.add(x);
+            ++n;
+        }
+
+        if (n > 0) {
+            count.addAndGet(-n);
+            if (waitingPutters.get() > 0) {
+                lock.lock();
+                try {
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return n;
+    }
+
+    // Stack methods
+
+    /**
+     * @throws IllegalStateException {@inheritDoc}
+     * @throws NullPointerException  {@inheritDoc}
+     */
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    public E pop() {
+        return removeFirst();
+    }
+
+    // Collection methods
+
+    /**
+     * Removes the first occurrence of the specified element from this deque.
+     * If the deque does not contain the element, it is unchanged.
+     * More formally, removes the first element <tt>e</tt> such that
+     * <tt>o.equals(e)</tt> (if such an element exists).
+     * Returns <tt>true</tt> if this deque contained the specified element
+     * (or equivalently, if this deque changed as a result of the call).
+     * <p/>
+     * <p>This method is equivalent to
+     * {@link #removeFirstOccurrence(Object) removeFirstOccurrence}.
+     *
+     * @param o element to be removed from this deque, if present
+     * @return <tt>true</tt> if this deque changed as a result of the call
+     */
+    @Override
+    public boolean remove(Object o) {
+        return removeFirstOccurrence(o);
+    }
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque
+     */
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this deque contains the specified element.
+     * More formally, returns <tt>true</tt> if and only if this deque contains
+     * at least one element <tt>e</tt> such that <tt>o.equals(e)</tt>.
+     *
+     * @param o object to be checked for containment in this deque
+     * @return <tt>true</tt> if this deque contains the specified element
+     */
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+        for (PriorityBlockingDeque<E> shard : shards) {
+            if (shard.contains(o))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all of the elements from this deque.
+     */
+    @Override
+    public void clear() {
+        innerDrain(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in proper sequence.
+     * The elements will be returned in order from first (head) to last (tail).
+     * The iterator works on a snapshot of the deque, and does not reflect
+     * changes made after it was created.
+     *
+     * @return an iterator over the elements in this deque in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(true);
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in reverse
+     * sequential order. The elements will be returned in order from
+     * last (tail) to first (head). The iterator works on a snapshot of the
+     * deque, and does not reflect changes made after it was created.
+     *
+     * @return an iterator over the elements in this deque in reverse order
+     */
+    public Iterator<E> descendingIterator() {
+        return new Itr(false);
+    }
+
+    /**
+     * An element of the iterator's snapshot, together with the shard it
+     * was taken from.
+     */
+    private static final class Entry<E> {
+        final E item;
+        final PriorityBlockingDeque<E> shard;
+
+        Entry(E item, PriorityBlockingDeque<E> shard) {
+            this.item = item;
+            this.shard = shard;
+        }
+    }
+
+    private class Itr implements Iterator<E> {
+        private final List<Entry<E>> snapshot = new ArrayList<Entry<E>>();
+        private int nextIndex;
+        private Entry<E> lastRet;
+
+        @SuppressWarnings("unchecked")
+        Itr(final boolean ascending) {
+            for (PriorityBlockingDeque<E> shard : shards) {
+                for (Object item : shard.toArray()) {
+                    snapshot.add(new Entry<E>((E) item, shard));
+                }
+            }
+
+            Collections.sort(snapshot, new Comparator<Entry<E>>() {
+                public int compare(Entry<E> a, Entry<E> b) {
+                    int c = RelaxedPriorityBlockingDeque.this.compare(a.item, b.item);
+                    return ascending ? c : -c;
+                }
+            });
+        }
+
+        public boolean hasNext() {
+            return nextIndex < snapshot.size();
+        }
+
+        public E next() {
+            if (nextIndex >= snapshot.size())
+                throw new NoSuchElementException();
+
+            lastRet = snapshot.get(nextIndex++);
+            return lastRet.item;
+        }
+
+        public void remove() {
+            if (lastRet == null)
+                throw new IllegalStateException();
+
+            if (lastRet.shard.removeEq(lastRet.item)) {
+                released(1);
+            }
+            lastRet = null;
+        }
+    }
+}
@@ -45,7 +45,14 @@ import java.util.HashSet;
 public final class GraphIterators {
 
     public static Iterable<Object> depthFirstSearch(final GraphAdapter adapter) {
-        return dfsCore(adapter, adapter.getNode(0), new HashSet<Object>());
+        return new Yielder<Object>() {
+
+            @Override
+            protected void yieldNextCore() {
+                // every iteration runs on a copy of this yielder, and gets its own visited set
+                yieldAll(dfsCore(adapter, adapter.getNode(0), new HashSet<Object>()));
+            }
+        };
     }
 
     private static Iterable<Object> dfsCore(final GraphAdapter adapter, final Object graphNode,
@@ -64,9 +71,7 @@ public final class GraphIterators {
 
                 // Now, let's iterate the neighbours and recursively call DFS.
                 for (Object neighbour : adapter.getNodeNeighbours(graphNode)) {
-                    for (Object neighboursNeighbour : dfsCore(adapter, neighbour, visited)) {
-                        yieldReturn(neighboursNeighbour);
-                    }
+                    yieldAll(dfsCore(adapter, neighbour, visited));
                 }
             }
         };
@@ -5,6 +5,12 @@ import com.infomancers.collections.util.Transformation;
 import com.infomancers.collections.yield.Yielder;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Copyright (c) 2007, Aviad Ben Dov
@@ -41,6 +47,17 @@ import java.util.*;
  * Utility class to create commonly used iterators.
  */
 public final class Iterators {
+    private static final int BATCH_UNIT = 1024;
+    private static final int MAX_BATCH = 1 << 16;
+
+    private static final AtomicInteger prefetchThreads = new AtomicInteger();
+    private static final ThreadFactory PREFETCH_THREAD_FACTORY = new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "prefetch-" + prefetchThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
 
     /**
      * Used to create an iterable instance which yields only items answering
@@ -100,9 +117,7 @@ public final class Iterators {
             @Override
             protected void yieldNextCore() {
                 for (T item : iterable) {
-                    for (K res : transformation.transform(item)) {
-                        yieldReturn(res);
-                    }
+                    yieldAll(transformation.transform(item));
                 }
             }
         };
@@ -174,6 +189,9 @@ public final class Iterators {
     /**
      * Transforms an enumeration into an iterable, by yielding all
      * the enumeration's items.
+     * <p/>
+     * All iterators share the enumeration, so the iterable can only be
+     * iterated once.
      *
      * @param e The enumeration.
      * @return An iteration returning all the enumeration's items.
@@ -217,4 +235,197 @@ public final class Iterators {
             }
         };
     }
+
+    /**
+     * Used to consume an iterable in batches whose size doubles, starting with
+     * <code>initialSize</code> elements and growing up to <code>maxSize</code>
+     * elements per batch.
+     * <p/>
+     * Small batches first let work start on the first elements early, while the
+     * growing batches keep the hand-off cost per element low for long iterations.
+     *
+     * @param iterable    The original iterable.
+     * @param initialSize The size of the first batch.
+     * @param maxSize     The maximal size of a batch.
+     * @return An iterable of consecutive batches of the original iterable's elements.
+     */
+    public static <T> Iterable<List<T>> batchIterable(final Iterable<T> iterable, final int initialSize, final int maxSize) {
+        if (initialSize <= 0 || maxSize < initialSize) {
+            throw new IllegalArgumentException("Batch sizes should satisfy 0 < initialSize <= maxSize");
+        }
+
+        return new Yielder<List<T>>() {
+            @Override
+            protected void yieldNextCore() {
+                Iterator<T> it = iterable.iterator();
+                int size = initialSize;
+
+                while (it.hasNext()) {
+                    // let large batches grow, in case the iterable ends early
+                    List<T> batch = new ArrayList<T>(Math.min(size, BATCH_UNIT));
+                    while (batch.size() < size && it.hasNext()) {
+                        batch.add(it.next());
+                    }
+
+                    yieldReturn(batch);
+
+                    if (size <= maxSize / 2) {
+                        size *= 2;
+                    } else {
+                        size = maxSize;
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Used to create an iterable instance which yields transformed items from an
+     * original iterable instance, running the transformation on the given executor.
+     * <p/>
+     * The original iterable is drained in growing batches (see {@link #batchIterable}),
+     * and each batch is transformed as a separate task, so that an expensive
+     * transformation scales across the executor's threads even though the original
+     * iterable is consumed by a single thread. The items are yielded in the order
+     * of the original iterable, and a bounded amount of batches is kept in flight.
+     * <p/>
+     * If the original iterable is a collection or a {@link Yielder} reporting an
+     * {@link Yielder#estimateSize() estimated size}, the size is used to make the
+     * first batches small enough to be spread over the available processors.
+     * <p/>
+     * When a batch fails, the batches still in flight are cancelled, and
+     * interrupted if running, before the failure is thrown. An iteration
+     * stopped before its end only cancels them with the thread engine, once
+     * its iterator is closed or garbage collected; otherwise the at most
+     * <code>2 * processors</code> batches in flight run to completion.
+     *
+     * @param iterable       The original iterable instance.
+     * @param transformation The transformation used on each element of the iterable instance.
+     *                       Has to be safe for use by several threads at once.
+     * @param executor       The executor running the transformation tasks.
+     * @return An iterable containing transformed items, in the original order.
+     */
+    public static <T, K> Iterable<K> parallelTransformIterable(final Iterable<T> iterable,
+                                                               final Transformation<T, K> transformation,
+                                                               final ExecutorService executor) {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final int initialSize = initialBatchSize(iterable, processors);
+
+        return new Yielder<K>() {
+            @Override
+            protected void yieldNextCore() {
+                Queue<Future<List<K>>> pending = new LinkedList<Future<List<K>>>();
+
+                try {
+                    for (List<T> batch : batchIterable(iterable, initialSize, Math.max(initialSize, MAX_BATCH))) {
+                        pending.offer(executor.submit(new TransformationTask<T, K>(batch, transformation)));
+
+                        if (pending.size() > processors * 2) {
+                            for (K item : await(pending.poll())) {
+                                yieldReturn(item);
+                            }
+                        }
+                    }
+
+                    while (!pending.isEmpty()) {
+                        for (K item : await(pending.poll())) {
+                            yieldReturn(item);
+                        }
+                    }
+                } finally {
+                    // a batch failed, or the iteration was cancelled: stop the rest
+                    for (Future<List<K>> future : pending) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Used to create an iterable whose iterators consume the original iterable
+     * on a background thread, up to <code>depth</code> elements ahead of the caller.
+     * <p/>
+     * This lets an iteration doing I/O (such as a yielder reading a file) overlap
+     * with the work done on each element by the consumer. Each call to
+     * <code>iterator</code> starts a new daemon thread; iterators which are not
+     * consumed to their end should be closed, or their threads stay parked
+     * until the iterators are garbage collected.
+     *
+     * @param iterable The original iterable.
+     * @param depth    The maximal amount of elements produced ahead of the consumer,
+     *                 at most {@link PrefetchIterator#MAX_DEPTH}.
+     * @return An iterable returning {@link PrefetchIterator} instances.
+     */
+    public static <T> Iterable<T> prefetch(Iterable<T> iterable, int depth) {
+        return prefetch(iterable, depth, PREFETCH_THREAD_FACTORY);
+    }
+
+    /**
+     * Same as {@link #prefetch(Iterable, int)}, with the producing threads created
+     * by the given factory.
+     *
+     * @param iterable The original iterable.
+     * @param depth    The maximal amount of elements produced ahead of the consumer,
+     *                 at most {@link PrefetchIterator#MAX_DEPTH}.
+     * @param factory  The factory creating the producing threads.
+     * @return An iterable returning {@link PrefetchIterator} instances.
+     */
+    public static <T> Iterable<T> prefetch(final Iterable<T> iterable, final int depth, final ThreadFactory factory) {
+        if (depth <= 0 || depth > PrefetchIterator.MAX_DEPTH) {
+            throw new IllegalArgumentException("'depth' should be between 1 and " + PrefetchIterator.MAX_DEPTH);
+        }
+
+        return new Iterable<T>() {
+            public Iterator<T> iterator() {
+                return new PrefetchIterator<T>(iterable, depth, factory);
+            }
+        };
+    }
+
+    private static int initialBatchSize(Iterable<?> iterable, int processors) {
+        long size = -1;
+        if (iterable instanceof Collection) {
+            size = ((Collection<?>) iterable).size();
+        } else if (iterable instanceof Yielder) {
+            size = ((Yielder<?>) iterable).estimateSize();
+        }
+
+        if (size < 0) {
+            return BATCH_UNIT;
+        }
+
+        // aim for a few batches per processor before the batches start growing
+        return (int) Math.max(1, Math.min(BATCH_UNIT, size / (4L * processors)));
+    }
+
+    private static <K> List<K> await(Future<List<K>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a transformation", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Transformation failed", e.getCause());
+        }
+    }
+
+    private static final class TransformationTask<T, K> implements Callable<List<K>> {
+        private final List<T> batch;
+        private final Transformation<T, K> transformation;
+
+        private TransformationTask(List<T> batch, Transformation<T, K> transformation) {
+            this.batch = batch;
+            this.transformation = transformation;
+        }
+
+        public List<K> call() {
+            List<K> result = new ArrayList<K>(batch.size());
+            for (T item : batch) {
+                result.add(transformation.transform(item));
+            }
+
+            return result;
+        }
+    }
 }
@@ -0,0 +1,297 @@
+package com.infomancers.collections.iterators;
+
+import java.io.Closeable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * An iterator which consumes another iterable on a background thread, so that
+ * producing the elements overlaps with the work done by the consumer.
+ * <p/>
+ * The producing thread fills a bounded single-producer, single-consumer ring
+ * buffer. Each side only ever writes its own index, so handing over an element
+ * takes no locks; a side parks only when the buffer is full (producer) or
+ * empty (consumer).
+ * <p/>
+ * Any exception thrown by the original iteration is rethrown from
+ * <code>hasNext</code> or <code>next</code> once the elements produced
+ * before it were consumed. Checked exceptions are wrapped in an
+ * {@link IllegalStateException}.
+ * <p/>
+ * Consumers which stop before the end of the iteration should call
+ * {@link #close()}, which stops and interrupts the producing thread right
+ * away. The producing thread does not reference the iterator, so an
+ * iterator which is dropped without being closed, such as one left by a
+ * <code>break</code> out of a for-each loop, is stopped the same way by a
+ * reaper thread once it is garbage collected.
+ *
+ * @see Iterators#prefetch(Iterable, int)
+ * @since 0.4
+ */
+public final class PrefetchIterator<T> implements Iterator<T>, Closeable {
+    /**
+     * The largest supported depth; the buffer is sized to the next power of
+     * two, which is used only to map positions to slots.
+     */
+    public static final int MAX_DEPTH = 1 << 30;
+
+    /**
+     * Closes the channel of an iterator once the iterator is garbage collected.
+     */
+    private static final class Handle extends WeakReference<Object> {
+        private final Channel<?> channel;
+
+        private Handle(Object iterator, Channel<?> channel) {
+            super(iterator, abandoned);
+            this.channel = channel;
+        }
+    }
+
+    private static final ReferenceQueue<Object> abandoned = new ReferenceQueue<Object>();
+    // keeps the handles reachable until their iterators are collected
+    private static final Set<Handle> handles = Collections.newSetFromMap(new ConcurrentHashMap<Handle, Boolean>());
+
+    static {
+        Thread reaper = new Thread(new Runnable() {
+            public void run() {
+                for (; ;) {
+                    try {
+                        ((Handle) abandoned.remove()).channel.close();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "prefetch-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * The state shared by the producing thread and the iterator. The
+     * producing thread only references this, never the iterator.
+     */
+    private static final class Channel<T> {
+        private final Object[] buffer;
+        private final int mask;
+        private final int depth;
+        private Thread producer;
+        private Handle handle;
+
+        // written by the consumer only
+        private volatile long head = 0;
+        // written by the producer only
+        private volatile long tail = 0;
+
+        private volatile boolean done = false;
+        private volatile boolean cancelled = false;
+        private volatile Throwable failure;
+        private volatile Thread waitingConsumer;
+        private volatile Thread waitingProducer;
+
+        private Channel(int depth) {
+            int capacity = 1;
+            while (capacity < depth) {
+                capacity <<= 1;
+            }
+
+            this.buffer = new Object[capacity];
+            this.mask = capacity - 1;
+            this.depth = depth;
+        }
+
+        private void start(final Iterable<T> iterable, ThreadFactory factory) {
+            producer = factory.newThread(new Runnable() {
+                public void run() {
+                    produce(iterable);
+                }
+            });
+            producer.start();
+        }
+
+        private void produce(Iterable<T> iterable) {
+            try {
+                // wait for room before taking an element, so at most depth are taken ahead
+                Iterator<T> it = iterable.iterator();
+                while (awaitSpace() && it.hasNext()) {
+                    buffer[(int) (tail & mask)] = it.next();
+                    tail = tail + 1;
+
+                    signal(waitingConsumer);
+                }
+            } catch (Throwable t) {
+                if (!cancelled) {
+                    failure = t;
+                }
+            } finally {
+                done = true;
+                handles.remove(handle);
+                signal(waitingConsumer);
+            }
+        }
+
+        private boolean awaitSpace() {
+            while (!cancelled && tail - head == depth) {
+                waitingProducer = Thread.currentThread();
+                if (!cancelled && tail - head == depth) {
+                    LockSupport.park(this);
+                }
+                waitingProducer = null;
+            }
+
+            return !cancelled;
+        }
+
+        private boolean hasNext() {
+            if (cancelled) {
+                return false;
+            }
+
+            while (head == tail) {
+                if (done) {
+                    // the producer may have published elements before finishing
+                    if (head != tail) {
+                        break;
+                    }
+
+                    rethrow();
+                    return false;
+                }
+
+                waitingConsumer = Thread.currentThread();
+                if (head == tail && !done) {
+                    LockSupport.park(this);
+                }
+                waitingConsumer = null;
+            }
+
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T take() {
+            int index = (int) (head & mask);
+            T result = (T) buffer[index];
+            buffer[index] = null;
+            head = head + 1;
+
+            signal(waitingProducer);
+            return result;
+        }
+
+        /**
+         * Called by the consumer, or by the reaper.
+         */
+        private void close() {
+            handles.remove(handle);
+            if (!cancelled) {
+                cancelled = true;
+                producer.interrupt();
+                signal(producer);
+            }
+        }
+
+        private void rethrow() {
+            Throwable t = failure;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new IllegalStateException("Background iteration failed", t);
+            }
+        }
+    }
+
+    private final Channel<T> channel;
+
+    /**
+     * Starts iterating the given iterable on a thread created by the
+     * given factory.
+     *
+     * @param iterable The iterable to consume in the background.
+     * @param depth    The maximal amount of elements produced ahead of the consumer,
+     *                 at most {@link #MAX_DEPTH}.
+     * @param factory  The factory creating the producing thread.
+     */
+    public PrefetchIterator(Iterable<T> iterable, int depth, ThreadFactory factory) {
+        if (depth <= 0 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("depth should be between 1 and " + MAX_DEPTH);
+        }
+
+        this.channel = new Channel<T>(depth);
+        // registered before the producer starts, so that it's always removed
+        channel.handle = new Handle(this, channel);
+        handles.add(channel.handle);
+        channel.start(iterable, factory);
+    }
+
+    private static void signal(Thread waiter) {
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    public boolean hasNext() {
+        return channel.hasNext();
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return channel.take();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("Unable to delete using this iterator");
+    }
+
+    /**
+     * Stops the background iteration. Elements which were already produced
+     * are discarded, and the iterator reports no further elements.
+     */
+    public void close() {
+        channel.close();
+    }
+}
@@ -37,6 +37,11 @@ import java.util.concurrent.BlockingQueue;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+/**
+ * Iterables which remove the elements they return from a queue. All
+ * iterators of such an iterable share the queue, so each element is
+ * returned by only one of them.
+ */
 public final class QueueIterators {
     public static <T> Iterable<T> pollingQueueIterable(final Queue<T> queue) {
         return new Yielder<T>() {
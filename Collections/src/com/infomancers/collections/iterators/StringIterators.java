@@ -45,6 +45,9 @@ public final class StringIterators {
 
     /**
      * Used to iterate over the tokens in a StringTokenizer.
+     * <p/>
+     * All iterators share the tokenizer, so the iterable can only be
+     * iterated once.
      *
      * @param tokenizer The tokenizer to iterate over.
      * @return An iteration of all result strings.
@@ -75,9 +75,7 @@ public final class TreeIterators {
                 }
 
                 for (Object child : tree.getChildren(treeNode)) {
-                    for (Object item : TreeIterators.getIterator(tree, child, type)) {
-                        yieldReturn(item);
-                    }
+                    yieldAll(TreeIterators.getIterator(tree, child, type));
                 }
 
                 if (type == Type.Postfix) {
@@ -0,0 +1,155 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.concurrent.ConcurrentPriorityBlockingDeque;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConcurrentPriorityBlockingDequeTests {
+
+    @Test(timeout = 5000)
+    public void priorityFromBothEnds() {
+        BlockingDeque<Integer> deque = new ConcurrentPriorityBlockingDeque<Integer>();
+        for (int number : new int[]{5, 7, 1, 3, 2}) {
+            deque.offer(number);
+        }
+
+        Assert.assertEquals(5, deque.size());
+        Assert.assertEquals(1, (int) deque.peekFirst());
+        Assert.assertEquals(7, (int) deque.peekLast());
+        Assert.assertEquals(1, (int) deque.pollFirst());
+        Assert.assertEquals(7, (int) deque.pollLast());
+        Assert.assertEquals(2, (int) deque.pollFirst());
+        Assert.assertEquals(5, (int) deque.pollLast());
+        Assert.assertEquals(3, (int) deque.pollFirst());
+        Assert.assertNull(deque.pollFirst());
+        Assert.assertEquals(0, deque.size());
+    }
+
+    @Test(timeout = 5000)
+    public void equalPrioritiesKeepInsertionOrder() {
+        BlockingDeque<String> deque = new ConcurrentPriorityBlockingDeque<String>(new Comparator<String>() {
+            public int compare(String o1, String o2) {
+                return o1.length() - o2.length();
+            }
+        }, Integer.MAX_VALUE);
+
+        deque.offer("a");
+        deque.offer("b");
+        deque.offer("c");
+
+        Assert.assertEquals("a", deque.pollFirst());
+        Assert.assertEquals("c", deque.pollLast());
+        Assert.assertEquals("b", deque.pollFirst());
+    }
+
+    @Test(timeout = 5000)
+    public void takeWaitsForProducer() throws ExecutionException, InterruptedException {
+        final BlockingDeque<Integer> deque = new ConcurrentPriorityBlockingDeque<Integer>();
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+
+        Future<Integer> consumer = exec.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return deque.takeLast();
+            }
+        });
+
+        Thread.sleep(100);
+        deque.put(2);
+
+        Assert.assertEquals(2, (int) consumer.get());
+        exec.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void boundedOfferAndPut() throws ExecutionException, InterruptedException {
+        final BlockingDeque<Integer> deque = new ConcurrentPriorityBlockingDeque<Integer>(2);
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+
+        Assert.assertTrue(deque.offer(1));
+        Assert.assertTrue(deque.offer(2));
+        Assert.assertFalse(deque.offer(3));
+        Assert.assertFalse(deque.offer(3, 10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, deque.remainingCapacity());
+
+        Future<?> producer = exec.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                deque.put(3);
+                return null;
+            }
+        });
+
+        Thread.sleep(100);
+        Assert.assertFalse(producer.isDone());
+        Assert.assertEquals(1, (int) deque.take());
+
+        producer.get();
+        Assert.assertEquals(Arrays.asList(2, 3), new ArrayList<Integer>(deque));
+        exec.shutdown();
+    }
+
+    @Test(timeout = 20000)
+    public void manyProducersAndConsumers() throws ExecutionException, InterruptedException {
+        final BlockingDeque<Integer> deque = new ConcurrentPriorityBlockingDeque<Integer>(100);
+        final int threads = 4;
+        final int perThread = 10000;
+        final AtomicLong sum = new AtomicLong();
+        ExecutorService exec = Executors.newFixedThreadPool(threads * 2);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(exec.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int i = 1; i <= perThread; i++) {
+                        deque.put(i);
+                    }
+                    return null;
+                }
+            }));
+            final boolean first = t % 2 == 0;
+            futures.add(exec.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int i = 0; i < perThread; i++) {
+                        sum.addAndGet(first ? deque.takeFirst() : deque.takeLast());
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        Assert.assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+        Assert.assertEquals(0, deque.size());
+        exec.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void removeAndIterate() {
+        BlockingDeque<Integer> deque = new ConcurrentPriorityBlockingDeque<Integer>();
+        for (int number : new int[]{5, 7, 1, 3, 2, 3}) {
+            deque.offer(number);
+        }
+
+        Assert.assertTrue(deque.contains(3));
+        Assert.assertTrue(deque.remove(3));
+        Assert.assertFalse(deque.remove(4));
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 5, 7), new ArrayList<Integer>(deque));
+
+        for (Iterator<Integer> it = deque.descendingIterator(); it.hasNext();) {
+            if (it.next() > 2) {
+                it.remove();
+            }
+        }
+
+        Assert.assertEquals(2, deque.size());
+        List<Integer> drained = new ArrayList<Integer>();
+        Assert.assertEquals(2, deque.drainTo(drained));
+        Assert.assertEquals(Arrays.asList(1, 2), drained);
+    }
+}
@@ -0,0 +1,151 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.concurrent.DelayBlockingDeque;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class DelayBlockingDequeTests {
+
+    @Test(timeout = 5000)
+    public void pollFirstOnlyReturnsExpired() {
+        DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        Task expired = new Task("expired", -10);
+        Task later = new Task("later", 10000);
+        deque.offer(later);
+        deque.offer(expired);
+
+        Assert.assertSame(expired, deque.peekFirst());
+        Assert.assertSame(expired, deque.pollFirst());
+        Assert.assertNull(deque.pollFirst());
+        Assert.assertSame(later, deque.peekFirst());
+        Assert.assertEquals(1, deque.size());
+    }
+
+    @Test(timeout = 5000)
+    public void pollLastIgnoresDelay() {
+        DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        Task soon = new Task("soon", 5000);
+        Task later = new Task("later", 10000);
+        deque.offer(soon);
+        deque.offer(later);
+
+        Assert.assertSame(later, deque.pollLast());
+        Assert.assertSame(soon, deque.pollLast());
+        Assert.assertNull(deque.pollLast());
+    }
+
+    @Test(timeout = 5000)
+    public void takeFirstWaitsForDelay() throws InterruptedException {
+        DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        deque.offer(new Task("second", 200));
+        deque.offer(new Task("first", 100));
+
+        long start = System.nanoTime();
+        Assert.assertEquals("first", deque.takeFirst().name);
+        Assert.assertEquals("second", deque.takeFirst().name);
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test(timeout = 5000)
+    public void earlierOfferWakesLeader() throws ExecutionException, InterruptedException {
+        final DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        deque.offer(new Task("late", 100000));
+
+        Future<Task> consumer = exec.submit(new Callable<Task>() {
+            public Task call() throws Exception {
+                return deque.takeFirst();
+            }
+        });
+
+        Thread.sleep(100);
+        deque.offer(new Task("early", 50));
+
+        Assert.assertEquals("early", consumer.get().name);
+        Assert.assertNull(deque.pollFirst(50, TimeUnit.MILLISECONDS));
+        exec.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void takeLastWaitsForElement() throws ExecutionException, InterruptedException {
+        final DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        ExecutorService exec = Executors.newFixedThreadPool(1);
+
+        Future<Task> consumer = exec.submit(new Callable<Task>() {
+            public Task call() throws Exception {
+                return deque.takeLast();
+            }
+        });
+
+        Thread.sleep(100);
+        deque.put(new Task("cancelled", 100000));
+
+        Assert.assertEquals("cancelled", consumer.get().name);
+        Assert.assertTrue(deque.isEmpty());
+        exec.shutdown();
+    }
+
+    @Test(timeout = 5000)
+    public void drainToOnlyTakesExpired() {
+        DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        for (int i = 0; i < 5; i++) {
+            deque.offer(new Task("expired" + i, -i));
+            deque.offer(new Task("pending" + i, 10000 + i));
+        }
+
+        List<Task> drained = new ArrayList<Task>();
+        Assert.assertEquals(5, deque.drainTo(drained));
+        Assert.assertEquals(5, deque.size());
+        Assert.assertEquals("expired4", drained.get(0).name);
+    }
+
+    @Test(timeout = 5000)
+    public void iteratorRemoveOfHeadWakesTaker() throws ExecutionException, InterruptedException {
+        final DelayBlockingDeque<Task> deque = new DelayBlockingDeque<Task>();
+        ExecutorService exec = Executors.newFixedThreadPool(1);
+        deque.offer(new Task("cancelled", 100000));
+        deque.offer(new Task("last", 200000));
+
+        Future<Task> consumer = exec.submit(new Callable<Task>() {
+            public Task call() throws Exception {
+                return deque.takeFirst();
+            }
+        });
+
+        Thread.sleep(100);
+        Iterator<Task> it = deque.iterator();
+        Assert.assertEquals("cancelled", it.next().name);
+        it.remove();
+
+        Iterator<Task> descending = deque.descendingIterator();
+        Assert.assertEquals("last", descending.next().name);
+        descending.remove();
+        Assert.assertTrue(deque.isEmpty());
+
+        deque.offer(new Task("ready", 50));
+        Assert.assertEquals("ready", consumer.get().name);
+        exec.shutdown();
+    }
+
+    private static class Task implements Delayed {
+        final String name;
+        final long readyAt;
+
+        Task(String name, long delayMillis) {
+            this.name = name;
+            this.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed o) {
+            long other = ((Task) o).readyAt;
+            return readyAt < other ? -1 : (readyAt == other ? 0 : 1);
+        }
+    }
+}
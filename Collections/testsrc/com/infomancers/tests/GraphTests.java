@@ -202,4 +202,30 @@ public class GraphTests {
         }
         Assert.assertEquals("Not all elements yielded", 0, nodes.size());
     }
+
+    @Test
+    public void dfsIteratedTwice() {
+        GraphNode node1 = new GraphNode(1);
+        GraphNode node2 = new GraphNode(2);
+        GraphNode node3 = new GraphNode(3);
+
+        node1.addNeighbours(node2, node3);
+        node2.addNeighbours(node1, node3);
+        Graph graph = new Graph(node1, node2, node3);
+
+        Iterable<Object> dfs = GraphIterators.depthFirstSearch(graph);
+        Iterator<Object> first = dfs.iterator();
+        Assert.assertEquals(node1, first.next());
+
+        for (Iterator<Object> it : Arrays.asList(dfs.iterator(), first)) {
+            List<GraphNode> nodes = new LinkedList<GraphNode>(Arrays.asList(graph.nodes));
+            if (it == first) {
+                nodes.remove(node1);
+            }
+            while (it.hasNext()) {
+                Assert.assertTrue(nodes.remove(it.next()));
+            }
+            Assert.assertEquals("Not all elements yielded", 0, nodes.size());
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.concurrent.LongPriorityBlockingDeque;
+import com.infomancers.collections.util.LongTransformation;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LongPriorityBlockingDequeTests {
+
+    private static final LongTransformation<String> LENGTH = new LongTransformation<String>() {
+        public long transform(String item) {
+            return item.length();
+        }
+    };
+
+    @Test(timeout = 5000)
+    public void priorityFromTransformation() {
+        LongPriorityBlockingDeque<String> deque = new LongPriorityBlockingDeque<String>(LENGTH);
+        for (String s : new String[]{"ccc", "a", "eeeee", "bb", "dddd"}) {
+            deque.offer(s);
+        }
+
+        Assert.assertEquals(1, deque.peekPriority());
+        Assert.assertEquals(5, deque.peekLastPriority());
+        Assert.assertEquals("a", deque.pollFirst());
+        Assert.assertEquals("eeeee", deque.pollLast());
+        Assert.assertEquals(Arrays.asList("bb", "ccc", "dddd"), new ArrayList<String>(deque));
+        Assert.assertEquals(Arrays.asList("dddd", "ccc"), deque.pollLast(2));
+    }
+
+    @Test(timeout = 5000)
+    public void explicitPriority() {
+        LongPriorityBlockingDeque<String> deque = new LongPriorityBlockingDeque<String>();
+        deque.offer(Long.MAX_VALUE, "last");
+        deque.offer(Long.MIN_VALUE, "first");
+        deque.offer(0, "middle");
+
+        Assert.assertEquals(Long.MIN_VALUE, deque.peekPriority());
+        Assert.assertEquals(Arrays.asList("first", "middle", "last"), new ArrayList<String>(deque));
+
+        try {
+            deque.offer("none");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void randomOperationsKeepOrder() {
+        final Random random = new Random(11);
+        final LongPriorityBlockingDeque<Long> deque = new LongPriorityBlockingDeque<Long>();
+        final LinkedList<Long> expected = new LinkedList<Long>();
+
+        for (int i = 0; i < 5000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                long value = random.nextInt(500) - 250;
+                deque.offer(value, value);
+                expected.add(value);
+                Collections.sort(expected);
+            } else if (random.nextBoolean()) {
+                Assert.assertEquals(expected.pollFirst(), deque.pollFirst());
+            } else {
+                Assert.assertEquals(expected.pollLast(), deque.pollLast());
+            }
+
+            Assert.assertEquals(expected.size(), deque.size());
+            Assert.assertEquals(expected.peekFirst(), deque.peekFirst());
+            Assert.assertEquals(expected.peekLast(), deque.peekLast());
+        }
+
+        Iterator<Long> descending = deque.descendingIterator();
+        for (Iterator<Long> it = expected.descendingIterator(); it.hasNext();) {
+            Assert.assertEquals(it.next(), descending.next());
+        }
+        Assert.assertFalse(descending.hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void offerAllAndRemove() {
+        final LongPriorityBlockingDeque<String> deque = new LongPriorityBlockingDeque<String>(LENGTH, 4);
+        deque.offer("xx");
+
+        Assert.assertEquals(3, deque.offerAll(Arrays.asList("yyyy", "z", "www", "vvvvv")));
+        Assert.assertEquals(0, deque.remainingCapacity());
+        Assert.assertTrue(deque.remove("xx"));
+        Assert.assertFalse(deque.contains("xx"));
+
+        for (Iterator<String> it = deque.iterator(); it.hasNext();) {
+            if (it.next().length() > 3) {
+                it.remove();
+            }
+        }
+        Assert.assertEquals(Arrays.asList("z", "www"), new ArrayList<String>(deque));
+    }
+
+    @Test(timeout = 5000)
+    public void takeWaitsForProducer() throws ExecutionException, InterruptedException {
+        final LongPriorityBlockingDeque<String> deque = new LongPriorityBlockingDeque<String>(LENGTH);
+        ExecutorService exec = Executors.newFixedThreadPool(1);
+
+        Future<String> consumer = exec.submit(new Callable<String>() {
+            public String call() throws Exception {
+                return deque.takeLast();
+            }
+        });
+
+        Thread.sleep(100);
+        deque.put(3, "abc");
+
+        Assert.assertEquals("abc", consumer.get());
+        exec.shutdown();
+    }
+}
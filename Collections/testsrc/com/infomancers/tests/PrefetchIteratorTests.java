@@ -0,0 +1,182 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.iterators.Iterators;
+import com.infomancers.collections.iterators.PrefetchIterator;
+import com.infomancers.collections.yield.Yielder;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link Iterators#prefetch(Iterable, int)}.
+ */
+public class PrefetchIteratorTests {
+
+    @Test(timeout = 5000)
+    public void keepsOrder() {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            list.add(i);
+        }
+
+        int expected = 0;
+        for (int value : Iterators.prefetch(list, 16)) {
+            Assert.assertEquals(expected++, value);
+        }
+        Assert.assertEquals(list.size(), expected);
+    }
+
+    @Test(timeout = 5000)
+    public void propagatesFailure() {
+        Iterable<Integer> failing = new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    private int count = 0;
+
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    public Integer next() {
+                        if (count == 3) {
+                            throw new IllegalArgumentException("broken");
+                        }
+                        return count++;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        Iterator<Integer> it = Iterators.prefetch(failing, 8).iterator();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(i, (int) it.next());
+        }
+
+        try {
+            it.hasNext();
+            Assert.fail("Expected the producer's exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("broken", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts prefetching an endless yielder, whose producing thread counts
+     * down the given latch when it stops.
+     */
+    private static PrefetchIterator<Integer> prefetchEndless(final CountDownLatch stopped) {
+        final Iterable<Integer> endless = new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    private int count = 0;
+
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    public Integer next() {
+                        return count++;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        return (PrefetchIterator<Integer>) Iterators.prefetch(new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                for (Integer value : endless) {
+                    yieldReturn(value);
+                }
+            }
+        }, 4, new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    public void run() {
+                        r.run();
+                        stopped.countDown();
+                    }
+                });
+            }
+        }).iterator();
+    }
+
+    @Test(timeout = 5000)
+    public void closeStopsProducer() throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final PrefetchIterator<Integer> it = prefetchEndless(stopped);
+
+        Assert.assertEquals(0, (int) it.next());
+        Assert.assertEquals(1, (int) it.next());
+
+        it.close();
+        Assert.assertFalse(it.hasNext());
+        Assert.assertTrue(stopped.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void abandonedIteratorStopsProducer() throws InterruptedException {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        PrefetchIterator<Integer> it = prefetchEndless(stopped);
+        Assert.assertEquals(0, (int) it.next());
+
+        it = null;
+        while (!stopped.await(10, TimeUnit.MILLISECONDS)) {
+            System.gc();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void producerStaysWithinDepth() throws InterruptedException {
+        final AtomicInteger taken = new AtomicInteger();
+        Iterable<Integer> endless = new Iterable<Integer>() {
+            public Iterator<Integer> iterator() {
+                return new Iterator<Integer>() {
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    public Integer next() {
+                        return taken.getAndIncrement();
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        // 3 is not a power of two, the buffer is larger than the depth
+        PrefetchIterator<Integer> it = (PrefetchIterator<Integer>) Iterators.prefetch(endless, 3).iterator();
+        try {
+            Thread.sleep(200);
+            Assert.assertEquals(3, taken.get());
+
+            Assert.assertEquals(0, (int) it.next());
+            Thread.sleep(200);
+            Assert.assertEquals(4, taken.get());
+        } finally {
+            it.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void depthTooLarge() {
+        Iterators.prefetch(new ArrayList<Integer>(), PrefetchIterator.MAX_DEPTH + 1);
+    }
+}
@@ -1,11 +1,19 @@
 package com.infomancers.tests;
 
+import com.infomancers.collections.concurrent.DequeMetrics;
+import com.infomancers.collections.concurrent.EvictionListener;
 import com.infomancers.collections.concurrent.PriorityBlockingDeque;
+import com.infomancers.collections.util.LongTransformation;
 import junit.framework.Assert;
 import org.junit.Test;
 
-import java.util.Arrays;
-import java.util.Comparator;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
 import java.util.concurrent.*;
 
 /**
@@ -256,6 +264,440 @@ public class PriorityBlockingDequeTests {
         Assert.assertEquals(5, consumeFirst(exec, deque));
     }
 
+    @Test(timeout = 5000)
+    public void randomPollsFromBothEnds() {
+        final Random random = new Random(42);
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        final LinkedList<Integer> expected = new LinkedList<Integer>();
+
+        for (int i = 0; i < 5000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                int value = random.nextInt(500);
+                deque.offer(value);
+                expected.add(value);
+                Collections.sort(expected);
+            } else if (random.nextBoolean()) {
+                Assert.assertEquals(expected.pollFirst(), deque.pollFirst());
+            } else {
+                Assert.assertEquals(expected.pollLast(), deque.pollLast());
+            }
+
+            Assert.assertEquals(expected.size(), deque.size());
+            Assert.assertEquals(expected.peekFirst(), deque.peekFirst());
+            Assert.assertEquals(expected.peekLast(), deque.peekLast());
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void removeOccurrenceKeepsOrder() {
+        final Random random = new Random(7);
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        final LinkedList<Integer> expected = new LinkedList<Integer>();
+
+        for (int i = 0; i < 1000; i++) {
+            int value = random.nextInt(100);
+            deque.offer(value);
+            expected.add(value);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            Integer value = random.nextInt(100);
+            Assert.assertEquals(expected.remove(value), deque.remove(value));
+        }
+
+        Collections.sort(expected);
+        Assert.assertEquals(expected, Arrays.asList(deque.toArray()));
+
+        Iterator<Integer> descending = deque.descendingIterator();
+        for (Iterator<Integer> it = expected.descendingIterator(); it.hasNext();) {
+            Assert.assertEquals(it.next(), descending.next());
+        }
+        Assert.assertFalse(descending.hasNext());
+
+        for (Integer value : expected) {
+            Assert.assertEquals(value, deque.pollFirst());
+        }
+        Assert.assertNull(deque.pollFirst());
+    }
+
+    @Test(timeout = 5000)
+    public void iteratorRemove() {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        for (int number : new int[]{5, 7, 1, 3, 2}) {
+            deque.offer(number);
+        }
+
+        for (Iterator<Integer> it = deque.iterator(); it.hasNext();) {
+            if (it.next() % 2 == 1) {
+                it.remove();
+            }
+        }
+
+        Assert.assertEquals(1, deque.size());
+        Assert.assertEquals(2, (int) deque.peekFirst());
+    }
+
+    @Test(timeout = 5000)
+    public void iteratorIsWeaklyConsistent() {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        for (int number : new int[]{5, 7, 1, 3, 2}) {
+            deque.offer(number);
+        }
+
+        Iterator<Integer> it = deque.iterator();
+        deque.offer(0);
+        Assert.assertEquals(1, (int) deque.pollFirst(1).size());
+
+        List<Integer> seen = new ArrayList<Integer>();
+        while (it.hasNext()) {
+            Integer value = it.next();
+            seen.add(value);
+            if (value == 1 || value == 7) {
+                it.remove();
+            }
+            deque.offer(10 + value);
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 5, 7), seen);
+        Assert.assertEquals(Arrays.asList(2, 3, 5, 11, 12, 13, 15, 17), new ArrayList<Integer>(deque));
+    }
+
+    @Test(timeout = 5000)
+    public void evictsLastElements() throws InterruptedException {
+        final List<Integer> evicted = new ArrayList<Integer>();
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(null, 3, null,
+                new EvictionListener<Integer>() {
+                    public void evicted(Integer element) {
+                        evicted.add(element);
+                    }
+                });
+
+        Assert.assertEquals(3, deque.offerAll(Arrays.asList(5, 3, 7)));
+        Assert.assertTrue(deque.offer(1));
+        Assert.assertFalse(deque.offer(9));
+        deque.put(8);
+        deque.put(2);
+
+        Assert.assertEquals(Arrays.asList(7, 8, 5), evicted);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(deque));
+    }
+
+    @Test(timeout = 5000)
+    public void capacityMeasuredByWeight() {
+        final LongTransformation<String> length = new LongTransformation<String>() {
+            public long transform(String item) {
+                return item.length();
+            }
+        };
+        final List<String> evicted = new ArrayList<String>();
+        final PriorityBlockingDeque<String> weighted = new PriorityBlockingDeque<String>(null, 10, length);
+
+        Assert.assertTrue(weighted.offer("dddd"));
+        Assert.assertTrue(weighted.offer("aaaaa"));
+        Assert.assertEquals(1, weighted.remainingCapacity());
+        Assert.assertFalse(weighted.offer("bb"));
+        Assert.assertTrue(weighted.offer("c"));
+        Assert.assertEquals("aaaaa", weighted.pollFirst());
+        Assert.assertEquals(5, weighted.remainingCapacity());
+
+        final PriorityBlockingDeque<String> evicting = new PriorityBlockingDeque<String>(null, 10, length,
+                new EvictionListener<String>() {
+                    public void evicted(String element) {
+                        evicted.add(element);
+                    }
+                });
+
+        Assert.assertTrue(evicting.offer("cccc"));
+        Assert.assertTrue(evicting.offer("dddd"));
+        Assert.assertTrue(evicting.offer("aaaaaa"));
+        Assert.assertFalse(evicting.offer("eeeeeeeeeee"));
+        Assert.assertFalse(evicting.offer("zzzzzzzz"));
+
+        Assert.assertEquals(Arrays.asList("dddd"), evicted);
+        Assert.assertEquals(Arrays.asList("aaaaaa", "cccc"), new ArrayList<String>(evicting));
+    }
+
+    @Test(timeout = 5000)
+    public void removalWakesPutterThatFits() throws InterruptedException {
+        final PriorityBlockingDeque<String> deque = new PriorityBlockingDeque<String>(null, 10,
+                new LongTransformation<String>() {
+                    public long transform(String item) {
+                        return item.length();
+                    }
+                });
+        deque.put("aaaa");
+        deque.put("cccccc");
+
+        Thread heavy = startPut(deque, "hhhhhhhh");
+        Thread light = startPut(deque, "ll");
+
+        Assert.assertEquals("aaaa", deque.pollFirst());
+        light.join();
+        Assert.assertEquals(Arrays.asList("cccccc", "ll"), new ArrayList<String>(deque));
+
+        Assert.assertEquals("cccccc", deque.pollFirst());
+        heavy.join();
+        Assert.assertEquals(Arrays.asList("hhhhhhhh", "ll"), new ArrayList<String>(deque));
+    }
+
+    /**
+     * Starts a thread putting element, and waits until it is blocked.
+     */
+    private static Thread startPut(final BlockingDeque<String> deque, final String element) throws InterruptedException {
+        Thread putter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    deque.put(element);
+                } catch (InterruptedException e) {
+                    // the test fails on its timeout
+                }
+            }
+        };
+        putter.setDaemon(true);
+        putter.start();
+        while (putter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        return putter;
+    }
+
+    @Test(timeout = 5000)
+    public void indexedRemoveAndContains() {
+        final Random random = new Random(5);
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(null, Integer.MAX_VALUE, true);
+        final TreeSet<Integer> expected = new TreeSet<Integer>();
+
+        for (int i = 0; i < 5000; i++) {
+            Integer value = random.nextInt(1000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    Assert.assertEquals(expected.remove(value), deque.remove(value));
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.contains(value), deque.contains(value));
+                    break;
+                default:
+                    Assert.assertEquals(expected.add(value), deque.offer(value));
+            }
+
+            Assert.assertEquals(expected.size(), deque.size());
+            Assert.assertEquals(expected.isEmpty() ? null : expected.first(), deque.peekFirst());
+            Assert.assertEquals(expected.isEmpty() ? null : expected.last(), deque.peekLast());
+        }
+
+        Assert.assertEquals(new ArrayList<Integer>(expected), new ArrayList<Integer>(deque));
+        Assert.assertEquals(expected.size() / 2, deque.drainTo(new ArrayList<Integer>(), expected.size() / 2));
+        Assert.assertTrue(deque.contains(expected.last()));
+        Assert.assertFalse(deque.contains(expected.first()));
+    }
+
+    @Test(timeout = 5000)
+    public void indexedPutOfDuplicateReturns() throws InterruptedException {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(null, 2, true);
+
+        deque.put(1);
+        deque.put(1);
+        Assert.assertFalse(deque.offer(1, 1, TimeUnit.SECONDS));
+        deque.put(2);
+        deque.put(2);
+
+        Assert.assertEquals(Arrays.asList(1, 2), new ArrayList<Integer>(deque));
+    }
+
+    @Test(timeout = 5000)
+    public void indexedAddOfDuplicateThrows() {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(null, 2, true);
+
+        deque.add(1);
+        try {
+            deque.add(1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        deque.add(2);
+        try {
+            deque.add(3);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            deque.push(2);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void indexedDuplicateIsNotEvicted() throws InterruptedException {
+        final List<Integer> evicted = new ArrayList<Integer>();
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(null, 2, null,
+                new EvictionListener<Integer>() {
+                    public void evicted(Integer element) {
+                        evicted.add(element);
+                    }
+                }, true);
+
+        deque.put(1);
+        deque.put(5);
+        deque.put(5);
+        deque.put(1);
+        Assert.assertTrue(evicted.isEmpty());
+
+        deque.put(3);
+        deque.put(9);
+        Assert.assertEquals(Arrays.asList(5, 9), evicted);
+        Assert.assertEquals(Arrays.asList(1, 3), new ArrayList<Integer>(deque));
+    }
+
+    @Test(timeout = 5000)
+    public void updatePriority() {
+        final Comparator<int[]> byPriority = new Comparator<int[]>() {
+            public int compare(int[] o1, int[] o2) {
+                return o1[0] - o2[0];
+            }
+        };
+
+        for (boolean indexed : new boolean[]{false, true}) {
+            final Random random = new Random(9);
+            final PriorityBlockingDeque<int[]> deque = new PriorityBlockingDeque<int[]>(byPriority, Integer.MAX_VALUE, indexed);
+            final List<int[]> tasks = new ArrayList<int[]>();
+            for (int i = 0; i < 500; i++) {
+                int[] task = {random.nextInt(1000)};
+                tasks.add(task);
+                deque.offer(task);
+            }
+
+            for (int i = 0; i < 2000; i++) {
+                int[] task = tasks.get(random.nextInt(tasks.size()));
+                task[0] = random.nextInt(1000);
+                Assert.assertTrue(deque.updatePriority(task));
+            }
+            Assert.assertFalse(deque.updatePriority(new int[]{0}));
+
+            Collections.sort(tasks, byPriority);
+            for (int[] task : tasks) {
+                Assert.assertEquals(task[0], deque.pollFirst()[0]);
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void metrics() throws Exception {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(3);
+        Assert.assertNull(deque.getMetrics());
+        deque.offer(100);
+
+        DequeMetrics metrics = deque.enableMetrics();
+        Assert.assertSame(metrics, deque.enableMetrics());
+
+        deque.offer(1);
+        deque.offer(2);
+        Assert.assertFalse(deque.offer(3));
+        Assert.assertEquals(1, (int) deque.poll());
+        Assert.assertEquals(100, (int) deque.pollLast(1, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, (int) deque.pollFirst());
+        Assert.assertNull(deque.pollFirst(1, TimeUnit.MILLISECONDS));
+
+        Assert.assertEquals(2, metrics.getEnqueueCount());
+        Assert.assertEquals(3, metrics.getDequeueCount());
+        Assert.assertEquals(1, metrics.getRejectedCount());
+        Assert.assertEquals(7, metrics.getLockAcquisitionCount());
+        Assert.assertTrue(metrics.getNotEmptyAwaitNanos() > 0);
+        Assert.assertEquals(2, metrics.getDepthHistogram()[2]);
+        Assert.assertTrue(metrics.getPollLatency99thPercentileNanos() >= metrics.getPollLatencyMedianNanos());
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getEnqueueCount());
+        deque.disableMetrics();
+        deque.offer(5);
+        Assert.assertEquals(0, metrics.getEnqueueCount());
+    }
+
+    /**
+     * Separate from the metrics test, and with a longer timeout, because
+     * the first access to the platform MBean server can be slow.
+     */
+    @Test(timeout = 30000)
+    public void metricsMBean() throws Exception {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        DequeMetrics metrics = deque.enableMetrics();
+        deque.offer(1);
+        deque.offer(2);
+
+        ObjectName name = metrics.registerMBean("com.infomancers.tests:type=PriorityBlockingDeque,name=metrics");
+        try {
+            Assert.assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EnqueueCount"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test(timeout = 5000)
+    @SuppressWarnings("unchecked")
+    public void serializeWithMetrics() throws Exception {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        deque.enableMetrics();
+        deque.offer(2);
+        deque.offer(1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(deque);
+        out.close();
+
+        PriorityBlockingDeque<Integer> copy = (PriorityBlockingDeque<Integer>)
+                new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertNull(copy.getMetrics());
+        Assert.assertEquals(1, (int) copy.pollFirst());
+        Assert.assertEquals(2, (int) copy.pollFirst());
+        Assert.assertNotNull(deque.getMetrics());
+    }
+
+    @Test(timeout = 5000)
+    public void offerAllKeepsOrder() {
+        final Random random = new Random(3);
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        final List<Integer> expected = new ArrayList<Integer>();
+
+        for (int batch : new int[]{1000, 10, 300, 2000}) {
+            List<Integer> values = new ArrayList<Integer>();
+            for (int i = 0; i < batch; i++) {
+                values.add(random.nextInt(500));
+            }
+
+            Assert.assertEquals(batch, deque.offerAll(values));
+            expected.addAll(values);
+        }
+
+        Collections.sort(expected);
+        Assert.assertEquals(expected.subList(0, 100), deque.pollFirst(100));
+
+        List<Integer> largest = new ArrayList<Integer>(expected.subList(expected.size() - 100, expected.size()));
+        Collections.reverse(largest);
+        Assert.assertEquals(largest, deque.pollLast(100));
+
+        List<Integer> rest = new ArrayList<Integer>();
+        Assert.assertEquals(expected.size() - 200, deque.drainTo(rest));
+        Assert.assertEquals(expected.subList(100, expected.size() - 100), rest);
+        Assert.assertTrue(deque.pollFirst(10).isEmpty());
+    }
+
+    @Test(timeout = 5000)
+    public void offerAllRespectsCapacity() {
+        final PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>(3);
+        deque.offer(4);
+
+        Assert.assertEquals(2, deque.offerAll(Arrays.asList(3, 2, 1)));
+        Assert.assertEquals(0, deque.remainingCapacity());
+        Assert.assertEquals(Arrays.asList(2, 3, 4), new ArrayList<Integer>(deque));
+    }
+
 
     static class ConsumerFirst<E> implements Callable<E> {
         private BlockingDeque<E> deque;
@@ -0,0 +1,32 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.iterators.QueueIterators;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Tests for the queue iterators.
+ */
+public class QueueIteratorsTests {
+
+    @Test(timeout = 5000)
+    public void blockingQueueDoesNotTakeAhead() throws InterruptedException {
+        BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+        queue.put(1);
+        queue.put(2);
+
+        Iterator<Integer> it = QueueIterators.blockingQueueIterable(queue).iterator();
+
+        // neither call may block on the empty queue waiting for a third element
+        Assert.assertEquals(1, (int) it.next());
+        Assert.assertEquals(2, (int) it.next());
+        Assert.assertTrue(queue.isEmpty());
+
+        queue.put(3);
+        Assert.assertEquals(3, (int) it.next());
+    }
+}
@@ -0,0 +1,151 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.concurrent.RelaxedPriorityBlockingDeque;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RelaxedPriorityBlockingDequeTests {
+
+    @Test(timeout = 5000)
+    public void singleShardIsStrict() {
+        BlockingDeque<Integer> deque = new RelaxedPriorityBlockingDeque<Integer>(null, Integer.MAX_VALUE, 1);
+        for (int number : new int[]{5, 7, 1, 3, 2}) {
+            deque.offer(number);
+        }
+
+        Assert.assertEquals(5, deque.size());
+        Assert.assertEquals(1, (int) deque.pollFirst());
+        Assert.assertEquals(7, (int) deque.pollLast());
+        Assert.assertEquals(2, (int) deque.pollFirst());
+        Assert.assertEquals(5, (int) deque.pollLast());
+        Assert.assertEquals(3, (int) deque.pollFirst());
+        Assert.assertNull(deque.pollFirst());
+    }
+
+    @Test(timeout = 5000)
+    public void shardedReturnsEveryElement() {
+        BlockingDeque<Integer> deque = new RelaxedPriorityBlockingDeque<Integer>(null, Integer.MAX_VALUE, 8);
+        for (int i = 0; i < 1000; i++) {
+            deque.offer(i);
+        }
+
+        Assert.assertEquals(0, (int) deque.peekFirst());
+        Assert.assertEquals(999, (int) deque.peekLast());
+
+        Set<Integer> seen = new HashSet<Integer>();
+        Integer x;
+        while ((x = deque.pollFirst()) != null) {
+            Assert.assertTrue(seen.add(x));
+        }
+
+        Assert.assertEquals(1000, seen.size());
+        Assert.assertEquals(0, deque.size());
+    }
+
+    @Test(timeout = 5000)
+    public void iteratorIsOrderedAndRemoves() {
+        BlockingDeque<Integer> deque = new RelaxedPriorityBlockingDeque<Integer>(null, Integer.MAX_VALUE, 4);
+        for (int number : new int[]{5, 7, 1, 3, 2}) {
+            deque.offer(number);
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 5, 7), new ArrayList<Integer>(deque));
+
+        for (Iterator<Integer> it = deque.descendingIterator(); it.hasNext();) {
+            if (it.next() % 2 == 1) {
+                it.remove();
+            }
+        }
+
+        Assert.assertEquals(1, deque.size());
+        Assert.assertFalse(deque.contains(7));
+        Assert.assertEquals(2, (int) deque.peekFirst());
+    }
+
+    @Test(timeout = 5000)
+    public void iteratorRemoveOfPolledElementKeepsCount() {
+        BlockingDeque<Integer> deque = new RelaxedPriorityBlockingDeque<Integer>(null, 3, 1);
+        for (int number : new int[]{1, 2, 3}) {
+            deque.offer(number);
+        }
+
+        Iterator<Integer> it = deque.iterator();
+        Assert.assertEquals(1, (int) it.next());
+        Assert.assertEquals(1, (int) deque.pollFirst());
+        it.remove();
+
+        Assert.assertEquals(2, deque.size());
+        Assert.assertTrue(deque.offer(4));
+        Assert.assertFalse(deque.offer(5));
+        Assert.assertEquals(3, deque.size());
+    }
+
+    @Test(timeout = 5000)
+    public void boundedOfferAndPut() throws ExecutionException, InterruptedException {
+        final BlockingDeque<Integer> deque = new RelaxedPriorityBlockingDeque<Integer>(2);
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+
+        Assert.assertTrue(deque.offer(1));
+        Assert.assertTrue(deque.offer(2));
+        Assert.assertFalse(deque.offer(3));
+        Assert.assertFalse(deque.offer(3, 10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, deque.remainingCapacity());
+
+        Future<?> producer = exec.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                deque.put(3);
+                return null;
+            }
+        });
+
+        Thread.sleep(100);
+        Assert.assertFalse(producer.isDone());
+        Assert.assertNotNull(deque.take());
+
+        producer.get();
+        Assert.assertEquals(2, deque.size());
+        exec.shutdown();
+    }
+
+    @Test(timeout = 20000)
+    public void manyProducersAndConsumers() throws ExecutionException, InterruptedException {
+        final BlockingDeque<Integer> deque = new RelaxedPriorityBlockingDeque<Integer>(100);
+        final int threads = 4;
+        final int perThread = 10000;
+        final AtomicLong sum = new AtomicLong();
+        ExecutorService exec = Executors.newFixedThreadPool(threads * 2);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(exec.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int i = 1; i <= perThread; i++) {
+                        deque.put(i);
+                    }
+                    return null;
+                }
+            }));
+            final boolean first = t % 2 == 0;
+            futures.add(exec.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    for (int i = 0; i < perThread; i++) {
+                        sum.addAndGet(first ? deque.takeFirst() : deque.takeLast());
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        Assert.assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+        Assert.assertEquals(0, deque.size());
+        exec.shutdown();
+    }
+}
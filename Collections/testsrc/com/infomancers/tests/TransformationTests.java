@@ -6,9 +6,14 @@ import com.infomancers.collections.util.SimpleTransformationCollection;
 import junit.framework.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Created by IntelliJ IDEA.
@@ -56,4 +61,94 @@ public class TransformationTests {
             Assert.assertEquals(a + 3, (int) it.next());
         }
     }
+
+    @Test
+    public void batchesGrow() {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 20; i++) {
+            list.add(i);
+        }
+
+        List<Integer> sizes = new ArrayList<Integer>();
+        int expected = 0;
+        for (List<Integer> batch : Iterators.batchIterable(list, 2, 6)) {
+            sizes.add(batch.size());
+            for (int value : batch) {
+                Assert.assertEquals(expected++, value);
+            }
+        }
+
+        Assert.assertEquals(Arrays.asList(2, 4, 6, 6, 2), sizes);
+    }
+
+    @Test(timeout = 5000)
+    public void parallelTransformKeepsOrder() {
+        SimpleTransformation<Integer> square = new SimpleTransformation<Integer>() {
+            public Integer transform(Integer item) {
+                return item * item;
+            }
+        };
+
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            list.add(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            int expected = 0;
+            for (int value : Iterators.parallelTransformIterable(list, square, executor)) {
+                Assert.assertEquals(expected * expected, value);
+                expected++;
+            }
+
+            Assert.assertEquals(list.size(), expected);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void parallelTransformCancelsOnFailure() throws InterruptedException {
+        final CountDownLatch never = new CountDownLatch(1);
+        SimpleTransformation<Integer> failFirst = new SimpleTransformation<Integer>() {
+            public Integer transform(Integer item) {
+                if (item == 0) {
+                    throw new IllegalArgumentException("first");
+                }
+
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return item;
+            }
+        };
+
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(3);
+        try {
+            Iterator<Integer> it = Iterators.parallelTransformIterable(list, failFirst, executor).iterator();
+            try {
+                it.hasNext();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("first", e.getCause().getMessage());
+            }
+
+            // the blocked batches were interrupted, and the queued ones removed
+            while (executor.getActiveCount() > 0) {
+                Thread.sleep(1);
+            }
+            executor.purge();
+            Assert.assertTrue(executor.getQueue().isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -14,6 +14,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 
 /**
@@ -109,4 +110,47 @@ public class TreeTests {
 
         Assert.assertFalse("Too many elements", it.hasNext());
     }
+
+    private static class ChainAdapter implements TreeAdapter {
+        private final int depth;
+
+        private ChainAdapter(int depth) {
+            this.depth = depth;
+        }
+
+        public Object getRoot() {
+            return 0;
+        }
+
+        public Iterable<Object> getChildren(Object node) {
+            int value = (Integer) node;
+            return value < depth ? Collections.<Object>singletonList(value + 1) : Collections.emptyList();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void deepChain() {
+        int depth = 10000;
+
+        // the thread engine runs all levels on one thread, which needs more than the default stack
+        String stackSize = System.setProperty("com.infomancers.collections.yield.stackSize", String.valueOf(64 << 20));
+        try {
+            int expected = 0;
+            for (Object node : TreeIterators.prefixIterator(new ChainAdapter(depth))) {
+                Assert.assertEquals(expected++, node);
+            }
+            Assert.assertEquals(depth + 1, expected);
+
+            for (Object node : TreeIterators.postfixIterator(new ChainAdapter(depth))) {
+                Assert.assertEquals(--expected, node);
+            }
+            Assert.assertEquals(0, expected);
+        } finally {
+            if (stackSize == null) {
+                System.clearProperty("com.infomancers.collections.yield.stackSize");
+            } else {
+                System.setProperty("com.infomancers.collections.yield.stackSize", stackSize);
+            }
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package com.infomancers.tests.benchmarks;
+
+import com.infomancers.collections.concurrent.ConcurrentPriorityBlockingDeque;
+import com.infomancers.collections.concurrent.PriorityBlockingDeque;
+import com.infomancers.collections.concurrent.RelaxedPriorityBlockingDeque;
+
+import java.util.Random;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the throughput of {@link PriorityBlockingDeque},
+ * {@link ConcurrentPriorityBlockingDeque} and {@link RelaxedPriorityBlockingDeque}
+ * when 1 to 64 threads
+ * each offer an element and then poll one from alternating ends.
+ * <p/>
+ * Run with: <code>java com.infomancers.tests.benchmarks.ConcurrentPriorityBlockingDequeBenchmark</code>
+ */
+public class ConcurrentPriorityBlockingDequeBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int DEPTH = 10000;
+    private static final int OPERATIONS = 1000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("threads\tlocked ops/ms\tconcurrent ops/ms\trelaxed ops/ms");
+
+        for (int threads : THREADS) {
+            long locked = measure(new PriorityBlockingDeque<Integer>(), threads);
+            long concurrent = measure(new ConcurrentPriorityBlockingDeque<Integer>(), threads);
+            long relaxed = measure(new RelaxedPriorityBlockingDeque<Integer>(), threads);
+
+            System.out.println(threads + "\t" + locked + "\t" + concurrent + "\t" + relaxed);
+        }
+    }
+
+    private static long measure(final BlockingDeque<Integer> deque, int threads) throws InterruptedException {
+        Random random = new Random(threads);
+        for (int i = 0; i < DEPTH; i++) {
+            deque.offer(random.nextInt());
+        }
+
+        run(deque, threads, OPERATIONS / 10);
+        long start = System.nanoTime();
+        run(deque, threads, OPERATIONS);
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+        return OPERATIONS / millis;
+    }
+
+    private static void run(final BlockingDeque<Integer> deque, int threads, int operations) throws InterruptedException {
+        final int perThread = operations / threads;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        deque.offer(random.nextInt());
+                        if ((i & 1) == 0) {
+                            deque.pollFirst();
+                        } else {
+                            deque.pollLast();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        done.await();
+    }
+}
@@ -0,0 +1,91 @@
+package com.infomancers.tests.benchmarks;
+
+import com.infomancers.collections.concurrent.PriorityBlockingDeque;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Measures the cost of a single offer followed by alternating
+ * pollFirst / pollLast calls on a deque kept at a steady depth.
+ * <p/>
+ * The sorted linked list used before the min-max heap is measured
+ * alongside it for reference; since its inserts are linear, it is
+ * only measured up to a depth of 100k.
+ * <p/>
+ * Run with: <code>java com.infomancers.tests.benchmarks.PriorityBlockingDequeBenchmark</code>
+ */
+public class PriorityBlockingDequeBenchmark {
+    private static final int[] DEPTHS = {1000, 10000, 100000, 1000000, 10000000};
+    private static final int LINKED_LIST_MAX_DEPTH = 100000;
+    private static final int OPERATIONS = 200000;
+
+    public static void main(String[] args) {
+        System.out.println("depth\theap ns/op\tsorted list ns/op");
+
+        for (int depth : DEPTHS) {
+            long heap = measureHeap(depth);
+            String list = depth <= LINKED_LIST_MAX_DEPTH ? Long.toString(measureSortedList(depth)) : "-";
+
+            System.out.println(depth + "\t" + heap + "\t" + list);
+        }
+    }
+
+    private static long measureHeap(int depth) {
+        Random random = new Random(depth);
+        PriorityBlockingDeque<Integer> deque = new PriorityBlockingDeque<Integer>();
+        for (int i = 0; i < depth; i++) {
+            deque.offer(random.nextInt());
+        }
+
+        // warm up, then measure
+        runHeap(deque, random, OPERATIONS);
+        long start = System.nanoTime();
+        runHeap(deque, random, OPERATIONS);
+        return (System.nanoTime() - start) / OPERATIONS;
+    }
+
+    private static void runHeap(PriorityBlockingDeque<Integer> deque, Random random, int operations) {
+        for (int i = 0; i < operations; i++) {
+            deque.offer(random.nextInt());
+            if ((i & 1) == 0) {
+                deque.pollFirst();
+            } else {
+                deque.pollLast();
+            }
+        }
+    }
+
+    private static long measureSortedList(int depth) {
+        Random random = new Random(depth);
+        LinkedList<Integer> list = new LinkedList<Integer>();
+        for (int i = 0; i < depth; i++) {
+            list.add(random.nextInt());
+        }
+        Collections.sort(list);
+
+        int operations = Math.max(1000, OPERATIONS / (depth / 1000));
+        runSortedList(list, random, operations);
+        long start = System.nanoTime();
+        runSortedList(list, random, operations);
+        return (System.nanoTime() - start) / operations;
+    }
+
+    private static void runSortedList(LinkedList<Integer> list, Random random, int operations) {
+        for (int i = 0; i < operations; i++) {
+            Integer e = random.nextInt();
+            int insertionPoint = Collections.binarySearch(list, e);
+            if (insertionPoint < 0) {
+                insertionPoint = -insertionPoint - 1;
+            }
+            list.add(insertionPoint, e);
+
+            if ((i & 1) == 0) {
+                list.pollFirst();
+            } else {
+                list.pollLast();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.infomancers.tests.benchmarks;
+
+import com.infomancers.collections.concurrent.PriorityBlockingDeque;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares inserting and removing bursts of elements one at a time with
+ * doing it through {@link PriorityBlockingDeque#offerAll} and
+ * {@link PriorityBlockingDeque#pollFirst(int)}.
+ * <p/>
+ * The looped variants take the lock once per element, the bulk variants
+ * once per burst; the time reported for a bulk call is therefore the time
+ * the lock is held for the whole burst.
+ * <p/>
+ * Run with: <code>java com.infomancers.tests.benchmarks.PriorityBlockingDequeBulkBenchmark</code>
+ */
+public class PriorityBlockingDequeBulkBenchmark {
+    private static final int[] BATCHES = {100, 1000, 5000};
+    private static final int[] DEPTHS = {0, 10000, 1000000};
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        System.out.println("depth\tbatch\tlooped offer us\tofferAll us\tlooped poll us\tpollFirst(n) us");
+
+        for (int depth : DEPTHS) {
+            for (int batch : BATCHES) {
+                // warm up, then measure
+                measure(depth, batch, ROUNDS / 4);
+                long[] result = measure(depth, batch, ROUNDS);
+
+                System.out.println(depth + "\t" + batch + "\t" + result[0] + "\t" + result[1] + "\t" + result[2] + "\t" + result[3]);
+            }
+        }
+    }
+
+    private static long[] measure(int depth, int batch, int rounds) {
+        Random random = new Random(depth + batch);
+        PriorityBlockingDeque<Integer> looped = new PriorityBlockingDeque<Integer>();
+        PriorityBlockingDeque<Integer> bulk = new PriorityBlockingDeque<Integer>();
+        for (int i = 0; i < depth; i++) {
+            int value = random.nextInt();
+            looped.offer(value);
+            bulk.offer(value);
+        }
+
+        long[] nanos = new long[4];
+        for (int round = 0; round < rounds; round++) {
+            List<Integer> values = new ArrayList<Integer>(batch);
+            for (int i = 0; i < batch; i++) {
+                values.add(random.nextInt());
+            }
+
+            long start = System.nanoTime();
+            for (Integer value : values) {
+                looped.offer(value);
+            }
+            nanos[0] += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bulk.offerAll(values);
+            nanos[1] += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                looped.pollFirst();
+            }
+            nanos[2] += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            bulk.pollFirst(batch);
+            nanos[3] += System.nanoTime() - start;
+        }
+
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] /= rounds * 1000L;
+        }
+        return nanos;
+    }
+}
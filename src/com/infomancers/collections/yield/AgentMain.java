@@ -47,7 +47,16 @@ import java.util.List;
  */
 public final class AgentMain {
     public static void premain(String agentArgs, Instrumentation inst) {
-        List<String> args = Arrays.asList(agentArgs.split(";"));
+        List<String> args = Arrays.asList((agentArgs == null ? "" : agentArgs).split(";"));
+
+        if (args.contains("thread")) {
+            System.setProperty(ThreadContinuation.ENGINE_PROPERTY, "thread");
+        }
+
+        // the thread engine runs yieldNextCore unmodified
+        if ("thread".equals(System.getProperty(ThreadContinuation.ENGINE_PROPERTY))) {
+            return;
+        }
 
         boolean debug = args.contains("debug");
         ClassFileTransformer transformer = args.contains("tree") ? new TreeYielderTransformer(debug) : new StreamingYielderTransformer(debug);
@@ -0,0 +1,61 @@
+package com.infomancers.collections.yield;
+
+import java.util.Iterator;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * An iterator over <code>int</code> values which can be traversed
+ * without boxing each element.
+ * <p/>
+ * The inherited <code>next</code> method is still available for use with
+ * code expecting an <code>Iterator&lt;Integer&gt;</code>, but it boxes the
+ * returned value.
+ * <p/>
+ * This interface stands in for <code>java.util.PrimitiveIterator.OfInt</code>,
+ * which only exists since Java 8, while this library targets Java 6. It
+ * uses the same method name, so it can be swapped for it once the target
+ * is raised.
+ *
+ * @since 0.4
+ */
+public interface IntIterator extends Iterator<Integer> {
+
+    /**
+     * Returns the next element in the iteration as a primitive.
+     *
+     * @return The next element in the iteration.
+     * @throws java.util.NoSuchElementException If the iteration has no more elements.
+     */
+    int nextInt();
+}
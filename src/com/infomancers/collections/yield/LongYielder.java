@@ -0,0 +1,128 @@
+package com.infomancers.collections.yield;
+
+import java.io.Closeable;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * A {@link Yielder} counterpart for <code>long</code> values.
+ * <p/>
+ * The yielded element is kept in a primitive field and handed out by
+ * {@link LongIterator#nextLong()}, so no <code>Long</code> is allocated per
+ * element. The <code>yieldNextCore</code> implementation is enhanced in exactly
+ * the same way as the one of a {@link Yielder}, including support for
+ * {@link YieldBatch}.
+ *
+ * @since 0.4
+ */
+public abstract class LongYielder extends PrimitiveYielder implements Iterable<Long> {
+
+    /**
+     * Implemented by the developer to yield <code>long</code> elements
+     * back to the caller.
+     *
+     * @see Yielder#yieldNextCore()
+     */
+    protected abstract void yieldNextCore();
+
+    private long nextItem;
+    private long[] buffer;
+
+    /**
+     * Sets the next element returned by the iterator's
+     * <code>nextLong</code> call, and marks the result
+     * of <code>hasNext</code> to true.
+     *
+     * @param item The next element returned.
+     */
+    protected final void yieldReturn(long item) {
+        if (buffer != null) {
+            buffer[bufferSize] = item;
+        } else {
+            nextItem = item;
+        }
+        yielded();
+    }
+
+    /**
+     * Returns an iterator which goes through all
+     * elements returned using the <code>yieldReturn</code>
+     * method during a <code>yieldNextCore</code> implementation.
+     * <p/>
+     * Each iterator runs on a shallow copy of this yielder, as described in
+     * {@link Yielder#iterator()}: objects created by the constructor are
+     * shared by all iterators.
+     *
+     * @return An iterator for all yielded <code>long</code> items.
+     */
+    public LongIterator iterator() {
+        return ((LongYielder) copy()).newIterator();
+    }
+
+    private LongIterator newIterator() {
+        int size = startIteration();
+        if (size > 0) {
+            buffer = new long[size];
+        }
+
+        LongIterator iterator = new LongYielderIterator();
+        watch(iterator);
+        return iterator;
+    }
+
+    /**
+     * With the thread engine, closing the iterator cancels the continuation.
+     */
+    private final class LongYielderIterator implements LongIterator, Closeable {
+        public boolean hasNext() {
+            return hasNextElement();
+        }
+
+        public long nextLong() {
+            int pos = nextElement();
+            return pos < 0 ? nextItem : buffer[pos];
+        }
+
+        public Long next() {
+            return nextLong();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Unable to delete using this iterator");
+        }
+
+        public void close() {
+            LongYielder.this.close();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.infomancers.collections.yield;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * The iteration shared by {@link IntYielder}, {@link LongYielder} and
+ * {@link DoubleYielder}, which only add a typed field for the next
+ * element and a typed buffer.
+ * <p/>
+ * Without a buffer, each element is computed by a call to
+ * <code>yieldNextCore</code> and kept in the next element field. With a
+ * {@link YieldBatch} annotation or the thread engine, the elements are
+ * written into the buffer, whose positions are kept here.
+ *
+ * @since 0.4
+ */
+abstract class PrimitiveYielder implements Cloneable {
+
+    /**
+     * Implemented by the developer to yield elements back to the caller.
+     *
+     * @see Yielder#yieldNextCore()
+     */
+    protected abstract void yieldNextCore();
+
+    private boolean hasNextItem = false;
+    // whether the element following the last returned one was computed
+    private boolean advanced = false;
+
+    // the capacity of the typed buffer, or 0 without one
+    private int bufferLength;
+    int bufferSize;
+    private int bufferPos;
+    // thrown by yieldNextCore, rethrown once the buffered elements were served
+    private Throwable bufferFailure;
+
+    private ThreadContinuation continuation;
+
+    /**
+     * Called by <code>yieldReturn</code> once the element was written to the
+     * next element field, or to the buffer at <code>bufferSize</code>.
+     */
+    final void yielded() {
+        if (bufferLength == 0) {
+            hasNextItem = true;
+        } else if (++bufferSize == bufferLength && continuation != null) {
+            continuation.suspend();
+        }
+    }
+
+    /**
+     * Called by the enhanced <code>yieldNextCore</code> of a {@link YieldBatch}
+     * annotated yielder after each <code>yieldReturn</code>.
+     *
+     * @return <code>true</code> when no more elements can be buffered.
+     * @see Yielder#isBatchFull()
+     */
+    protected final boolean isBatchFull() {
+        return bufferSize == bufferLength;
+    }
+
+    /**
+     * Marks the result of <code>hasNext</code> to false.
+     */
+    protected final void yieldBreak() {
+        hasNextItem = false;
+
+        if (continuation != null) {
+            continuation.yieldBreak();
+        }
+    }
+
+    /**
+     * Returns a shallow copy of this yielder, on which a single iteration runs.
+     * This instance itself never runs <code>yieldNextCore</code>, so the
+     * copy starts out with the values the constructor set and with the
+     * fields promoted by the enhancement still unset. Objects referenced by
+     * those values are not copied.
+     */
+    final PrimitiveYielder copy() {
+        try {
+            return (PrimitiveYielder) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Prepares this copy for its iteration.
+     *
+     * @return The capacity of the buffer to allocate, or 0 if none is needed.
+     */
+    final int startIteration() {
+        YieldBatch batch = getClass().getAnnotation(YieldBatch.class);
+        if (ThreadContinuation.isEnabledFor(getClass())) {
+            // the elements are handed over through the buffer, one batch per suspension
+            continuation = new ThreadContinuation(new Runnable() {
+                public void run() {
+                    yieldNextCore();
+                }
+            });
+            bufferLength = batch == null ? 1 : batch.value();
+        } else if (batch != null) {
+            bufferLength = batch.value();
+        } else {
+            return 0;
+        }
+
+        if (bufferLength <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + bufferLength);
+        }
+
+        // start out as if a full buffer was consumed
+        bufferSize = bufferLength;
+        bufferPos = bufferLength;
+        return bufferLength;
+    }
+
+    /**
+     * Cancels the continuation of this copy once the given iterator over it
+     * is garbage collected.
+     */
+    final void watch(Object iterator) {
+        if (continuation != null) {
+            continuation.watch(iterator);
+        }
+    }
+
+    /**
+     * Computes the next element, unless it was already computed.
+     *
+     * @return Whether there is a next element.
+     */
+    final boolean hasNextElement() {
+        if (bufferLength == 0) {
+            if (!advanced) {
+                hasNextItem = false;
+                yieldNextCore();
+                advanced = true;
+            }
+
+            return hasNextItem;
+        }
+
+        if (bufferPos == bufferSize) {
+            fillBuffer();
+        }
+
+        return bufferPos < bufferSize;
+    }
+
+    /**
+     * Moves past the next element.
+     *
+     * @return The position of the element in the buffer, or -1 if it is in
+     *         the next element field.
+     */
+    final int nextElement() {
+        if (!hasNextElement()) {
+            throw new NoSuchElementException();
+        }
+
+        if (bufferLength == 0) {
+            advanced = false;
+            return -1;
+        }
+
+        return bufferPos++;
+    }
+
+    /**
+     * With the thread engine, cancels the continuation.
+     */
+    final void close() {
+        if (continuation != null) {
+            continuation.cancel();
+        }
+    }
+
+    private void fillBuffer() {
+        if (bufferFailure != null) {
+            Throwable failure = bufferFailure;
+            bufferFailure = null;
+            rethrow(failure);
+        }
+
+        // a partially filled buffer means the method ended or called yieldBreak.
+        boolean ended = bufferSize < bufferLength;
+
+        bufferSize = 0;
+        bufferPos = 0;
+
+        if (!ended) {
+            try {
+                if (continuation != null) {
+                    continuation.resume();
+                } else {
+                    yieldNextCore();
+                }
+            } catch (RuntimeException e) {
+                failed(e);
+            } catch (Error e) {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Keeps an exception thrown by <code>yieldNextCore</code>, directly or
+     * through the continuation, until the elements it buffered before
+     * throwing were served. The partially
+     * filled buffer then ends the iteration.
+     */
+    private void failed(Throwable failure) {
+        if (bufferSize == 0) {
+            rethrow(failure);
+        }
+        bufferFailure = failure;
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw (RuntimeException) failure;
+    }
+}
@@ -0,0 +1,386 @@
+package com.infomancers.collections.yield;
+
+import com.infomancers.collections.yield.asmbase.WovenAttribute;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Runs an unmodified <code>yieldNextCore</code> method on a thread of its own,
+ * handing control back and forth with the iterating thread on each
+ * <code>yieldReturn</code>, or on each full batch of a {@link YieldBatch}
+ * annotated yielder.
+ * <p/>
+ * This is the "thread" engine, an alternative to enhancing the bytecode: it is
+ * enabled by setting the {@link #ENGINE_PROPERTY} system property to
+ * <code>thread</code>, or by passing <code>thread</code> to the agent. Only one
+ * of the two threads runs at any time; control is handed over by parking and
+ * unparking, and the turn flag publishes everything written before the hand-off.
+ * <p/>
+ * Yielders woven at build time are already enhanced, so they run as with the
+ * other engines, without a continuation.
+ * <p/>
+ * A yielder which is not iterated to its end keeps its (daemon) thread parked
+ * until it is cancelled, either by closing its iterator or, once the iterator
+ * is garbage collected, by a reaper thread. Cancelling unwinds the body as
+ * <code>yieldBreak</code> does, running its <code>finally</code> blocks.
+ * <p/>
+ * Both unwind the body with an {@link Error}, which a <code>catch (Throwable)</code>
+ * block in it can catch. The body is then unwound again on its next
+ * <code>yieldReturn</code> or <code>yieldAll</code>, so it can't produce any
+ * more elements. A body which keeps catching the error, or goes on without
+ * yielding, still runs until it ends, and closing its iterator waits for it.
+ */
+final class ThreadContinuation {
+    static final String ENGINE_PROPERTY = "com.infomancers.collections.yield.engine";
+
+    /**
+     * The stack size of the producing threads, in bytes; the JVM's default
+     * when not set. Nested yielders run on the thread of the outermost one,
+     * so deep recursions may need a deeper stack.
+     */
+    static final String STACK_SIZE_PROPERTY = "com.infomancers.collections.yield.stackSize";
+
+    private static final boolean ENABLED = "thread".equals(System.getProperty(ENGINE_PROPERTY));
+    private static final AtomicInteger threads = new AtomicInteger();
+    private static final Map<Class<?>, Boolean> woven = Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
+
+    /**
+     * Thrown on the producing thread by <code>yieldBreak</code>, or when the
+     * continuation is cancelled, to unwind the unmodified <code>yieldNextCore</code>
+     * method.
+     */
+    private static final class BreakSignal extends Error {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final BreakSignal BREAK = new BreakSignal();
+    private static final BreakSignal CANCEL = new BreakSignal();
+
+    /**
+     * Cancels the continuation of an iterator once the iterator is garbage collected.
+     */
+    private static final class Handle extends WeakReference<Object> {
+        private final ThreadContinuation continuation;
+
+        private Handle(Object iterator, ThreadContinuation continuation) {
+            super(iterator, abandoned);
+            this.continuation = continuation;
+        }
+    }
+
+    private static final ReferenceQueue<Object> abandoned = new ReferenceQueue<Object>();
+    // keeps the handles reachable until their iterators are collected
+    private static final Set<Handle> handles = Collections.newSetFromMap(new ConcurrentHashMap<Handle, Boolean>());
+
+    static {
+        if (ENABLED) {
+            Thread reaper = new Thread(new Runnable() {
+                public void run() {
+                    for (; ;) {
+                        try {
+                            ((Handle) abandoned.remove()).continuation.cancel();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }, "yielder-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+    }
+
+    private final Runnable body;
+    private volatile Thread producer;
+    private volatile Thread consumer;
+    private volatile boolean producerTurn = false;
+    private volatile boolean finished = false;
+    private volatile boolean cancelled = false;
+    // whether the body called yieldBreak, so that it unwinds again if it catches the signal
+    private boolean broken = false;
+    private Throwable failure;
+    private Handle handle;
+
+    // the elements handed over by the last suspension, if offered to this continuation
+    private final Object[] items;
+    private int size;
+
+    /**
+     * Creates a continuation whose body keeps its elements itself.
+     */
+    ThreadContinuation(Runnable body) {
+        this.body = body;
+        this.items = null;
+    }
+
+    /**
+     * Creates a continuation whose body hands its elements over with
+     * {@link #offer(Object)}, suspending once every batchSize elements.
+     */
+    ThreadContinuation(Runnable body, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.body = body;
+        this.items = new Object[batchSize];
+    }
+
+    /**
+     * Returns whether the yielders of the given class run on a continuation: with
+     * the thread engine, unless the class was woven, and so is already enhanced.
+     */
+    static boolean isEnabledFor(Class<?> yielderClass) {
+        return ENABLED && !isWoven(yielderClass);
+    }
+
+    private static boolean isWoven(Class<?> yielderClass) {
+        Boolean result = woven.get(yielderClass);
+        if (result == null) {
+            result = false;
+            for (Field field : yielderClass.getDeclaredFields()) {
+                // the name is a compile time constant, so asm isn't needed at runtime
+                if (field.isSynthetic() && WovenAttribute.FIELD.equals(field.getName())) {
+                    result = true;
+                    break;
+                }
+            }
+            woven.put(yielderClass, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Aborts the body when called from it.
+     */
+    void yieldBreak() {
+        broken = true;
+        throw BREAK;
+    }
+
+    /**
+     * Cancels this continuation once the given iterator, which must not be
+     * referenced by the body, is garbage collected.
+     */
+    void watch(Object iterator) {
+        handle = new Handle(iterator, this);
+        handles.add(handle);
+    }
+
+    /**
+     * Runs the body until its next suspension, or until it ends.
+     * Called by the iterating thread. If the body fails after handing
+     * elements over, the failure is thrown by the following call, once
+     * those elements were taken.
+     */
+    void resume() {
+        if (items != null) {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+        }
+
+        if (!finished) {
+            handOver();
+        }
+
+        if (failure != null && size == 0) {
+            Throwable t = failure;
+            failure = null;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new IllegalStateException("yieldNextCore failed", t);
+        }
+    }
+
+    /**
+     * Unwinds the body, if it has not ended yet, and waits for it to end.
+     * Exceptions thrown by the body while unwinding are discarded.
+     * Called by the iterating thread, or by the reaper.
+     */
+    void cancel() {
+        if (handle != null) {
+            handles.remove(handle);
+            handle.clear();
+        }
+
+        if (finished) {
+            return;
+        }
+
+        if (producer == null) {
+            finished = true;
+            return;
+        }
+
+        cancelled = true;
+        handOver();
+        failure = null;
+    }
+
+    private void handOver() {
+        consumer = Thread.currentThread();
+        producerTurn = true;
+
+        if (producer == null) {
+            producer = new Thread(null, new Runnable() {
+                public void run() {
+                    runBody();
+                }
+            }, "yielder-" + threads.incrementAndGet(), Long.getLong(STACK_SIZE_PROPERTY, 0));
+            producer.setDaemon(true);
+            producer.start();
+        } else {
+            LockSupport.unpark(producer);
+        }
+
+        while (producerTurn) {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * @return The amount of elements handed over by the last suspension.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns an element handed over by the last suspension, and forgets it.
+     */
+    Object take(int i) {
+        Object result = items[i];
+        items[i] = null;
+        return result;
+    }
+
+    /**
+     * Hands the given element over to the iterating thread, suspending
+     * once the batch is full. Called by the body.
+     */
+    void offer(Object item) {
+        unwindIfStopped();
+
+        items[size++] = item;
+        if (size == items.length) {
+            suspend();
+        }
+    }
+
+    /**
+     * Hands control back to the iterating thread, and waits for the next
+     * call to {@link #resume()}. Called by the body.
+     */
+    void suspend() {
+        unwindIfStopped();
+
+        producerTurn = false;
+        LockSupport.unpark(consumer);
+
+        while (!producerTurn) {
+            LockSupport.park(this);
+        }
+
+        unwindIfStopped();
+    }
+
+    /**
+     * Unwinds the body again if it was cancelled or called yieldBreak, in
+     * case it caught the signal. Called by the body.
+     */
+    private void unwindIfStopped() {
+        if (cancelled) {
+            throw CANCEL;
+        } else if (broken) {
+            throw BREAK;
+        }
+    }
+
+    /**
+     * Runs the body of a nested yielder as part of this one's, on the
+     * producing thread; a <code>yieldBreak</code> only ends the nested body.
+     * Called by the body.
+     */
+    void runNested(Runnable nested) {
+        unwindIfStopped();
+
+        try {
+            nested.run();
+        } catch (BreakSignal e) {
+            if (e == CANCEL) {
+                throw e;
+            }
+            // the nested body called yieldBreak
+        } finally {
+            broken = false;
+        }
+    }
+
+    private void runBody() {
+        try {
+            body.run();
+        } catch (BreakSignal e) {
+            // yieldBreak was called, or the continuation was cancelled
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            finished = true;
+            if (handle != null) {
+                handles.remove(handle);
+            }
+            producerTurn = false;
+            LockSupport.unpark(consumer);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.infomancers.collections.yield;
+
+import com.infomancers.collections.yield.asm.StreamingYielderTransformer;
+import com.infomancers.collections.yield.asmbase.AbstractYielderTransformer;
+import com.infomancers.collections.yield.asmtree.TreeYielderTransformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * The entry point for weaving yielders at build time, instead of enhancing them
+ * with the agent each time they are loaded.
+ * <p/>
+ * Each classes directory or jar file given is searched for yielders, which are
+ * enhanced and written back in place. Other classes are left untouched. Woven
+ * classes are marked, so the agent skips them if it is installed anyway.
+ * <p/>
+ * Usage:
+ * <code>java -cp yielder.jar:asm-all-3.0.jar com.infomancers.collections.yield.WeaverMain
+ * [-tree] [-debug] [-classpath path] (dir | jar)...</code>
+ * <p/>
+ * The class path holds the libraries the woven classes use, so that yielders
+ * extending a yielder defined in a library are found. Woven classes run the
+ * same with any engine; with the thread engine, they run their enhanced
+ * <code>yieldNextCore</code> directly instead of on a thread of their own.
+ *
+ * @see WeaverTask
+ * @since 0.4
+ */
+public final class WeaverMain {
+    public static void main(String[] args) throws IOException {
+        boolean tree = false;
+        boolean debug = false;
+        String classpath = null;
+        List<File> targets = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-tree".equals(args[i])) {
+                tree = true;
+            } else if ("-debug".equals(args[i])) {
+                debug = true;
+            } else if ("-classpath".equals(args[i]) && i + 1 < args.length) {
+                classpath = args[++i];
+            } else {
+                targets.add(new File(args[i]));
+            }
+        }
+
+        if (targets.isEmpty()) {
+            System.err.println("Usage: WeaverMain [-tree] [-debug] [-classpath path] (dir | jar)...");
+            System.exit(1);
+        }
+
+        AbstractYielderTransformer transformer = createTransformer(tree, debug);
+        for (File target : targets) {
+            int woven = weave(target, parseClasspath(classpath), transformer);
+
+            System.out.println("Woven " + woven + " yielders in " + target);
+        }
+    }
+
+    static AbstractYielderTransformer createTransformer(boolean tree, boolean debug) {
+        return tree ? new TreeYielderTransformer(debug) : new StreamingYielderTransformer(debug);
+    }
+
+    static List<File> parseClasspath(String classpath) {
+        List<File> result = new ArrayList<File>();
+
+        if (classpath != null) {
+            for (String entry : classpath.split(File.pathSeparator)) {
+                if (entry.length() > 0) {
+                    result.add(new File(entry));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Weaves the yielders of a classes directory or a jar file in place.
+     *
+     * @param target      The classes directory or jar file.
+     * @param classpath   The libraries the classes use.
+     * @param transformer The transformer enhancing the yielders.
+     * @return The amount of yielders woven.
+     * @throws IOException If the classes can't be read or written.
+     */
+    public static int weave(File target, List<File> classpath, AbstractYielderTransformer transformer) throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(target.toURI().toURL());
+        for (File entry : classpath) {
+            urls.add(entry.toURI().toURL());
+        }
+
+        ClassLoader loader = new URLClassLoader(urls.toArray(new URL[urls.size()]), WeaverMain.class.getClassLoader());
+
+        if (target.isDirectory()) {
+            return weaveDirectory(target, "", loader, transformer);
+        } else {
+            return weaveJar(target, loader, transformer);
+        }
+    }
+
+    private static int weaveDirectory(File dir, String prefix, ClassLoader loader, AbstractYielderTransformer transformer) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("Can't list " + dir);
+        }
+
+        int woven = 0;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                woven += weaveDirectory(file, prefix + file.getName() + "/", loader, transformer);
+            } else if (file.getName().endsWith(".class")) {
+                byte[] bytes = read(new FileInputStream(file));
+                byte[] result = transform(prefix + file.getName(), bytes, loader, transformer);
+
+                if (result != bytes) {
+                    write(result, new FileOutputStream(file));
+                    woven++;
+                }
+            }
+        }
+
+        return woven;
+    }
+
+    private static int weaveJar(File jar, ClassLoader loader, AbstractYielderTransformer transformer) throws IOException {
+        File temp = File.createTempFile(jar.getName(), ".tmp", jar.getAbsoluteFile().getParentFile());
+        ZipFile zip = new ZipFile(jar);
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(temp));
+
+        int woven = 0;
+        try {
+            for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                byte[] bytes = read(zip.getInputStream(entry));
+
+                if (entry.getName().endsWith(".class")) {
+                    byte[] result = transform(entry.getName(), bytes, loader, transformer);
+
+                    if (result != bytes) {
+                        bytes = result;
+                        woven++;
+                    }
+                }
+
+                // the sizes of woven entries differ, so don't copy the entry itself
+                ZipEntry copy = new ZipEntry(entry.getName());
+                copy.setTime(entry.getTime());
+                copy.setComment(entry.getComment());
+                copy.setExtra(entry.getExtra());
+
+                out.putNextEntry(copy);
+                out.write(bytes);
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+            zip.close();
+        }
+
+        if (woven == 0) {
+            temp.delete();
+        } else if (!jar.delete() || !temp.renameTo(jar)) {
+            throw new IOException("Can't replace " + jar + " with " + temp);
+        }
+
+        return woven;
+    }
+
+    private static byte[] transform(String path, byte[] bytes, ClassLoader loader, AbstractYielderTransformer transformer) throws IOException {
+        String className = path.substring(0, path.length() - ".class".length());
+
+        try {
+            return transformer.transformOrThrow(loader, bytes);
+        } catch (RuntimeException e) {
+            throw new IOException("Can't weave " + className + ": " + e, e);
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(byte[] bytes, OutputStream out) throws IOException {
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
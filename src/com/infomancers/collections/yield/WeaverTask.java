@@ -0,0 +1,89 @@
+package com.infomancers.collections.yield;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Weaves yielders at build time from an Ant build, just like {@link WeaverMain}.
+ * <p/>
+ * The task doesn't depend on Ant; Ant adapts any class with an <code>execute</code>
+ * method. It is defined and used like this:
+ * <pre>
+ * &lt;taskdef name="weave" classname="com.infomancers.collections.yield.WeaverTask"
+ *          classpath="yielder.jar:asm-all-3.0.jar"/&gt;
+ * &lt;weave dir="${classes.dir}" classpath="${libraries}" tree="true"/&gt;
+ * </pre>
+ * Either <code>dir</code>, a classes directory, or <code>jar</code>, a jar file, is woven.
+ *
+ * @since 0.4
+ */
+public final class WeaverTask {
+    private File dir;
+    private File jar;
+    private String classpath;
+    private boolean tree;
+    private boolean debug;
+
+    public void setDir(File dir) {
+        this.dir = dir;
+    }
+
+    public void setJar(File jar) {
+        this.jar = jar;
+    }
+
+    public void setClasspath(String classpath) {
+        this.classpath = classpath;
+    }
+
+    public void setTree(boolean tree) {
+        this.tree = tree;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public void execute() throws IOException {
+        if ((dir == null) == (jar == null)) {
+            throw new IllegalArgumentException("Exactly one of dir and jar has to be set");
+        }
+
+        File target = dir != null ? dir : jar;
+        int woven = WeaverMain.weave(target, WeaverMain.parseClasspath(classpath), WeaverMain.createTransformer(tree, debug));
+
+        System.out.println("Woven " + woven + " yielders in " + target);
+    }
+}
@@ -0,0 +1,73 @@
+package com.infomancers.collections.yield;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Marks a yielder whose <code>yieldNextCore</code> method should produce
+ * elements in batches rather than one at a time.
+ * <p/>
+ * Without this annotation, every call to <code>yieldReturn</code> saves the
+ * state and returns from <code>yieldNextCore</code>, so each element costs a
+ * full resume: the state switch, reloading the promoted locals, and the
+ * return. When the annotation is present, the enhanced method keeps running
+ * after a <code>yieldReturn</code> and only suspends once <code>value</code>
+ * elements were buffered. The iterator then serves the buffered elements
+ * before resuming the method again.
+ * <p/>
+ * The elements of iterables passed to <code>yieldAll</code> are buffered
+ * as well. A delegated yielder is resumed directly, as in an unbatched
+ * iteration, and produces one element per resume regardless of its own
+ * annotation.
+ * <p/>
+ * The annotation is read from the class which implements
+ * <code>yieldNextCore</code>, and is not inherited.
+ *
+ * @since 0.4
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface YieldBatch {
+
+    /**
+     * The amount of elements produced per resume of <code>yieldNextCore</code>.
+     * Must be positive.
+     */
+    int value();
+}
@@ -1,6 +1,10 @@
 package com.infomancers.collections.yield;
 
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Copyright (c) 2007, Aviad Ben Dov
@@ -41,8 +45,9 @@ import java.util.Iterator;
  * during runtime it will be enhanced to the following:
  * <p/>
  * 1. All local variables within the yieldNextCore method
+ * whose values may be read after a call to yieldReturn
  * will be promoted to class member fields.
- * 2. A new member, "state" of type byte, will be added.
+ * 2. A new member, "state" of type int, will be added.
  * 3. Each call to yieldReturn will have the following code
  * appended to after it:
  * <code>
@@ -61,8 +66,27 @@ import java.util.Iterator;
  * ..
  * }
  * </code>
+ * The switch is a TABLESWITCH or a LOOKUPSWITCH, whichever is
+ * cheaper for the amount of cases. A method with a single
+ * yieldReturn call gets an <code>if (state != 0) goto Label1;</code>
+ * (IFNE) instead, and a method without any gets no switch at all.
+ * <p/>
+ * Sub-classes annotated with {@link YieldBatch} have the state saving
+ * in step 3 guarded by a call to <code>isBatchFull</code>, so that
+ * several elements are produced by a single call.
+ * <p/>
+ * Calls to yieldAll are treated just like calls to yieldReturn: the
+ * state is saved and the method returns, and the iterator then
+ * takes its elements from the delegated iterable before calling
+ * yieldNextCore again.
+ * <p/>
+ * Alternatively, when the system property
+ * <code>com.infomancers.collections.yield.engine</code> is set to
+ * <code>thread</code>, no enhancement takes place: yieldNextCore runs
+ * unmodified on a thread of its own, which is suspended on each
+ * call to yieldReturn until the next element is requested.
  */
-public abstract class Yielder<T> implements Iterable<T> {
+public abstract class Yielder<T> implements Iterable<T>, Cloneable {
 
     /**
      * Implemented by the developer to yield elements of
@@ -90,6 +114,19 @@ public abstract class Yielder<T> implements Iterable<T> {
     private T nextItem = null;
     private boolean hasNextItem = false;
 
+    private Iterable<? extends T> delegate;
+
+    private Object[] buffer;
+    private int bufferSize;
+    private int bufferPos;
+    private boolean bufferEnded;
+    // the delegated generators of a batch iteration, innermost first
+    private Deque<Object> bufferDelegates;
+    // thrown by yieldNextCore, rethrown once the buffered elements were served
+    private Throwable bufferFailure;
+
+    private ThreadContinuation continuation;
+
     /**
      * Sets the next element returned by the iterator's
      * <code>next</code> call, and marks the result
@@ -98,10 +135,67 @@ public abstract class Yielder<T> implements Iterable<T> {
      * @param item The next element returned.
      */
     protected final void yieldReturn(T item) {
+        if (continuation != null) {
+            continuation.offer(item);
+            return;
+        }
+
+        if (buffer != null) {
+            buffer[bufferSize++] = item;
+            return;
+        }
+
         hasNextItem = true;
         nextItem = item;
     }
 
+    /**
+     * Called by the enhanced <code>yieldNextCore</code> of a {@link YieldBatch}
+     * annotated yielder after each <code>yieldReturn</code>, to decide whether
+     * the method should return to the iterator.
+     *
+     * @return <code>true</code> when no more elements can be buffered.
+     */
+    protected final boolean isBatchFull() {
+        return buffer == null || bufferSize == buffer.length || delegate != null;
+    }
+
+    /**
+     * Yields all elements of the given iterable, as if <code>yieldReturn</code>
+     * was called for each of them.
+     * <p/>
+     * Unlike such a loop, the elements do not pass through this yielder:
+     * the iterator takes them directly from the delegated iterable. When the
+     * iterable is itself a yielder, the iterator runs its
+     * <code>yieldNextCore</code> directly, so recursive yielders (such as
+     * tree traversals) cost the same per element regardless of their depth.
+     * <p/>
+     * With the thread engine, the <code>yieldNextCore</code> of a yielder
+     * which was not woven runs on the thread of this one, and other iterables
+     * are looped over.
+     *
+     * @param iterable The elements to yield.
+     */
+    protected final void yieldAll(Iterable<? extends T> iterable) {
+        if (continuation != null) {
+            if (iterable instanceof Yielder && ThreadContinuation.isEnabledFor(iterable.getClass())) {
+                final Yielder<? extends T> nested = ((Yielder<? extends T>) iterable).copy();
+                nested.continuation = continuation;
+                continuation.runNested(new Runnable() {
+                    public void run() {
+                        nested.yieldNextCore();
+                    }
+                });
+            } else {
+                for (T item : iterable) {
+                    yieldReturn(item);
+                }
+            }
+        } else {
+            delegate = iterable;
+        }
+    }
+
     /**
      * Sets the element returned by the iterator's
      * <code>next</code> call to <code>null</code> and marks
@@ -109,27 +203,328 @@ public abstract class Yielder<T> implements Iterable<T> {
      */
     protected final void yieldBreak() {
         hasNextItem = false;
+
+        if (continuation != null) {
+            continuation.yieldBreak();
+        }
     }
 
 
+    /**
+     * Returns an estimate of the amount of elements this yielder produces,
+     * or <code>-1</code> if the amount is unknown.
+     * <p/>
+     * Sub-classes which know how many elements they are going to yield may
+     * override this method. The value is only used as a hint, for example
+     * to size the batches handed out for parallel processing.
+     *
+     * @return The estimated amount of elements, or <code>-1</code>.
+     */
+    public long estimateSize() {
+        return -1;
+    }
+
     /**
      * Returns an iterator which goes through all
      * elements returned using the <code>yieldReturn</code>
      * method during a <code>yieldNextCore</code> implementation.
+     * <p/>
+     * Each iterator runs on a copy of this yielder, so the locals and the
+     * state of <code>yieldNextCore</code> are never shared, and several
+     * iterators may be used at once, also by different threads. The copy is
+     * shallow though: objects created by the constructor or by field
+     * initializers, such as collections or counters, are shared by all
+     * iterators. State an iteration changes has to be created inside
+     * <code>yieldNextCore</code> instead.
+     * <p/>
+     * With the thread engine, the iterator is also {@link Closeable}: closing
+     * an iterator which was not run to its end releases the thread running
+     * <code>yieldNextCore</code> right away, instead of once the iterator is
+     * garbage collected.
      *
      * @return An iterator for all yielded items of type T.
      */
     public Iterator<T> iterator() {
-        yieldNext();
+        return copy().newIterator();
+    }
+
+    /**
+     * Returns a shallow copy of this yielder, on which a single iteration runs.
+     * This instance itself never runs <code>yieldNextCore</code>, so the
+     * copy starts out with the values the constructor set and with the
+     * fields promoted by the enhancement still unset. Objects referenced by
+     * those values are not copied.
+     */
+    @SuppressWarnings("unchecked")
+    private Yielder<T> copy() {
+        try {
+            return (Yielder<T>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the generator running a delegated iterable: a copy of it if
+     * it is an enhanced yielder, whose <code>yieldNextCore</code> is then run
+     * directly, or its iterator otherwise.
+     */
+    private static Object generatorFor(Iterable<?> iterable) {
+        return iterable instanceof Yielder && !ThreadContinuation.isEnabledFor(iterable.getClass())
+                ? ((Yielder<?>) iterable).copy() : iterable.iterator();
+    }
+
+    private Iterator<T> newIterator() {
+        YieldBatch batch = getClass().getAnnotation(YieldBatch.class);
+        if (ThreadContinuation.isEnabledFor(getClass())) {
+            continuation = new ThreadContinuation(new Runnable() {
+                public void run() {
+                    yieldNextCore();
+                }
+            }, batch == null ? 1 : batch.value());
+
+            Iterator<T> iterator = new ContinuationIterator();
+            continuation.watch(iterator);
+            return iterator;
+        } else if (batch != null) {
+            return batchIterator(batch.value());
+        }
 
         return new Iterator<T>() {
+            // the active generators, innermost first: yielders run directly, other
+            // iterables through their iterators.
+            private final Deque<Object> generators = new ArrayDeque<Object>();
+            private T item;
+            private boolean hasItem;
+            // whether the element following the last returned one was computed
+            private boolean advanced = false;
+
+            {
+                generators.push(Yielder.this);
+            }
+
+            @SuppressWarnings("unchecked")
+            private void advance() {
+                hasItem = false;
+
+                while (!generators.isEmpty()) {
+                    Object top = generators.peek();
+
+                    if (top instanceof Yielder) {
+                        Yielder<T> yielder = (Yielder<T>) top;
+                        yielder.yieldNext();
+
+                        if (yielder.delegate != null) {
+                            if (yielder.hasNextItem) {
+                                // only a method which wasn't enhanced goes on after yieldAll, and
+                                // would restart from its beginning on each call
+                                throw new IllegalStateException(yielder.getClass().getName() + " was not enhanced");
+                            }
+
+                            generators.push(generatorFor(yielder.delegate));
+                            yielder.delegate = null;
+                        } else if (yielder.hasNextItem) {
+                            item = yielder.nextItem;
+                            yielder.nextItem = null;
+                            hasItem = true;
+                            return;
+                        } else {
+                            generators.pop();
+                        }
+                    } else {
+                        Iterator<? extends T> it = (Iterator<? extends T>) top;
+
+                        if (it.hasNext()) {
+                            item = it.next();
+                            hasItem = true;
+                            return;
+                        } else {
+                            generators.pop();
+                        }
+                    }
+                }
+            }
+
             public boolean hasNext() {
-                return hasNextItem;
+                if (!advanced) {
+                    advance();
+                    advanced = true;
+                }
+
+                return hasItem;
             }
 
             public T next() {
-                T result = nextItem;
-                yieldNext();
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                advanced = false;
+                T result = item;
+                item = null;
+                return result;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Unable to delete using this iterator");
+            }
+        };
+    }
+
+    /**
+     * The iterator of the thread engine, taking the elements handed over by
+     * the continuation. Closing it cancels the continuation.
+     */
+    private final class ContinuationIterator implements Iterator<T>, Closeable {
+        private int pos = 0;
+
+        public boolean hasNext() {
+            if (pos == continuation.size()) {
+                pos = 0;
+                continuation.resume();
+            }
+
+            return pos < continuation.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return (T) continuation.take(pos++);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Unable to delete using this iterator");
+        }
+
+        public void close() {
+            continuation.cancel();
+        }
+    }
+
+    /**
+     * Refills the buffer of a batch iteration. If <code>yieldNextCore</code>
+     * or a delegate throws, the elements buffered so far are served first,
+     * and the exception is thrown once they are drained, as the unbatched
+     * iterator would.
+     */
+    private void fillBuffer() {
+        if (bufferFailure != null) {
+            Throwable failure = bufferFailure;
+            bufferFailure = null;
+            rethrow(failure);
+        }
+
+        bufferSize = 0;
+        bufferPos = 0;
+
+        try {
+            while (bufferSize < buffer.length && !bufferEnded) {
+                if (!bufferDelegates.isEmpty()) {
+                    fillFromDelegate();
+                    continue;
+                }
+
+                yieldNextCore();
+
+                if (delegate != null) {
+                    bufferDelegates.push(generatorFor(delegate));
+                    delegate = null;
+                } else if (bufferSize < buffer.length) {
+                    // the method ended, or called yieldBreak
+                    bufferEnded = true;
+                }
+            }
+        } catch (RuntimeException e) {
+            failed(e);
+        } catch (Error e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Buffers elements of the innermost delegate. Delegated yielders are
+     * resumed for one element at a time, and their own delegates are pushed
+     * on the stack, so that nested yielders are not iterated through each
+     * other's iterators.
+     */
+    @SuppressWarnings("unchecked")
+    private void fillFromDelegate() {
+        Object top = bufferDelegates.peek();
+
+        if (top instanceof Yielder) {
+            Yielder<T> yielder = (Yielder<T>) top;
+            yielder.yieldNext();
+
+            if (yielder.delegate != null) {
+                if (yielder.hasNextItem) {
+                    throw new IllegalStateException(yielder.getClass().getName() + " was not enhanced");
+                }
+
+                bufferDelegates.push(generatorFor(yielder.delegate));
+                yielder.delegate = null;
+            } else if (yielder.hasNextItem) {
+                buffer[bufferSize++] = yielder.nextItem;
+                yielder.nextItem = null;
+            } else {
+                bufferDelegates.pop();
+            }
+        } else {
+            Iterator<? extends T> it = (Iterator<? extends T>) top;
+            while (bufferSize < buffer.length && it.hasNext()) {
+                buffer[bufferSize++] = it.next();
+            }
+
+            // a full buffer doesn't tell whether the iterator is exhausted
+            if (bufferSize < buffer.length) {
+                bufferDelegates.pop();
+            }
+        }
+    }
+
+    private void failed(Throwable failure) {
+        bufferEnded = true;
+        if (bufferSize == 0) {
+            rethrow(failure);
+        }
+        bufferFailure = failure;
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw (RuntimeException) failure;
+    }
+
+    private Iterator<T> batchIterator(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + size);
+        }
+
+        buffer = new Object[size];
+        bufferDelegates = new ArrayDeque<Object>();
+
+        return new Iterator<T>() {
+            public boolean hasNext() {
+                if (bufferPos == bufferSize) {
+                    fillBuffer();
+                }
+
+                return bufferPos < bufferSize;
+            }
+
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                T result = (T) buffer[bufferPos];
+                buffer[bufferPos++] = null;
                 return result;
             }
 
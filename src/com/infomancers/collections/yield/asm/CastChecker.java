@@ -74,7 +74,8 @@ public class CastChecker extends ClassAdapter {
 
         @Override
         public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
-            if (opcode == Opcodes.GETFIELD) {
+            // only a reference can be the target of a virtual method and need a cast
+            if (opcode == Opcodes.GETFIELD && (desc.charAt(0) == 'L' || desc.charAt(0) == '[')) {
                 startMiniFrame();
                 getFields++;
             }
@@ -101,7 +102,8 @@ public class CastChecker extends ClassAdapter {
         public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc) {
             super.visitMethodInsn(opcode, owner, name, desc);
 
-            if (Opcodes.INVOKEVIRTUAL == opcode && insideMiniFrame()) {
+            // the bounding mini frame of the method is not a GETFIELD's mini frame
+            if (Opcodes.INVOKEVIRTUAL == opcode && getFields > 0) {
                 emit(mv, 1);
                 delayPriorityInsn(DelayedInstruction.TYPE.createEmitter(Opcodes.CHECKCAST, owner));
 
@@ -90,6 +90,7 @@ final class LocalVariablePromoter extends ClassAdapter {
     private class MyMethodAdapter extends MethodAdapter {
         private Collection<Label> exceptionHandlers = new HashSet<Label>();
         private boolean specialExceptionCase = false;
+        private final boolean reflectiveArrays = isReflectiveArrayAccessRequired();
 
         public MyMethodAdapter(MethodVisitor methodVisitor) {
             super(methodVisitor);
@@ -153,14 +154,15 @@ final class LocalVariablePromoter extends ClassAdapter {
 
         @Override
         public void visitVarInsn(final int opcode, final int var) {
-            if (var == 0) {
+            NewMember newMember = searchMember(var, opcode > Opcodes.ALOAD ?
+                    Util.typeForOffset(opcode - Opcodes.ISTORE) : Util.typeForOffset(opcode - Opcodes.ILOAD));
+
+            if (newMember == null) { // not live across a yield, stays a local variable
                 super.visitVarInsn(opcode, var);
             } else {
-                NewMember newMember = searchMember(var);
-
                 if (opcode > Opcodes.ALOAD) { // means its xSTORE
                     if (specialExceptionCase && var == 1) { // if in exception handler, and this is the exception variable..
-                        NewMember member = searchMember(1);
+                        NewMember member = searchMember(1, TypeDescriptor.Object);
 
                         // dealWithLoads already added an ALOAD for us. Just dup it
                         // above the already-existing exception.
@@ -202,19 +204,43 @@ final class LocalVariablePromoter extends ClassAdapter {
          */
         @Override
         public void visitIincInsn(final int var, final int increment) {
-            NewMember newMember = searchMember(var);
+            NewMember newMember = searchMember(var, TypeDescriptor.Integer);
+
+            if (newMember == null) {
+                super.visitIincInsn(var, increment);
+                return;
+            }
 
             super.visitVarInsn(Opcodes.ALOAD, 0);
             createGetField(Opcodes.ILOAD, newMember);
-            super.visitIntInsn(Opcodes.BIPUSH, Math.abs(increment));
+            Util.pushInt(mv, Math.abs(increment));
             super.visitInsn(increment > 0 ? Opcodes.IADD : Opcodes.ISUB);
             createPutField(Opcodes.ISTORE, newMember);
         }
 
 
+        /**
+         * Array instructions can be used as is, unless an array might be loaded
+         * from a member declared as an <code>Object</code>.
+         */
+        private boolean isReflectiveArrayAccessRequired() {
+            for (NewMember newMember : info.getSlots()) {
+                if (newMember.getType() == TypeDescriptor.Object &&
+                        TypeDescriptor.Object.getDesc().equals(newMember.getDesc())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
         @Override
         public void visitInsn(final int opcode) {
-            if (opcode == Opcodes.ARRAYLENGTH) {
+            if (!reflectiveArrays && (opcode == Opcodes.ARRAYLENGTH ||
+                    (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD) ||
+                    (opcode >= Opcodes.IASTORE && opcode <= Opcodes.SASTORE))) {
+                super.visitInsn(opcode);
+            } else if (opcode == Opcodes.ARRAYLENGTH) {
                 super.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/reflect/Array", "getLength", "(Ljava/lang/Object;)I");
             } else if (opcode >= Opcodes.IALOAD && opcode <= Opcodes.SALOAD) {
                 int offset = opcode - Opcodes.IALOAD;
@@ -226,19 +252,51 @@ final class LocalVariablePromoter extends ClassAdapter {
                 TypeDescriptor type = com.infomancers.collections.yield.asmbase.Util.typeForOffset(offset);
 
                 type.getArrayAccessorCreator().createSetValueCode(mv, type);
+            } else if (opcode == Opcodes.RETURN) {
+                releaseReferences();
+                super.visitInsn(opcode);
             } else {
                 super.visitInsn(opcode);
             }
         }
 
+        @Override
+        public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc) {
+            super.visitMethodInsn(opcode, owner, name, desc);
+
+            if (Util.isInvokeYieldBreak(opcode, name, desc)) {
+                // the StateKeeper follows this call with a return.
+                releaseReferences();
+            }
+        }
+
+        /**
+         * Sets all promoted reference members to <code>null</code> where the
+         * method terminates, so that a finished yielder doesn't keep the objects
+         * its local variables last pointed to reachable.
+         */
+        private void releaseReferences() {
+            for (NewMember newMember : info.getSlots()) {
+                if (newMember.getIndex() != 0 && newMember.getType() == TypeDescriptor.Object) {
+                    super.visitVarInsn(Opcodes.ALOAD, 0);
+                    super.visitInsn(Opcodes.ACONST_NULL);
+                    super.visitFieldInsn(Opcodes.PUTFIELD, owner, newMember.getName(), newMember.getDesc());
+                }
+            }
+        }
+
         private NewMember searchMember(final int var) {
             return info.getSlot(var);
         }
 
+        private NewMember searchMember(final int var, final TypeDescriptor type) {
+            return info.getSlot(var, type);
+        }
+
 
         @Override
         public void visitLocalVariable(final String name, final String desc, final String signature, final Label start, final Label end, final int index) {
-            if ("this".equals(name)) {
+            if ("this".equals(name) || searchMember(index) == null) {
                 super.visitLocalVariable(name, desc, signature, start, end, index);
             }
         }
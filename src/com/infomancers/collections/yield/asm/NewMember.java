@@ -11,6 +11,7 @@ public final class NewMember {
     private String name;
     private int index;
     private TypeDescriptor type;
+    private String desc;
 
     public NewMember(int index) {
         this.index = index;
@@ -23,6 +24,22 @@ public final class NewMember {
         mergeType(type);
     }
 
+    /**
+     * Creates a member for a local variable slot which holds values of several
+     * types, one for each type. The type is appended to the member's name.
+     *
+     * @param index The local variable index.
+     * @param type  The type of values this member holds.
+     * @param split Whether the slot holds values of other types as well.
+     */
+    public NewMember(int index, TypeDescriptor type, boolean split) {
+        this(index, type);
+
+        if (split) {
+            this.name += "$" + (type == TypeDescriptor.Object ? "A" : type.getDesc());
+        }
+    }
+
     public String getName() {
         return name;
     }
@@ -32,7 +49,17 @@ public final class NewMember {
     }
 
     public String getDesc() {
-        return type.getDesc();
+        return desc != null ? desc : type.getDesc();
+    }
+
+    /**
+     * Narrows the descriptor of a reference member, for a local variable which
+     * is known to only hold values of a single class or array type.
+     *
+     * @param desc The descriptor of the values' type.
+     */
+    public void setDesc(String desc) {
+        this.desc = desc;
     }
 
     public void mergeType(TypeDescriptor curType) {
@@ -49,7 +49,7 @@ final class StateKeeper extends ClassAdapter {
     private static final String STATE_FIELD_NAME = "state";
     private final YielderInformationContainer info;
     private String owner;
-    private static final String STATE_FIELD_DESC = "B";
+    private static final String STATE_FIELD_DESC = "I";
 
     /**
      * Constructs a new {@link org.objectweb.asm.ClassAdapter} object.
@@ -113,11 +113,24 @@ final class StateKeeper extends ClassAdapter {
             }
 
             // the first thing in the method should be switching to the previous state.
-            // so, load the state member
-            super.visitVarInsn(Opcodes.ALOAD, 0);
-            super.visitFieldInsn(Opcodes.GETFIELD, owner, STATE_FIELD_NAME, STATE_FIELD_DESC);
-            // then, lookup the next line of code
-            super.visitTableSwitchInsn(1, info.getCounter(), dflt, labels);
+            if (labels.length > 0) {
+                // so, load the state member
+                super.visitVarInsn(Opcodes.ALOAD, 0);
+                super.visitFieldInsn(Opcodes.GETFIELD, owner, STATE_FIELD_NAME, STATE_FIELD_DESC);
+                // then, lookup the next line of code
+                if (labels.length == 1) {
+                    super.visitJumpInsn(Opcodes.IFNE, labels[0]);
+                } else if (Util.isDenseSwitch(1, labels.length, labels.length)) {
+                    super.visitTableSwitchInsn(1, labels.length, dflt, labels);
+                } else {
+                    int[] keys = new int[labels.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = i + 1;
+                    }
+
+                    super.visitLookupSwitchInsn(dflt, keys, labels);
+                }
+            }
             // write the default label.
             super.visitLabel(dflt);
         }
@@ -126,13 +139,19 @@ final class StateKeeper extends ClassAdapter {
         public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc) {
             super.visitMethodInsn(opcode, owner, name, desc);
 
-            if (Util.isInvokeYieldReturn(opcode, name, desc)) {
+            if (Util.isInvokeYieldReturn(opcode, name, desc) || Util.isInvokeYieldAll(opcode, name, desc)) {
+                if (info.isBatched()) {
+                    // skip saving the state as long as the yielder's buffer is not full
+                    super.visitVarInsn(Opcodes.ALOAD, 0);
+                    super.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, "isBatchFull", "()Z");
+                    super.visitJumpInsn(Opcodes.IFEQ, labels[stateIndex - 1]);
+                }
                 // save the current state, first load this
                 super.visitVarInsn(Opcodes.ALOAD, 0);
                 // push value <stateIndex>
-                super.visitIntInsn(Opcodes.BIPUSH, stateIndex);
+                Util.pushInt(mv, stateIndex);
                 // set this.state
-                super.visitFieldInsn(Opcodes.PUTFIELD, owner, STATE_FIELD_NAME, "B");
+                super.visitFieldInsn(Opcodes.PUTFIELD, owner, STATE_FIELD_NAME, STATE_FIELD_DESC);
                 // quit method
                 super.visitInsn(Opcodes.RETURN);
                 // now mark the label for coming back here
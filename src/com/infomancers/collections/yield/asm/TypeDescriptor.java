@@ -36,7 +36,7 @@ import com.infomancers.collections.yield.asm.promotion.FieldMemberAccessorCreato
 
 public enum TypeDescriptor {
     Integer("I", "int", "Integer", AccessorCreators.FIELD_BOXING, AccessorCreators.ARRAY_SIMPLE),
-    Long("L", "long", "Long", AccessorCreators.FIELD_BOXING, AccessorCreators.ARRAY_SIMPLE),
+    Long("J", "long", "Long", AccessorCreators.FIELD_BOXING, AccessorCreators.ARRAY_SIMPLE),
     Float("F", "float", "Float", AccessorCreators.FIELD_BOXING, AccessorCreators.ARRAY_SIMPLE),
     Double("D", "double", "Double", AccessorCreators.FIELD_BOXING, AccessorCreators.ARRAY_SIMPLE),
     Object("Ljava/lang/Object;", null, "Object", AccessorCreators.FIELD_SIMPLE, AccessorCreators.ARRAY_SIMPLE),
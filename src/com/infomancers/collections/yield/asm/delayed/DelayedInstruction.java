@@ -54,6 +54,12 @@ public enum DelayedInstruction {
             return new TableSwitchEmitter(params);
         }
     },
+    LOOKUPSWITCH {
+        @Override
+        public DelayedInstructionEmitter createEmitter(int insn, Object... params) {
+            return new LookupSwitchEmitter(params);
+        }
+    },
     LDC {
         @Override
         public DelayedInstructionEmitter createEmitter(int insn, Object... params) {
@@ -198,8 +198,11 @@ public class DelayedMethodVisitor extends MethodAdapter {
 
     @Override
     public void visitLookupSwitchInsn(final Label dflt, final int keys[], final Label labels[]) {
-        if (insideMiniFrame()) throw new IllegalStateException();
-        super.visitLookupSwitchInsn(dflt, keys, labels);    //To change body of overridden methods use File | Settings | File Templates.
+        if (insideMiniFrame()) {
+            delayInsn(DelayedInstruction.LOOKUPSWITCH.createEmitter(-1, dflt, keys, labels));
+        } else {
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
     }
 
     @Override
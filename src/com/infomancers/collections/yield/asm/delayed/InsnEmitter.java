@@ -44,12 +44,26 @@ public class InsnEmitter extends DelayedInstructionEmitter {
 
     @Override
     public int pushAmount() {
-        if (insn >= Opcodes.ACONST_NULL && insn <= Opcodes.ICONST_5) {
+        if (insn >= Opcodes.ACONST_NULL && insn <= Opcodes.DCONST_1) {
             return 1;
         } else if (insn >= Opcodes.IRETURN && insn <= Opcodes.RETURN) {
             return 0;
         } else if (insn >= Opcodes.IADD && insn <= Opcodes.DREM) {
             return 1;
+        } else if (insn >= Opcodes.I2L && insn <= Opcodes.I2S) {
+            return 1;
+        } else if (insn >= Opcodes.IALOAD && insn <= Opcodes.SALOAD) {
+            return 1;
+        } else if (insn >= Opcodes.IASTORE && insn <= Opcodes.SASTORE) {
+            return 0;
+        } else if (insn == Opcodes.ARRAYLENGTH) {
+            return 1;
+        } else if (insn >= Opcodes.LCMP && insn <= Opcodes.DCMPG) {
+            return 1;
+        } else if (insn == Opcodes.POP) {
+            return 0;
+        } else if (insn == Opcodes.DUP) {
+            return 2;
         }
 
         throw new IllegalStateException("Don't know what to do with instruction " + insn);
@@ -57,7 +71,7 @@ public class InsnEmitter extends DelayedInstructionEmitter {
 
     @Override
     public int popAmount() {
-        if (insn >= Opcodes.ACONST_NULL && insn <= Opcodes.ICONST_5) {
+        if (insn >= Opcodes.ACONST_NULL && insn <= Opcodes.DCONST_1) {
             return 0;
         } else if (insn >= Opcodes.IRETURN && insn <= Opcodes.ARETURN) {
             return 1;
@@ -65,6 +79,18 @@ public class InsnEmitter extends DelayedInstructionEmitter {
             return 0;
         } else if (insn >= Opcodes.IADD && insn <= Opcodes.DREM) {
             return 2;
+        } else if (insn >= Opcodes.I2L && insn <= Opcodes.I2S) {
+            return 1;
+        } else if (insn >= Opcodes.IALOAD && insn <= Opcodes.SALOAD) {
+            return 2;
+        } else if (insn >= Opcodes.IASTORE && insn <= Opcodes.SASTORE) {
+            return 3;
+        } else if (insn == Opcodes.ARRAYLENGTH) {
+            return 1;
+        } else if (insn >= Opcodes.LCMP && insn <= Opcodes.DCMPG) {
+            return 2;
+        } else if (insn == Opcodes.POP || insn == Opcodes.DUP) {
+            return 1;
         }
 
         throw new IllegalStateException("Don't know what to do with instruction " + insn);
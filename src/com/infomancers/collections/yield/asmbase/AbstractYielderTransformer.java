@@ -1,6 +1,10 @@
 package com.infomancers.collections.yield.asmbase;
 
+import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.EmptyVisitor;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.objectweb.asm.util.TraceClassVisitor;
@@ -47,42 +51,83 @@ public abstract class AbstractYielderTransformer implements ClassFileTransformer
     }
 
     public final byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
-        byte[] result = classfileBuffer;
+        if (classBeingRedefined != null) {
+            return classfileBuffer;
+        }
 
-        if (classBeingRedefined == null) {
-            try {
-                // first pass - gather statistics
-                ClassReader reader = new ClassReader(classfileBuffer);
-                final YieldReturnCounter counter = new YieldReturnCounter(new EmptyVisitor());
-                final LocalVariableMapper mapper = new LocalVariableMapper(counter);
-                YielderChecker checker = new YielderChecker(mapper);
+        try {
+            return transformOrThrow(loader, classfileBuffer);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return classfileBuffer;
+        }
+    }
 
-                reader.accept(checker, 0);
+    /**
+     * Enhances the class if it's a yielder that wasn't woven yet. Unlike
+     * {@link #transform}, which leaves the class as is when enhancing it
+     * fails, failures are thrown, so build time weaving can report them.
+     *
+     * @param loader          The class loader used to resolve the class' super classes.
+     * @param classfileBuffer The class file bytes.
+     * @return The enhanced class file bytes, or <code>classfileBuffer</code> if
+     *         the class isn't a yielder or is already woven.
+     */
+    public final byte[] transformOrThrow(ClassLoader loader, byte[] classfileBuffer) {
+        // first pass - gather statistics
+        ClassReader reader = new ClassReader(classfileBuffer);
+        final LivenessAnalyzer liveness = new LivenessAnalyzer(new EmptyVisitor());
+        final YieldReturnCounter counter = new YieldReturnCounter(liveness);
+        final LocalVariableMapper mapper = new LocalVariableMapper(counter, liveness);
+        YielderChecker checker = new YielderChecker(mapper, loader);
+
+        reader.accept(checker, 0);
+
+        if (!checker.isYielder() || checker.isWoven()) {
+            return classfileBuffer;
+        }
 
-                if (checker.isYielder()) {
-                    // second pass - write new code
-                    trace("Before", result);
+        // second pass - write new code
+        trace("Before", classfileBuffer);
 
-                    YielderInformationContainer info = new DelegatingInformationContainer(counter, mapper);
+        YielderInformationContainer info = new DelegatingInformationContainer(checker, counter, mapper);
 
-                    if (debug) {
-                        System.out.println("info: [" + info + "]");
-                    }
+        if (debug) {
+            System.out.println("info: [" + info + "]");
+        }
 
-                    result = enhanceClass(reader, info);
+        byte[] result = markWoven(enhanceClass(reader, info));
+
+        trace("After", result);
+        check(result);
 
-                    trace("After", result);
-                    check(result);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
         return result;
     }
 
     protected abstract byte[] enhanceClass(ClassReader reader, YielderInformationContainer info);
 
+    private static byte[] markWoven(byte[] classfileBytes) {
+        ClassReader reader = new ClassReader(classfileBytes);
+        ClassWriter writer = new ClassWriter(reader, 0);
+
+        reader.accept(new ClassAdapter(writer) {
+            @Override
+            public void visitEnd() {
+                super.visitAttribute(new WovenAttribute());
+
+                FieldVisitor field = super.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+                        WovenAttribute.FIELD, "Z", null, null);
+                if (field != null) {
+                    field.visitEnd();
+                }
+
+                super.visitEnd();
+            }
+        }, 0);
+
+        return writer.toByteArray();
+    }
+
     private void trace(String title, byte[] classfileBytes) {
         if (debug) {
             TraceClassVisitor traceClassVisitor = new TraceClassVisitor(new PrintWriter(System.out));
@@ -1,6 +1,7 @@
 package com.infomancers.collections.yield.asmbase;
 
 import com.infomancers.collections.yield.asm.NewMember;
+import com.infomancers.collections.yield.asm.TypeDescriptor;
 import org.objectweb.asm.tree.LabelNode;
 
 import java.util.Queue;
@@ -35,12 +36,14 @@ import java.util.Queue;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 final class DelegatingInformationContainer implements YielderInformationContainer {
+    private final YielderChecker checker;
     private final YieldReturnCounter counter;
     private final LocalVariableMapper mapper;
     private int currentState;
     private final LabelNode[] labels;
 
-    public DelegatingInformationContainer(YieldReturnCounter counter, LocalVariableMapper mapper) {
+    public DelegatingInformationContainer(YielderChecker checker, YieldReturnCounter counter, LocalVariableMapper mapper) {
+        this.checker = checker;
         this.counter = counter;
         this.mapper = mapper;
         this.currentState = counter.getCounter();
@@ -64,6 +67,10 @@ final class DelegatingInformationContainer implements YielderInformationContaine
         return mapper.getSlot(var);
     }
 
+    public NewMember getSlot(int var, TypeDescriptor type) {
+        return mapper.getSlot(var, type);
+    }
+
     public LabelNode getStateLabel(int state) {
         if (labels[state - 1] == null) {
             labels[state - 1] = new LabelNode();
@@ -84,7 +91,11 @@ final class DelegatingInformationContainer implements YielderInformationContaine
         return labels;
     }
 
+    public boolean isBatched() {
+        return checker.isBatched();
+    }
+
     public String toString() {
-        return "mapper: [" + mapper + "], counter: [" + counter + ']';
+        return "mapper: [" + mapper + "], counter: [" + counter + "], batched: [" + isBatched() + ']';
     }
 }
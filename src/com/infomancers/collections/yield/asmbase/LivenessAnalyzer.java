@@ -0,0 +1,287 @@
+package com.infomancers.collections.yield.asmbase;
+
+import org.objectweb.asm.ClassAdapter;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Value;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copyright (c) 2007, Aviad Ben Dov
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list
+ * of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this
+ * list of conditions and the following disclaimer in the documentation and/or other
+ * materials provided with the distribution.
+ * 3. Neither the name of Infomancers, Ltd. nor the names of its contributors may be
+ * used to endorse or promote products derived from this software without specific
+ * prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+/**
+ * Visits the <code>yieldNextCore</code> method implementation and
+ * determines which of its local variables are live across a call to
+ * <code>yieldReturn</code> or <code>yieldAll</code>, meaning they may be
+ * read after the method is resumed before being written again.
+ * <p/>
+ * Only those local variables need to be promoted to members; all others
+ * are always written before being read within a single call to the
+ * method, and can stay local variables.
+ * <p/>
+ * While at it, the type of the values stored in each reference local
+ * variable is recorded, so that members which always hold values of
+ * the same class or array type can be declared with that type.
+ * <p/>
+ * If the method can't be analyzed, all of its local variables are
+ * considered live, and of an unknown reference type.
+ *
+ * @see LocalVariableMapper
+ * @since 0.4
+ */
+final class LivenessAnalyzer extends ClassAdapter {
+    private String owner;
+    private MethodNode method;
+    private BitSet live;
+    // the type of the reference values stored to each local variable; null when they differ
+    private final Map<Integer, Type> storedTypes = new HashMap<Integer, Type>();
+
+    /**
+     * Constructs a new {@link org.objectweb.asm.ClassAdapter} object.
+     *
+     * @param cv the class visitor to which this adapter must delegate calls.
+     */
+    public LivenessAnalyzer(ClassVisitor cv) {
+        super(cv);
+    }
+
+    /**
+     * @param var The local variable index.
+     * @return <code>true</code> if the local variable has to be promoted to a member.
+     */
+    public boolean isLive(int var) {
+        return var != 0 && (live == null || live.get(var));
+    }
+
+    /**
+     * @param var The local variable index.
+     * @return The descriptor of the type of all references stored to the local
+     *         variable, or <code>null</code> if it is unknown.
+     */
+    public String getReferenceDesc(int var) {
+        Type type = storedTypes.get(var);
+
+        return type == null || type.equals(OBJECT_TYPE) ? null : type.getDescriptor();
+    }
+
+    @Override
+    public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+        super.visit(version, access, name, signature, superName, interfaces);
+
+        owner = name;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+        if (Util.isYieldNextCoreMethod(name, desc)) {
+            method = new MethodNode(access, name, desc, signature, exceptions);
+            return method;
+        } else {
+            return super.visitMethod(access, name, desc, signature, exceptions);
+        }
+    }
+
+    @Override
+    public void visitEnd() {
+        if (method != null) {
+            live = analyze();
+        }
+
+        super.visitEnd();
+    }
+
+    private BitSet analyze() {
+        final AbstractInsnNode[] instructions = method.instructions.toArray();
+        final BitSet[] successors = new BitSet[instructions.length];
+        for (int i = 0; i < successors.length; i++) {
+            successors[i] = new BitSet();
+        }
+
+        // let the analyzer find the control flow, including exception handlers
+        Analyzer analyzer = new Analyzer(new TypedInterpreter()) {
+            @Override
+            protected void newControlFlowEdge(int insn, int successor) {
+                successors[insn].set(successor);
+            }
+
+            @Override
+            protected boolean newControlFlowExceptionEdge(int insn, int successor) {
+                successors[insn].set(successor);
+                return true;
+            }
+        };
+
+        final Frame[] frames;
+        try {
+            frames = analyzer.analyze(owner, method);
+        } catch (AnalyzerException e) {
+            return null;
+        }
+
+        recordStoredTypes(instructions, frames);
+
+        // the local variables live at the beginning of each instruction
+        final BitSet[] in = new BitSet[instructions.length];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = new BitSet();
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+
+            for (int i = instructions.length - 1; i >= 0; i--) {
+                BitSet current = liveAfter(successors[i], in);
+                AbstractInsnNode instruction = instructions[i];
+
+                if (instruction.getType() == AbstractInsnNode.VAR_INSN) {
+                    VarInsnNode var = (VarInsnNode) instruction;
+
+                    if (var.getOpcode() >= Opcodes.ISTORE && var.getOpcode() <= Opcodes.ASTORE) {
+                        current.clear(var.var);
+                    } else {
+                        current.set(var.var);
+                    }
+                } else if (instruction.getType() == AbstractInsnNode.IINC_INSN) {
+                    current.set(((IincInsnNode) instruction).var);
+                }
+
+                if (!current.equals(in[i])) {
+                    in[i] = current;
+                    changed = true;
+                }
+            }
+        }
+
+        // the method is resumed right after each yield call
+        BitSet result = new BitSet();
+        for (int i = 0; i < instructions.length; i++) {
+            if (instructions[i].getType() == AbstractInsnNode.METHOD_INSN) {
+                MethodInsnNode invocation = (MethodInsnNode) instructions[i];
+
+                if (Util.isInvokeYieldReturn(invocation.getOpcode(), invocation.name, invocation.desc) ||
+                        Util.isInvokeYieldAll(invocation.getOpcode(), invocation.name, invocation.desc)) {
+                    result.or(liveAfter(successors[i], in));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void recordStoredTypes(AbstractInsnNode[] instructions, Frame[] frames) {
+        Map<Integer, Type> types = new HashMap<Integer, Type>();
+
+        for (int i = 0; i < instructions.length; i++) {
+            // frames of unreachable code are null
+            if (instructions[i].getOpcode() == Opcodes.ASTORE && frames[i] != null) {
+                int var = ((VarInsnNode) instructions[i]).var;
+                BasicValue value = (BasicValue) frames[i].getStack(frames[i].getStackSize() - 1);
+
+                if (value.isReference() && !isNull(value)) {
+                    Type previous = types.get(var);
+                    types.put(var, previous == null || previous.equals(value.getType()) ? value.getType() : OBJECT_TYPE);
+                }
+            }
+        }
+
+        storedTypes.putAll(types);
+    }
+
+    private static final Type OBJECT_TYPE = Type.getType(Object.class);
+
+    private static boolean isNull(BasicValue value) {
+        return "null".equals(value.getType().getInternalName());
+    }
+
+    /**
+     * Keeps the exact class or array type of references, as long as the
+     * values merged at a point of the method are of the same type.
+     */
+    private static final class TypedInterpreter extends BasicInterpreter {
+        @Override
+        public Value newValue(Type type) {
+            if (type != null && (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY)) {
+                return new BasicValue(type);
+            }
+
+            return super.newValue(type);
+        }
+
+        @Override
+        public Value merge(Value v, Value w) {
+            BasicValue first = (BasicValue) v;
+            BasicValue second = (BasicValue) w;
+
+            if (!first.equals(second) && first.isReference() && second.isReference()) {
+                if (isNull(first)) {
+                    return second;
+                } else if (isNull(second)) {
+                    return first;
+                } else {
+                    return BasicValue.REFERENCE_VALUE;
+                }
+            }
+
+            return super.merge(v, w);
+        }
+    }
+
+    private static BitSet liveAfter(BitSet successors, BitSet[] in) {
+        BitSet result = new BitSet();
+
+        for (int s = successors.nextSetBit(0); s >= 0; s = successors.nextSetBit(s + 1)) {
+            result.or(in[s]);
+        }
+
+        return result;
+    }
+
+    public String toString() {
+        return "LivenessAnalyzer: [live: " + live + ", stored types: " + storedTypes + "]";
+    }
+}
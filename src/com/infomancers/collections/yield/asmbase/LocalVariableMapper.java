@@ -4,9 +4,14 @@ import com.infomancers.collections.yield.asm.NewMember;
 import com.infomancers.collections.yield.asm.TypeDescriptor;
 import org.objectweb.asm.*;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -39,20 +44,47 @@ import java.util.TreeMap;
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 final class LocalVariableMapper extends ClassAdapter {
-    private LinkedList<Integer> loads = new LinkedList<Integer>();
-    private Map<Integer, NewMember> slots = new TreeMap<Integer, NewMember>();
+    // the local variables stored to, per block of code
+    private LinkedList<List<Integer>> stores = new LinkedList<List<Integer>>();
+    private LinkedList<Integer> loads;
+    // the types of values each local variable slot holds
+    private Map<Integer, Set<TypeDescriptor>> types = new TreeMap<Integer, Set<TypeDescriptor>>();
+    private Map<Integer, Map<TypeDescriptor, NewMember>> slots;
+    private final LivenessAnalyzer liveness;
 
     /**
      * Constructs a new {@link org.objectweb.asm.ClassAdapter} object.
      *
-     * @param cv the class visitor to which this adapter must delegate calls.
+     * @param cv       the class visitor to which this adapter must delegate calls.
+     * @param liveness The analyzer determining which local variables are promoted.
+     *                 It must have visited the class by the time the results of
+     *                 this visitor are used.
      */
-    public LocalVariableMapper(ClassVisitor cv) {
+    public LocalVariableMapper(ClassVisitor cv, LivenessAnalyzer liveness) {
         super(cv);
+        this.liveness = liveness;
     }
 
 
+    /**
+     * @return The amount of stores to promoted local variables, per block of code.
+     */
     public Queue<Integer> getLoads() {
+        if (loads == null) {
+            loads = new LinkedList<Integer>();
+
+            for (List<Integer> block : stores) {
+                int count = 0;
+                for (int var : block) {
+                    if (liveness.isLive(var)) {
+                        count++;
+                    }
+                }
+
+                loads.add(count);
+            }
+        }
+
         return loads;
     }
 
@@ -68,12 +100,74 @@ final class LocalVariableMapper extends ClassAdapter {
         }
     }
 
+    /**
+     * @param index The local variable index.
+     * @return A member the local variable is promoted to, or <code>null</code>
+     *         if it stays a local variable.
+     */
     public NewMember getSlot(int index) {
-        return slots.get(index);
+        Map<TypeDescriptor, NewMember> members = getMembers().get(index);
+
+        return members == null ? null : members.values().iterator().next();
+    }
+
+    /**
+     * @param index The local variable index.
+     * @param type  The type of the value loaded or stored.
+     * @return The member the local variable is promoted to for values of the given type,
+     *         or <code>null</code> if it stays a local variable.
+     */
+    public NewMember getSlot(int index, TypeDescriptor type) {
+        Map<TypeDescriptor, NewMember> members = getMembers().get(index);
+
+        return members == null ? null : members.get(type);
     }
 
     public Iterable<? extends NewMember> getSlots() {
-        return slots.values();
+        List<NewMember> result = new ArrayList<NewMember>();
+
+        for (Map<TypeDescriptor, NewMember> members : getMembers().values()) {
+            result.addAll(members.values());
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates the members of all promoted local variables. A slot which javac reuses
+     * for values of different types gets a member per type, so that values never
+     * need to be boxed. A long or double occupies a pair of slots, but is only ever
+     * accessed through the first, so it is promoted to a single <code>J</code> or
+     * <code>D</code> member of that index.
+     */
+    private Map<Integer, Map<TypeDescriptor, NewMember>> getMembers() {
+        if (slots == null) {
+            slots = new TreeMap<Integer, Map<TypeDescriptor, NewMember>>();
+
+            for (Map.Entry<Integer, Set<TypeDescriptor>> entry : types.entrySet()) {
+                int index = entry.getKey();
+                if (!liveness.isLive(index) || entry.getValue().isEmpty()) {
+                    continue;
+                }
+
+                boolean split = entry.getValue().size() > 1;
+                Map<TypeDescriptor, NewMember> members = new EnumMap<TypeDescriptor, NewMember>(TypeDescriptor.class);
+                for (TypeDescriptor type : entry.getValue()) {
+                    NewMember member = new NewMember(index, type, split);
+
+                    String desc = liveness.getReferenceDesc(index);
+                    if (type == TypeDescriptor.Object && desc != null) {
+                        member.setDesc(desc);
+                    }
+
+                    members.put(type, member);
+                }
+
+                slots.put(index, members);
+            }
+        }
+
+        return slots;
     }
 
     private class MyMethodAdapter extends MethodAdapter {
@@ -86,7 +180,7 @@ final class LocalVariableMapper extends ClassAdapter {
         public void visitLabel(final Label label) {
             super.visitLabel(label);
 
-            loads.add(0);
+            stores.add(new ArrayList<Integer>());
         }
 
 
@@ -94,7 +188,7 @@ final class LocalVariableMapper extends ClassAdapter {
         public void visitJumpInsn(final int opcode, final Label label) {
             super.visitJumpInsn(opcode, label);
 
-            loads.add(0);
+            stores.add(new ArrayList<Integer>());
         }
 
 
@@ -102,7 +196,7 @@ final class LocalVariableMapper extends ClassAdapter {
         public void visitLineNumber(final int line, final Label start) {
             super.visitLineNumber(line, start);
 
-            loads.add(0);
+            stores.add(new ArrayList<Integer>());
         }
 
 
@@ -110,35 +204,45 @@ final class LocalVariableMapper extends ClassAdapter {
         public void visitFrame(final int type, final int nLocal, final Object[] local, final int nStack, final Object[] stack) {
             super.visitFrame(type, nLocal, local, nStack, stack);
 
-            loads.add(0);
+            stores.add(new ArrayList<Integer>());
         }
 
         @Override
         public void visitVarInsn(final int opcode, final int var) {
             super.visitVarInsn(opcode, var);
 
-            NewMember nm = slots.get(var);
-            if (nm == null) {
-                nm = new NewMember(var);
-
-                slots.put(var, nm);
-            }
-
             TypeDescriptor curType = null;
             if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE) {
-                loads.addLast(loads.removeLast() + 1);
+                stores.getLast().add(var);
                 curType = Util.typeForOffset(opcode - Opcodes.ISTORE);
             } else if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD) {
                 curType = Util.typeForOffset(opcode - Opcodes.ILOAD);
             }
 
             if (curType != null) {
-                nm.mergeType(curType);
+                typesOf(var).add(curType);
             }
         }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            super.visitIincInsn(var, increment);
+
+            typesOf(var).add(TypeDescriptor.Integer);
+        }
+
+        private Set<TypeDescriptor> typesOf(int var) {
+            Set<TypeDescriptor> result = types.get(var);
+            if (result == null) {
+                result = EnumSet.noneOf(TypeDescriptor.class);
+                types.put(var, result);
+            }
+
+            return result;
+        }
     }
 
     public String toString() {
-        return "LocalVariableMapper: [loads: " + loads + ", slots: " + slots + "]";
+        return "LocalVariableMapper: [loads: " + getLoads() + ", slots: " + getSlots() + "]";
     }
 }
@@ -1,7 +1,11 @@
 package com.infomancers.collections.yield.asmbase;
 
+import com.infomancers.collections.yield.DoubleYielder;
+import com.infomancers.collections.yield.IntYielder;
+import com.infomancers.collections.yield.LongYielder;
 import com.infomancers.collections.yield.Yielder;
 import com.infomancers.collections.yield.asm.TypeDescriptor;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 /**
@@ -46,15 +50,28 @@ public final class Util {
     }
 
     public static boolean isInvokeYieldReturn(int opcode, String name, String desc) {
-        return opcode == Opcodes.INVOKEVIRTUAL && "yieldReturn".equals(name) && "(Ljava/lang/Object;)V".equals(desc);
+        return opcode == Opcodes.INVOKEVIRTUAL && "yieldReturn".equals(name) &&
+                ("(Ljava/lang/Object;)V".equals(desc) || "(I)V".equals(desc) ||
+                        "(J)V".equals(desc) || "(D)V".equals(desc));
+    }
+
+    public static boolean isInvokeYieldAll(int opcode, String name, String desc) {
+        return opcode == Opcodes.INVOKEVIRTUAL && "yieldAll".equals(name) && "(Ljava/lang/Iterable;)V".equals(desc);
     }
 
     public static boolean isInvokeYieldBreak(int opcode, String name, String desc) {
         return opcode == Opcodes.INVOKEVIRTUAL && "yieldBreak".equals(name) && "()V".equals(desc);
     }
 
+    public static boolean isYieldBatchAnnotation(String desc) {
+        return "Lcom/infomancers/collections/yield/YieldBatch;".equals(desc);
+    }
+
     public static boolean isYielderClassName(String name) {
-        return "com/infomancers/collections/yield/Yielder".equals(name);
+        return "com/infomancers/collections/yield/Yielder".equals(name) ||
+                "com/infomancers/collections/yield/IntYielder".equals(name) ||
+                "com/infomancers/collections/yield/LongYielder".equals(name) ||
+                "com/infomancers/collections/yield/DoubleYielder".equals(name);
     }
 
     public static int offsetForDesc(String desc) {
@@ -72,10 +89,56 @@ public final class Util {
         return TypeDescriptor.values()[offset];
     }
 
-    public static boolean isYielderInHierarchyTree(String className) {
+    /**
+     * Pushes an int constant with the shortest instruction able to hold it.
+     *
+     * @param mv    The visitor of the method.
+     * @param value The constant.
+     */
+    public static void pushInt(MethodVisitor mv, int value) {
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Decides between a TABLESWITCH and a LOOKUPSWITCH the same way javac does,
+     * weighing the size of the instruction against the time it takes to run.
+     *
+     * @param low   The smallest key.
+     * @param high  The largest key.
+     * @param count The amount of keys.
+     * @return <code>true</code> if a TABLESWITCH should be used.
+     */
+    public static boolean isDenseSwitch(int low, int high, int count) {
+        long tableCost = 4 + ((long) high - low + 1) + 3 * 3;
+        long lookupCost = 3 + 2 * (long) count + 3 * (long) count;
+
+        return count > 0 && tableCost <= lookupCost;
+    }
+
+    public static boolean isWovenAttribute(String type) {
+        return WovenAttribute.TYPE.equals(type);
+    }
+
+    /**
+     * @param className The internal name of the class.
+     * @param loader    The class loader to look the class up with, or <code>null</code>
+     *                  for the one which loaded this class.
+     * @return <code>true</code> if the class is a yielder.
+     */
+    public static boolean isYielderInHierarchyTree(String className, ClassLoader loader) {
         String name = className.replace('/', '.');
         try {
-            return Yielder.class.isAssignableFrom(Class.forName(name));
+            Class<?> clazz = Class.forName(name, false, loader == null ? Util.class.getClassLoader() : loader);
+            return Yielder.class.isAssignableFrom(clazz) ||
+                    IntYielder.class.isAssignableFrom(clazz) ||
+                    LongYielder.class.isAssignableFrom(clazz) ||
+                    DoubleYielder.class.isAssignableFrom(clazz);
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
             return false;
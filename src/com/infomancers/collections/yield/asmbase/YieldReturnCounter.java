@@ -81,7 +81,7 @@ final class YieldReturnCounter extends ClassAdapter {
 
         @Override
         public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc) {
-            if (Util.isInvokeYieldReturn(opcode, name, desc)) {
+            if (Util.isInvokeYieldReturn(opcode, name, desc) || Util.isInvokeYieldAll(opcode, name, desc)) {
                 counter++;
             }
 
@@ -1,5 +1,7 @@
 package com.infomancers.collections.yield.asmbase;
 
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassAdapter;
 import org.objectweb.asm.ClassVisitor;
 
@@ -37,7 +39,7 @@ import org.objectweb.asm.ClassVisitor;
 
 /**
  * Makes sure that the class being examined is in fact
- * a sub-class of the Yielder class.
+ * a sub-class of the Yielder class (or one of its primitive counterparts).
  * <p/>
  * This is necessary because during instrumentation, all we have
  * is the bytecode. Only a bytecode framework can load up the class
@@ -45,19 +47,36 @@ import org.objectweb.asm.ClassVisitor;
  */
 final class YielderChecker extends ClassAdapter {
     private boolean isYielder = false;
+    private boolean isBatched = false;
+    private boolean isWoven = false;
+    private final ClassLoader loader;
 
 
     public boolean isYielder() {
         return isYielder;
     }
 
+    public boolean isBatched() {
+        return isBatched;
+    }
+
+    /**
+     * @return <code>true</code> if the class carries a {@link WovenAttribute}, meaning
+     *         it has already been enhanced.
+     */
+    public boolean isWoven() {
+        return isWoven;
+    }
+
     /**
      * Constructs a new {@link org.objectweb.asm.ClassAdapter} object.
      *
-     * @param cv the class visitor to which this adapter must delegate calls.
+     * @param cv     the class visitor to which this adapter must delegate calls.
+     * @param loader The class loader to look up super classes with.
      */
-    public YielderChecker(ClassVisitor cv) {
+    public YielderChecker(ClassVisitor cv, ClassLoader loader) {
         super(cv);
+        this.loader = loader;
     }
 
 
@@ -65,8 +84,26 @@ final class YielderChecker extends ClassAdapter {
     public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
         super.visit(version, access, name, signature, superName, interfaces);
 
-        if (Util.isYielderClassName(superName) || Util.isYielderInHierarchyTree(superName)) {
+        if (Util.isYielderClassName(superName) || Util.isYielderInHierarchyTree(superName, loader)) {
             isYielder = true;
         }
     }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+        if (Util.isYieldBatchAnnotation(desc)) {
+            isBatched = true;
+        }
+
+        return super.visitAnnotation(desc, visible);
+    }
+
+    @Override
+    public void visitAttribute(final Attribute attr) {
+        if (Util.isWovenAttribute(attr.type)) {
+            isWoven = true;
+        }
+
+        super.visitAttribute(attr);
+    }
 }
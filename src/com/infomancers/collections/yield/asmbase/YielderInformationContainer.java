@@ -1,6 +1,7 @@
 package com.infomancers.collections.yield.asmbase;
 
 import com.infomancers.collections.yield.asm.NewMember;
+import com.infomancers.collections.yield.asm.TypeDescriptor;
 import org.objectweb.asm.tree.LabelNode;
 
 import java.util.Queue;
@@ -21,6 +22,8 @@ public interface YielderInformationContainer {
 
     NewMember getSlot(int var);
 
+    NewMember getSlot(int var, TypeDescriptor type);
+
     LabelNode getStateLabel(int state);
 
     int takeState();
@@ -29,4 +32,6 @@ public interface YielderInformationContainer {
 
     LabelNode[] getStateLabels();
 
+    boolean isBatched();
+
 }
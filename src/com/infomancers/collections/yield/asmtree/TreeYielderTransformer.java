@@ -60,16 +60,16 @@ public final class TreeYielderTransformer extends AbstractYielderTransformer {
         }
 
         // create the state member
-        node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "state$", "B", null, (byte) 0));
+        node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "state$", "I", null, null));
 
 
         MethodNode method = findMethod(node);
 
-        // remove local variables from method
+        // remove promoted local variables from method
         if (method.localVariables != null) {
             for (Iterator it = method.localVariables.iterator(); it.hasNext();) {
                 LocalVariableNode localVariable = (LocalVariableNode) it.next();
-                if (!"this".equals(localVariable.name)) {
+                if (!"this".equals(localVariable.name) && info.getSlot(localVariable.index) != null) {
                     it.remove();
                 }
             }
@@ -79,18 +79,10 @@ public final class TreeYielderTransformer extends AbstractYielderTransformer {
         // create the state-switcher at the beginning of the method
         LabelNode dflt = getFirstLabel(method);
 
-        InsnList tableSwitchList = Util.createList(
-                new LabelNode(),
-                new VarInsnNode(Opcodes.ALOAD, 0),
-                new FieldInsnNode(Opcodes.GETFIELD, node.name, "state$", "B"),
-                new TableSwitchInsnNode(1, info.getCounter(), dflt, info.getStateLabels())
-        );
-
-        method.instructions.insert(tableSwitchList);
+        method.instructions.insert(Util.createStateSwitch(node, info.getStateLabels(), dflt));
 
         // TODO: Need a better way than this..
         method.maxStack = 7;
-        method.maxLocals = 1;
 
         // TODO: Using the parameters somehow screwed up the result; Why?
         ClassWriter writer = new ClassWriter(0);
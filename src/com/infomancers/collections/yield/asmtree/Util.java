@@ -1,12 +1,23 @@
 package com.infomancers.collections.yield.asmtree;
 
+import com.infomancers.collections.yield.asm.NewMember;
+import com.infomancers.collections.yield.asm.TypeDescriptor;
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
 import com.infomancers.collections.yield.asmtree.enhancers.EnhancersFactory;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
 import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
 
 import java.util.Collections;
 import java.util.LinkedList;
@@ -78,7 +89,13 @@ public final class Util {
     }
 
     public static boolean isInvokeYieldReturn(int opcode, String name, String desc) {
-        return opcode == Opcodes.INVOKEVIRTUAL && "yieldReturn".equals(name) && "(Ljava/lang/Object;)V".equals(desc);
+        return opcode == Opcodes.INVOKEVIRTUAL && "yieldReturn".equals(name) &&
+                ("(Ljava/lang/Object;)V".equals(desc) || "(I)V".equals(desc) ||
+                        "(J)V".equals(desc) || "(D)V".equals(desc));
+    }
+
+    public static boolean isInvokeYieldAll(int opcode, String name, String desc) {
+        return opcode == Opcodes.INVOKEVIRTUAL && "yieldAll".equals(name) && "(Ljava/lang/Iterable;)V".equals(desc);
     }
 
     public static boolean isInvokeYieldBreak(int opcode, String name, String desc) {
@@ -112,6 +129,123 @@ public final class Util {
     }
 
 
+    /**
+     * Finds the instruction pushing the array an array instruction works on, and
+     * determines whether the array keeps the exact type it has in the original code.
+     * That is the case unless it is loaded from a promoted member which is declared
+     * as an <code>Object</code>, or its origin can't be told.
+     *
+     * @param instruction The array instruction.
+     * @param operands    The amount of operands the instruction takes after the array.
+     * @param limits      The instructions beyond which the code can't be searched.
+     * @param info        The information about the promoted members.
+     * @return <code>true</code> if the array instruction can be used as is.
+     */
+    public static boolean isExactlyTypedArray(AbstractInsnNode instruction, int operands,
+                                              List<AbstractInsnNode> limits, YielderInformationContainer info) {
+        AbstractInsnNode source = CodeStack.backUntilStackSizedAt(instruction, CodeStack.getChange(instruction) + operands, false,
+                limits == null ? Collections.<AbstractInsnNode>emptyList() : limits);
+
+        if (source == null) {
+            return false;
+        }
+
+        switch (source.getOpcode()) {
+            case Opcodes.ALOAD:
+                NewMember member = info.getSlot(((VarInsnNode) source).var, TypeDescriptor.Object);
+                return member == null || !TypeDescriptor.Object.getDesc().equals(member.getDesc());
+
+            case Opcodes.GETFIELD:
+            case Opcodes.GETSTATIC:
+            case Opcodes.INVOKEVIRTUAL:
+            case Opcodes.INVOKESPECIAL:
+            case Opcodes.INVOKESTATIC:
+            case Opcodes.INVOKEINTERFACE:
+            case Opcodes.CHECKCAST:
+            case Opcodes.NEWARRAY:
+            case Opcodes.ANEWARRAY:
+            case Opcodes.MULTIANEWARRAY:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Creates the code which sets all promoted reference members to <code>null</code>,
+     * to be run where the method terminates so that the yielder doesn't keep the
+     * objects its local variables last pointed to reachable.
+     *
+     * @param node The enhanced class.
+     * @param info The information about the promoted members.
+     * @return The list of instructions, which is empty when there are no reference members.
+     */
+    public static InsnList createReleaseList(ClassNode node, YielderInformationContainer info) {
+        InsnList list = new InsnList();
+
+        for (NewMember member : info.getSlots()) {
+            if (member.getIndex() != 0 && member.getType() == TypeDescriptor.Object) {
+                list.add(new VarInsnNode(Opcodes.ALOAD, 0));
+                list.add(new InsnNode(Opcodes.ACONST_NULL));
+                list.add(new FieldInsnNode(Opcodes.PUTFIELD, node.name, member.getName(), member.getDesc()));
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * @param value An int constant.
+     * @return The shortest instruction pushing the constant.
+     */
+    public static AbstractInsnNode createPushInt(int value) {
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            return new IntInsnNode(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            return new IntInsnNode(Opcodes.SIPUSH, value);
+        } else {
+            return new LdcInsnNode(value);
+        }
+    }
+
+    /**
+     * Creates the code jumping to the point the method should resume from, according
+     * to the state member. State <code>n</code> resumes from <code>labels[n - 1]</code>,
+     * and the initial state 0 falls through to the beginning of the method.
+     *
+     * @param node   The enhanced class.
+     * @param labels The labels of the states.
+     * @param dflt   The beginning of the method.
+     * @return The list of instructions, which is empty when there are no states.
+     */
+    public static InsnList createStateSwitch(ClassNode node, LabelNode[] labels, LabelNode dflt) {
+        InsnList list = new InsnList();
+
+        if (labels.length == 0) {
+            return list;
+        }
+
+        list.add(new LabelNode());
+        list.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        list.add(new FieldInsnNode(Opcodes.GETFIELD, node.name, "state$", "I"));
+
+        if (labels.length == 1) {
+            list.add(new JumpInsnNode(Opcodes.IFNE, labels[0]));
+        } else if (com.infomancers.collections.yield.asmbase.Util.isDenseSwitch(1, labels.length, labels.length)) {
+            list.add(new TableSwitchInsnNode(1, labels.length, dflt, labels));
+        } else {
+            int[] keys = new int[labels.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = i + 1;
+            }
+
+            list.add(new LookupSwitchInsnNode(dflt, keys, labels));
+        }
+
+        return list;
+    }
+
     public static InsnList createList(AbstractInsnNode... nodes) {
         InsnList list = new InsnList();
         AbstractInsnNode last = null;
@@ -57,7 +57,9 @@ public final class ArrayLoadEnhancer implements PredicatedInsnEnhancer {
     private static final String[] descs = "[I,[J,[F,[D,[Ljava/lang/Object;,[B,[C,[S".split(",");
 
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
-        if (instruction.getOpcode() == Opcodes.BALOAD) {
+        if (Util.isExactlyTypedArray(instruction, 1, limits, info)) {
+            return instruction;
+        } else if (instruction.getOpcode() == Opcodes.BALOAD) {
             LabelNode l1 = new LabelNode();
             LabelNode l2 = new LabelNode();
 
@@ -57,7 +57,9 @@ public class ArrayStoreEnhancer implements PredicatedInsnEnhancer {
     private static final String[] descs = "[I,[J,[F,[D,[Ljava/lang/Object;,[B,[C,[S".split(",");
 
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
-        if (instruction.getOpcode() == Opcodes.BASTORE) {
+        if (Util.isExactlyTypedArray(instruction, 2, limits, info)) {
+            return instruction;
+        } else if (instruction.getOpcode() == Opcodes.BASTORE) {
             LabelNode l1 = new LabelNode();
             LabelNode l2 = new LabelNode();
 
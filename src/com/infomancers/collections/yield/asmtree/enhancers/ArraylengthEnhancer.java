@@ -1,6 +1,7 @@
 package com.infomancers.collections.yield.asmtree.enhancers;
 
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
+import com.infomancers.collections.yield.asmtree.Util;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
@@ -41,6 +42,10 @@ import java.util.List;
 
 public final class ArraylengthEnhancer implements PredicatedInsnEnhancer {
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
+        if (Util.isExactlyTypedArray(instruction, 0, limits, info)) {
+            return instruction;
+        }
+
         MethodInsnNode getlength = new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/reflect/Array", "getLength", "(Ljava/lang/Object;)I");
 
         instructions.insert(instruction, getlength);
@@ -44,6 +44,7 @@ public final class EnhancersFactory {
         return new EnhancersFactory(
                 new YieldReturnEnhancer(),
                 new YieldBreakEnhancer(),
+                new ReturnEnhancer(),
                 new StoreEnhancer(),
                 new LoadEnhancer(),
                 new ArrayLoadEnhancer(),
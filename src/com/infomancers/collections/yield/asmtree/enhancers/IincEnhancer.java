@@ -3,6 +3,7 @@ package com.infomancers.collections.yield.asmtree.enhancers;
 import com.infomancers.collections.yield.asm.NewMember;
 import com.infomancers.collections.yield.asm.TypeDescriptor;
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
+import com.infomancers.collections.yield.asmtree.Util;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -42,13 +43,16 @@ public final class IincEnhancer implements PredicatedInsnEnhancer {
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
         IincInsnNode iinc = (IincInsnNode) instruction;
 
-        NewMember member = info.getSlot(iinc.var);
+        NewMember member = info.getSlot(iinc.var, TypeDescriptor.Integer);
+        if (member == null) {
+            return instruction;
+        }
 
         AbstractInsnNode aload0_0 = new VarInsnNode(Opcodes.ALOAD, 0);
         AbstractInsnNode aload0_1 = new VarInsnNode(Opcodes.ALOAD, 0);
         AbstractInsnNode getfield_2 = new FieldInsnNode(Opcodes.GETFIELD, clz.name, member.getName(), member.getDesc());
 
-        AbstractInsnNode bipush_3 = new IntInsnNode(Opcodes.BIPUSH, iinc.incr);
+        AbstractInsnNode bipush_3 = Util.createPushInt(iinc.incr);
         AbstractInsnNode iadd_4 = new InsnNode(Opcodes.IADD);
         AbstractInsnNode putfield_5 = new FieldInsnNode(Opcodes.PUTFIELD, clz.name, member.getName(), member.getDesc());
 
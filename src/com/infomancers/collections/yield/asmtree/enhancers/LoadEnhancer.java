@@ -65,7 +65,12 @@ public final class LoadEnhancer implements PredicatedInsnEnhancer {
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
         final VarInsnNode varInstruction = (VarInsnNode) instruction;
 
-        final NewMember member = info.getSlot(varInstruction.var);
+        final NewMember member = info.getSlot(varInstruction.var,
+                com.infomancers.collections.yield.asmbase.Util.typeForOffset(varInstruction.getOpcode() - Opcodes.ILOAD));
+        if (member == null) {
+            // not live across a yield, stays a local variable
+            return instruction;
+        }
 
         final VarInsnNode load0;
         final FieldInsnNode replacementInstruction;
@@ -81,10 +86,8 @@ public final class LoadEnhancer implements PredicatedInsnEnhancer {
         Util.insertOrAdd(instructions, backNode, list);
         instructions.remove(instruction);
 
-        // Dealing with case when the member is an object due to local variable merge,
-        // but the load code is for a primitive - in these cases, unbox the object
-        // value back to a primitive.
-        // Todo: Maybe the slots can have different types, for example slot$2_i and slot$2_a?
+        // Dealing with case when the member is an object, but the load code is
+        // for a primitive - in these cases, unbox the object value back to a primitive.
         if (varInstruction.getOpcode() != Opcodes.ALOAD &&
                 member.getType() == TypeDescriptor.Object) {
 
@@ -53,7 +53,8 @@ public class MethodInvocationEnhancer implements PredicatedInsnEnhancer {
         if (node.getType() == AbstractInsnNode.METHOD_INSN && node.getOpcode() != Opcodes.INVOKESTATIC) {
             MethodInsnNode method = (MethodInsnNode) node;
 
-            return !"java/lang/Object".equals(method.owner);
+            // a constructor's receiver comes from NEW, and can't be cast before it's initialized
+            return !"java/lang/Object".equals(method.owner) && !"<init>".equals(method.name);
         } else {
             return false;
         }
@@ -57,7 +57,12 @@ public final class StoreEnhancer implements PredicatedInsnEnhancer {
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
         final VarInsnNode varInstruction = (VarInsnNode) instruction;
 
-        final NewMember member = info.getSlot(varInstruction.var);
+        final NewMember member = info.getSlot(varInstruction.var,
+                com.infomancers.collections.yield.asmbase.Util.typeForOffset(varInstruction.getOpcode() - Opcodes.ISTORE));
+        if (member == null) {
+            // not live across a yield, stays a local variable
+            return instruction;
+        }
         FieldInsnNode replacementInstruction = new FieldInsnNode(Opcodes.PUTFIELD, clz.name,
                 member.getName(), member.getDesc());
 
@@ -69,10 +74,8 @@ public final class StoreEnhancer implements PredicatedInsnEnhancer {
         instructions.insert(instruction, replacementInstruction);
         instructions.remove(instruction);
 
-        // Dealing with case when the member is an object due to local variable merge,
-        // but the store code is for a primitive - in these cases, box the primitive
-        // value in an object.
-        // Todo: Maybe the slots can have different types, for example slot$2_i and slot$2_a?
+        // Dealing with case when the member is an object, but the store code is
+        // for a primitive - in these cases, box the primitive value in an object.
         if (varInstruction.getOpcode() != Opcodes.ASTORE &&
                 member.getType() == TypeDescriptor.Object) {
 
@@ -1,7 +1,7 @@
 package com.infomancers.collections.yield.asmtree.enhancers;
 
-import com.infomancers.collections.yield.asmbase.Util;
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
+import com.infomancers.collections.yield.asmtree.Util;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
@@ -41,6 +41,7 @@ public class YieldBreakEnhancer implements PredicatedInsnEnhancer {
     public AbstractInsnNode enhance(ClassNode clz, InsnList instructions, List<AbstractInsnNode> limits, YielderInformationContainer info, AbstractInsnNode instruction) {
         AbstractInsnNode ret = new InsnNode(Opcodes.RETURN);
         instructions.insert(instruction, ret);
+        instructions.insert(instruction, Util.createReleaseList(clz, info));
 
         return instruction;
     }
@@ -42,7 +42,8 @@ public final class YieldReturnEnhancer implements PredicatedInsnEnhancer {
         if (node.getType() == AbstractInsnNode.METHOD_INSN) {
             MethodInsnNode method = (MethodInsnNode) node;
 
-            return Util.isInvokeYieldReturn(method.getOpcode(), method.name, method.desc);
+            return Util.isInvokeYieldReturn(method.getOpcode(), method.name, method.desc) ||
+                    Util.isInvokeYieldAll(method.getOpcode(), method.name, method.desc);
         } else {
             return false;
         }
@@ -57,14 +58,23 @@ public final class YieldReturnEnhancer implements PredicatedInsnEnhancer {
 
         final InsnList list = Util.createList(
                 aload = new VarInsnNode(Opcodes.ALOAD, 0),
-                new IntInsnNode(Opcodes.BIPUSH, state),
-                new FieldInsnNode(Opcodes.PUTFIELD, clz.name, "state$", "B"),
+                Util.createPushInt(state),
+                new FieldInsnNode(Opcodes.PUTFIELD, clz.name, "state$", "I"),
                 ret = new InsnNode(Opcodes.RETURN)
         );
 
         Util.insertOrAdd(instructions, instruction, list);
 
-        createOrReuseLabel(state, instructions, ret, info);
+        final AbstractInsnNode label = createOrReuseLabel(state, instructions, ret, info);
+
+        if (info.isBatched()) {
+            // keep on producing elements until the yielder's buffer is full
+            Util.insertOrAdd(instructions, instruction, Util.createList(
+                    new VarInsnNode(Opcodes.ALOAD, 0),
+                    new MethodInsnNode(Opcodes.INVOKEVIRTUAL, clz.name, "isBatchFull", "()Z"),
+                    new JumpInsnNode(Opcodes.IFEQ, (LabelNode) label)
+            ));
+        }
 
         return instruction;
     }
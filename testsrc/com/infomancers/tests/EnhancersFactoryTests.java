@@ -71,6 +71,8 @@ public class EnhancersFactoryTests {
                 new Object[]{new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "java/lang/Object", "wait", "()V"), NullEnhancer.class},
 
                 new Object[]{new MethodInsnNode(Opcodes.INVOKEINTERFACE, "java/io/Closeable", "close", "()V"), MethodInvocationEnhancer.class},
+                new Object[]{new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V"), NullEnhancer.class},
+                new Object[]{new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;"), MethodInvocationEnhancer.class},
 
                 new Object[]{new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;"), NullEnhancer.class},
 
@@ -0,0 +1,190 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.yield.DoubleIterator;
+import com.infomancers.collections.yield.DoubleYielder;
+import com.infomancers.collections.yield.IntIterator;
+import com.infomancers.collections.yield.IntYielder;
+import com.infomancers.collections.yield.LongIterator;
+import com.infomancers.collections.yield.LongYielder;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.NoSuchElementException;
+
+/**
+ * Tests for the primitive yielders.
+ */
+public class PrimitiveYielderTests {
+
+    @Test
+    public void intRange() {
+        IntYielder yielder = new IntYielder() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 0; i < 5; i++) {
+                    yieldReturn(i * i);
+                }
+            }
+        };
+
+        IntIterator it = yielder.iterator();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(it.hasNext());
+            Assert.assertEquals(i * i, it.nextInt());
+        }
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void intBreak() {
+        IntYielder yielder = new IntYielder() {
+            @Override
+            protected void yieldNextCore() {
+                int i = 0;
+                while (true) {
+                    if (i == 3) {
+                        yieldBreak();
+                    }
+                    yieldReturn(i++);
+                }
+            }
+        };
+
+        int sum = 0;
+        for (int value : yielder) {
+            sum += value;
+        }
+        Assert.assertEquals(3, sum);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void intExhausted() {
+        IntYielder yielder = new IntYielder() {
+            @Override
+            protected void yieldNextCore() {
+                yieldReturn(1);
+            }
+        };
+
+        IntIterator it = yielder.iterator();
+        it.nextInt();
+        it.nextInt();
+    }
+
+    @Test
+    public void longRange() {
+        LongYielder yielder = new LongYielder() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 1; i <= 3; i++) {
+                    yieldReturn(i * 10000000000L);
+                }
+            }
+        };
+
+        LongIterator it = yielder.iterator();
+        Assert.assertEquals(10000000000L, it.nextLong());
+        Assert.assertEquals(20000000000L, it.nextLong());
+        Assert.assertEquals(Long.valueOf(30000000000L), it.next());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void doubleRange() {
+        DoubleYielder yielder = new DoubleYielder() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 0; i < 4; i++) {
+                    yieldReturn(i / 2.0);
+                }
+            }
+        };
+
+        DoubleIterator it = yielder.iterator();
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(i / 2.0, it.nextDouble(), 0.0);
+        }
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void longLocalsPromotedUnboxed() {
+        LongYielder yielder = new LongYielder() {
+            @Override
+            protected void yieldNextCore() {
+                for (long t = 1000000000000L; t < 1000000000003L; t++) {
+                    yieldReturn(t);
+                }
+            }
+        };
+
+        LongIterator it = yielder.iterator();
+        Assert.assertEquals(1000000000000L, it.nextLong());
+        Assert.assertEquals(1000000000001L, it.nextLong());
+        Assert.assertEquals(1000000000002L, it.nextLong());
+        Assert.assertFalse(it.hasNext());
+
+        assertNoBoxedMembers(yielder);
+    }
+
+    @Test
+    public void doubleLocalsPromotedUnboxed() {
+        DoubleYielder yielder = new DoubleYielder() {
+            @Override
+            protected void yieldNextCore() {
+                double sum = 0;
+                for (int i = 1; i <= 3; i++) {
+                    sum += i / 2.0;
+                    yieldReturn(sum);
+                }
+            }
+        };
+
+        DoubleIterator it = yielder.iterator();
+        Assert.assertEquals(0.5, it.nextDouble(), 0.0);
+        Assert.assertEquals(1.5, it.nextDouble(), 0.0);
+        Assert.assertEquals(3.0, it.nextDouble(), 0.0);
+        Assert.assertFalse(it.hasNext());
+
+        assertNoBoxedMembers(yielder);
+    }
+
+    @Test
+    public void longSlotPairReused() {
+        LongYielder yielder = new LongYielder() {
+            @Override
+            protected void yieldNextCore() {
+                {
+                    long t = 5000000000L;
+                    yieldReturn(t);
+                    yieldReturn(t + 1);
+                }
+                {
+                    // both reuse the slots of t
+                    int a = 1;
+                    int b = 2;
+                    yieldReturn(a);
+                    yieldReturn(a + b);
+                }
+            }
+        };
+
+        LongIterator it = yielder.iterator();
+        Assert.assertEquals(5000000000L, it.nextLong());
+        Assert.assertEquals(5000000001L, it.nextLong());
+        Assert.assertEquals(1L, it.nextLong());
+        Assert.assertEquals(3L, it.nextLong());
+        Assert.assertFalse(it.hasNext());
+
+        assertNoBoxedMembers(yielder);
+    }
+
+    private static void assertNoBoxedMembers(Object yielder) {
+        for (Field field : yielder.getClass().getDeclaredFields()) {
+            if (field.getName().startsWith("slot$")) {
+                Assert.assertTrue(field.getName(), field.getType().isPrimitive());
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.infomancers.tests;
 
 import com.infomancers.collections.yield.asm.NewMember;
+import com.infomancers.collections.yield.asm.TypeDescriptor;
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
 import org.objectweb.asm.tree.LabelNode;
 
@@ -18,6 +19,7 @@ public class TestYIC implements YielderInformationContainer {
     private int counter;
     private final NewMember[] slots;
     private final LabelNode[] labels;
+    private boolean batched;
 
     public TestYIC(int counter, NewMember... slots) {
         this.counter = counter;
@@ -47,6 +49,10 @@ public class TestYIC implements YielderInformationContainer {
         return null;
     }
 
+    public NewMember getSlot(int var, TypeDescriptor type) {
+        return getSlot(var);
+    }
+
     public int takeState() {
         return counter--;
     }
@@ -59,6 +65,14 @@ public class TestYIC implements YielderInformationContainer {
         return labels;
     }
 
+    public boolean isBatched() {
+        return batched;
+    }
+
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
     public LabelNode getStateLabel(int state) {
         if (labels[state - 1] == null) {
             labels[state - 1] = new LabelNode();
@@ -0,0 +1,136 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.yield.IntIterator;
+import com.infomancers.collections.yield.IntYielder;
+import com.infomancers.collections.yield.Yielder;
+import junit.framework.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for releasing the threads of the thread engine.
+ */
+public class ThreadEngineTests {
+
+    private static class Endless extends Yielder<Integer> {
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        protected void yieldNextCore() {
+            try {
+                for (int i = 0; ; i++) {
+                    yieldReturn(i);
+                }
+            } finally {
+                released.countDown();
+            }
+        }
+    }
+
+    @Before
+    public void threadEngineOnly() {
+        Assume.assumeTrue("thread".equals(System.getProperty("com.infomancers.collections.yield.engine")));
+    }
+
+    @Test(timeout = 5000)
+    public void closeReleasesThread() throws IOException {
+        Endless endless = new Endless();
+        Iterator<Integer> it = endless.iterator();
+        Assert.assertEquals(0, (int) it.next());
+        Assert.assertEquals(1, (int) it.next());
+
+        ((Closeable) it).close();
+        Assert.assertEquals(0, endless.released.getCount());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void closePrimitiveReleasesThread() throws IOException {
+        final CountDownLatch released = new CountDownLatch(1);
+        IntIterator it = new IntYielder() {
+            @Override
+            protected void yieldNextCore() {
+                try {
+                    for (int i = 0; ; i++) {
+                        yieldReturn(i);
+                    }
+                } finally {
+                    released.countDown();
+                }
+            }
+        }.iterator();
+        Assert.assertEquals(0, it.nextInt());
+
+        ((Closeable) it).close();
+        Assert.assertEquals(0, released.getCount());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void closeBeforeStart() throws IOException {
+        Iterator<Integer> it = new Endless().iterator();
+        ((Closeable) it).close();
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void caughtBreakStillEnds() {
+        Iterator<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                try {
+                    yieldReturn(0);
+                    yieldBreak();
+                } catch (Throwable t) {
+                    // swallows the break
+                }
+                yieldReturn(1);
+            }
+        }.iterator();
+
+        Assert.assertEquals(0, (int) it.next());
+        Assert.assertFalse("Too many elements", it.hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void caughtCancelStillReleasesThread() throws IOException {
+        final CountDownLatch caught = new CountDownLatch(1);
+        Iterator<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                try {
+                    for (int i = 0; ; i++) {
+                        yieldReturn(i);
+                    }
+                } catch (Throwable t) {
+                    caught.countDown();
+                }
+                yieldReturn(-1);
+            }
+        }.iterator();
+        Assert.assertEquals(0, (int) it.next());
+
+        ((Closeable) it).close();
+        Assert.assertEquals(0, caught.getCount());
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test(timeout = 5000)
+    public void abandonedIteratorReleasesThread() throws InterruptedException {
+        Endless endless = new Endless();
+        Iterator<Integer> it = endless.iterator();
+        Assert.assertEquals(0, (int) it.next());
+
+        it = null;
+        while (!endless.released.await(10, TimeUnit.MILLISECONDS)) {
+            System.gc();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.yield.WeaverMain;
+import com.infomancers.collections.yield.Yielder;
+import com.infomancers.collections.yield.asm.StreamingYielderTransformer;
+import com.infomancers.collections.yield.asmbase.AbstractYielderTransformer;
+import com.infomancers.collections.yield.asmbase.WovenAttribute;
+import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
+import com.infomancers.collections.yield.asmtree.TreeYielderTransformer;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Test;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.commons.EmptyVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * Tests for weaving yielders at build time.
+ */
+public class WeaverTests {
+
+    public static class Countdown extends Yielder<Integer> {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 3; i > 0; i--) {
+                yieldReturn(i);
+            }
+        }
+    }
+
+    public static class Pair extends Yielder<String> {
+        @Override
+        protected void yieldNextCore() {
+            yieldReturn("first");
+            yieldReturn("second");
+        }
+    }
+
+    private static final String YIELDER = "com/infomancers/tests/WeaverTests$Countdown.class";
+    private static final String PAIR = "com/infomancers/tests/WeaverTests$Pair.class";
+    private static final String OTHER = "com/infomancers/tests/WeaverTests.class";
+
+    private final List<File> tempDirs = new ArrayList<File>();
+
+    @After
+    public void deleteTempDirs() {
+        for (File dir : tempDirs) {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void weaveDirectory() throws IOException {
+        File dir = createTempDir();
+        File yielder = copy(YIELDER, dir);
+        File other = copy(OTHER, dir);
+
+        Assert.assertEquals(1, WeaverMain.weave(dir, Collections.<File>emptyList(), new TreeYielderTransformer(false)));
+
+        Assert.assertTrue(isWoven(read(new FileInputStream(yielder))));
+        Assert.assertTrue(Arrays.equals(original(OTHER), read(new FileInputStream(other))));
+
+        // weaving again leaves the woven yielder alone
+        byte[] woven = read(new FileInputStream(yielder));
+        Assert.assertEquals(0, WeaverMain.weave(dir, Collections.<File>emptyList(), new TreeYielderTransformer(false)));
+        Assert.assertTrue(Arrays.equals(woven, read(new FileInputStream(yielder))));
+    }
+
+    @Test
+    public void weaveJar() throws IOException {
+        File jar = new File(createTempDir(), "classes.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest);
+        for (String name : Arrays.asList(YIELDER, OTHER)) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(original(name));
+            out.closeEntry();
+        }
+        out.close();
+
+        Assert.assertEquals(1, WeaverMain.weave(jar, Collections.<File>emptyList(), new TreeYielderTransformer(false)));
+
+        JarFile result = new JarFile(jar);
+        try {
+            Assert.assertNotNull(result.getManifest());
+            Assert.assertTrue(isWoven(read(result.getInputStream(result.getEntry(YIELDER)))));
+            Assert.assertTrue(Arrays.equals(original(OTHER), read(result.getInputStream(result.getEntry(OTHER)))));
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void wovenYielderRuns() throws Exception {
+        File dir = createTempDir();
+        File yielder = copy(YIELDER, dir);
+        WeaverMain.weave(dir, Collections.<File>emptyList(), new TreeYielderTransformer(false));
+
+        // the agent must not enhance the woven class a second time, and the
+        // thread engine must not run its enhanced yieldNextCore on a thread
+        @SuppressWarnings("unchecked")
+        Yielder<Integer> countdown = (Yielder<Integer>) load(Countdown.class.getName(), read(new FileInputStream(yielder))).newInstance();
+
+        List<Integer> result = new ArrayList<Integer>();
+        for (int i : countdown) {
+            result.add(i);
+        }
+
+        Assert.assertEquals(Arrays.asList(3, 2, 1), result);
+    }
+
+    @Test
+    public void streamingEngineWeavesTwoYieldSites() throws Exception {
+        // two yield sites make the state dispatch a LOOKUPSWITCH
+        File dir = createTempDir();
+        File yielder = copy(PAIR, dir);
+        Assert.assertEquals(1, WeaverMain.weave(dir, Collections.<File>emptyList(), new StreamingYielderTransformer(false)));
+
+        @SuppressWarnings("unchecked")
+        Yielder<String> pair = (Yielder<String>) load(Pair.class.getName(), read(new FileInputStream(yielder))).newInstance();
+
+        List<String> result = new ArrayList<String>();
+        for (String s : pair) {
+            result.add(s);
+        }
+
+        Assert.assertEquals(Arrays.asList("first", "second"), result);
+    }
+
+    @Test
+    public void failedWeaveFailsBuild() throws IOException {
+        File dir = createTempDir();
+        File yielder = copy(YIELDER, dir);
+
+        AbstractYielderTransformer broken = new AbstractYielderTransformer(false) {
+            @Override
+            protected byte[] enhanceClass(ClassReader reader, YielderInformationContainer info) {
+                throw new IllegalStateException("broken");
+            }
+        };
+
+        try {
+            WeaverMain.weave(dir, Collections.<File>emptyList(), broken);
+            Assert.fail("weaving should have failed");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertTrue(Arrays.equals(original(YIELDER), read(new FileInputStream(yielder))));
+    }
+
+    private Class<?> load(final String className, final byte[] bytes) throws ClassNotFoundException {
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                return name.equals(className) ? findClass(name) : super.loadClass(name, resolve);
+            }
+        };
+
+        return loader.loadClass(className);
+    }
+
+    private static boolean isWoven(byte[] bytes) {
+        final boolean[] woven = new boolean[1];
+
+        new ClassReader(bytes).accept(new EmptyVisitor() {
+            @Override
+            public void visitAttribute(Attribute attr) {
+                woven[0] |= WovenAttribute.TYPE.equals(attr.type);
+            }
+        }, 0);
+
+        return woven[0];
+    }
+
+    private File createTempDir() throws IOException {
+        File dir = File.createTempFile("weaver", "");
+        Assert.assertTrue(dir.delete() && dir.mkdir());
+        tempDirs.add(dir);
+
+        return dir;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    private static File copy(String name, File dir) throws IOException {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(original(name));
+        out.close();
+
+        return file;
+    }
+
+    private static byte[] original(String name) throws IOException {
+        return read(WeaverTests.class.getClassLoader().getResourceAsStream(name));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+
+        return out.toByteArray();
+    }
+}
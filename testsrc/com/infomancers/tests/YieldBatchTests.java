@@ -0,0 +1,208 @@
+package com.infomancers.tests;
+
+import com.infomancers.collections.yield.IntIterator;
+import com.infomancers.collections.yield.IntYielder;
+import com.infomancers.collections.yield.YieldBatch;
+import com.infomancers.collections.yield.Yielder;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for yielders annotated with {@link YieldBatch}.
+ */
+public class YieldBatchTests {
+
+    @YieldBatch(4)
+    private static class Range extends Yielder<Integer> {
+        private final int count;
+        // shared with the copies the iterators run on
+        private final AtomicInteger produced = new AtomicInteger();
+
+        private Range(int count) {
+            this.count = count;
+        }
+
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < count; i++) {
+                produced.incrementAndGet();
+                yieldReturn(i);
+            }
+        }
+    }
+
+    @YieldBatch(3)
+    private static class IntRange extends IntYielder {
+        @Override
+        protected void yieldNextCore() {
+            int i = 0;
+            while (true) {
+                if (i == 7) {
+                    yieldBreak();
+                }
+                yieldReturn(i++);
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void producesAllElements() {
+        for (int count = 0; count < 10; count++) {
+            List<Integer> result = new ArrayList<Integer>();
+            for (Integer value : new Range(count)) {
+                result.add(value);
+            }
+
+            Assert.assertEquals(count, result.size());
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(i, (int) result.get(i));
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void producesOneBatchAtATime() {
+        Range range = new Range(10);
+        Iterator<Integer> it = range.iterator();
+        Assert.assertEquals(0, range.produced.get());
+
+        Assert.assertTrue(it.hasNext());
+        Assert.assertEquals(4, range.produced.get());
+
+        for (int i = 0; i < 4; i++) {
+            it.next();
+        }
+        Assert.assertEquals(4, range.produced.get());
+
+        Assert.assertTrue(it.hasNext());
+        Assert.assertEquals(8, range.produced.get());
+    }
+
+    @Test(timeout = 5000)
+    public void exactMultipleOfBatch() {
+        Range range = new Range(8);
+        Iterator<Integer> it = range.iterator();
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(it.hasNext());
+            Assert.assertEquals(i, (int) it.next());
+        }
+
+        Assert.assertFalse(it.hasNext());
+        Assert.assertEquals(8, range.produced.get());
+    }
+
+    @Test(timeout = 5000)
+    public void primitiveWithBreak() {
+        IntIterator it = new IntRange().iterator();
+        int[] result = new int[7];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = it.nextInt();
+        }
+
+        Assert.assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 4, 5, 6}, result));
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class, timeout = 5000)
+    public void exhausted() {
+        Iterator<Integer> it = new Range(1).iterator();
+        it.next();
+        it.next();
+    }
+
+    @YieldBatch(4)
+    private static class Delegating extends Yielder<Integer> {
+        @Override
+        protected void yieldNextCore() {
+            yieldReturn(0);
+            yieldAll(Arrays.asList(1, 2, 3, 4, 5, 6));
+            yieldAll(new Range(3));
+            yieldReturn(7);
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void yieldAll() {
+        List<Integer> result = new ArrayList<Integer>();
+        for (Integer value : new Delegating()) {
+            result.add(value);
+        }
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 0, 1, 2, 7), result);
+    }
+
+    @YieldBatch(4)
+    private static class Tree extends Yielder<Integer> {
+        private final int depth;
+
+        private Tree(int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        protected void yieldNextCore() {
+            if (depth > 0) {
+                yieldAll(new Tree(depth - 1));
+                yieldReturn(depth);
+                yieldAll(new Tree(depth - 1));
+            }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void nestedYieldAll() {
+        List<Integer> result = new ArrayList<Integer>();
+        for (Integer value : new Tree(3)) {
+            result.add(value);
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 2, 1, 3, 1, 2, 1), result);
+    }
+
+    @YieldBatch(4)
+    private static class Failing extends Yielder<Integer> {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < 6; i++) {
+                yieldReturn(i);
+            }
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    @YieldBatch(4)
+    private static class IntFailing extends IntYielder {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < 6; i++) {
+                yieldReturn(i);
+            }
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void failureAfterBufferedElements() {
+        for (Iterator<Integer> it : Arrays.<Iterator<Integer>>asList(new Failing().iterator(), new IntFailing().iterator())) {
+            for (int i = 0; i < 6; i++) {
+                Assert.assertTrue(it.hasNext());
+                Assert.assertEquals(i, (int) it.next());
+            }
+
+            try {
+                it.hasNext();
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertEquals("failed", e.getMessage());
+            }
+            Assert.assertFalse(it.hasNext());
+        }
+    }
+}
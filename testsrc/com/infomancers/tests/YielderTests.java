@@ -4,6 +4,8 @@ import com.infomancers.collections.yield.Yielder;
 import junit.framework.Assert;
 import org.junit.Test;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -403,6 +405,9 @@ public class YielderTests {
             }
         }.iterator();
 
+        // the iterator is lazy; run the setter loop before reading the array
+        Assert.assertEquals(bools.length > 0, it.hasNext());
+
         for (boolean z : bools) {
             Assert.assertEquals(z, (boolean) it.next());
         }
@@ -519,4 +524,301 @@ public class YielderTests {
         Assert.assertEquals("ad", it.next());
         Assert.assertFalse("Too many elements", it.hasNext());
     }
+
+    @Test
+    public void yieldAllMixed() {
+        final List<Integer> middle = Arrays.asList(2, 3, 4);
+        final Iterable<Integer> tail = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                yieldReturn(5);
+                yieldAll(Arrays.<Integer>asList());
+                yieldReturn(6);
+            }
+        };
+
+        Iterable<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                yieldReturn(1);
+                yieldAll(middle);
+                yieldAll(tail);
+                yieldReturn(7);
+            }
+        };
+
+        int expected = 1;
+        for (int value : it) {
+            Assert.assertEquals(expected++, value);
+        }
+        Assert.assertEquals(8, expected);
+    }
+
+    private static Iterable<Integer> countdown(final int from) {
+        return new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                if (from >= 0) {
+                    yieldReturn(from);
+                    yieldAll(countdown(from - 1));
+                }
+            }
+        };
+    }
+
+    @Test
+    public void yieldAllInlineConstructed() {
+        // the iterables are constructed right in the enhanced method
+        Iterable<Integer> yielder = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                yieldReturn(0);
+                yieldAll(new ArrayList<Integer>(Arrays.asList(1, 2)));
+                yieldAll(new Yielder<Integer>() {
+                    @Override
+                    protected void yieldNextCore() {
+                        yieldReturn(3);
+                    }
+                });
+                yieldReturn(4);
+            }
+        };
+
+        List<Integer> result = new ArrayList<Integer>();
+        for (int i : yielder) {
+            result.add(i);
+        }
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), result);
+    }
+
+    @Test(timeout = 5000)
+    public void yieldAllDeepRecursion() {
+        // each level delegates to the next one; a loop of yieldReturn calls
+        // would nest 20000 iterators deep. The thread engine runs all levels
+        // on one thread, which needs more than the default stack.
+        String stackSize = System.setProperty("com.infomancers.collections.yield.stackSize", String.valueOf(64 << 20));
+        try {
+            int expected = 20000;
+            for (int value : countdown(20000)) {
+                Assert.assertEquals(expected--, value);
+            }
+            Assert.assertEquals(-1, expected);
+        } finally {
+            if (stackSize == null) {
+                System.clearProperty("com.infomancers.collections.yield.stackSize");
+            } else {
+                System.setProperty("com.infomancers.collections.yield.stackSize", stackSize);
+            }
+        }
+    }
+
+    @Test
+    public void lazyIteration() {
+        final int[] produced = new int[1];
+
+        Iterator<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 0; i < 3; i++) {
+                    produced[0] = i + 1;
+                    yieldReturn(i);
+                }
+            }
+        }.iterator();
+
+        Assert.assertEquals(0, produced[0]);
+        Assert.assertEquals(0, (int) it.next());
+        Assert.assertEquals(1, produced[0]);
+        Assert.assertTrue(it.hasNext());
+        Assert.assertTrue(it.hasNext());
+        Assert.assertEquals(2, produced[0]);
+        Assert.assertEquals(1, (int) it.next());
+        Assert.assertEquals(2, (int) it.next());
+        Assert.assertEquals(3, produced[0]);
+        Assert.assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void independentIterators() {
+        Iterable<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 0; i < 3; i++) {
+                    yieldReturn(i);
+                }
+            }
+        };
+
+        Iterator<Integer> first = it.iterator();
+        Assert.assertEquals(0, (int) first.next());
+        Assert.assertEquals(1, (int) first.next());
+
+        Iterator<Integer> second = it.iterator();
+        Assert.assertEquals(0, (int) second.next());
+        Assert.assertEquals(2, (int) first.next());
+        Assert.assertFalse(first.hasNext());
+        Assert.assertEquals(1, (int) second.next());
+        Assert.assertEquals(2, (int) second.next());
+        Assert.assertFalse(second.hasNext());
+    }
+
+    @Test(timeout = 2000)
+    public void concurrentIterators() throws InterruptedException {
+        final Iterable<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 1; i <= 10000; i++) {
+                    yieldReturn(i);
+                }
+            }
+        };
+
+        final long[] sums = new long[4];
+        Thread[] threads = new Thread[sums.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i : it) {
+                        sums[index] += i;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (long sum : sums) {
+            Assert.assertEquals(50005000L, sum);
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void onlyLiveLocalsPromoted() {
+        Yielder<Integer> squares = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                for (int i = 0; i < 4; i++) {
+                    int square = i * i;
+                    yieldReturn(square);
+                }
+            }
+        };
+
+        List<Integer> result = new ArrayList<Integer>();
+        for (int square : squares) {
+            result.add(square);
+        }
+
+        Assert.assertEquals(Arrays.asList(0, 1, 4, 9), result);
+
+        // the square is never used after a yield, so it isn't promoted
+        for (Field field : squares.getClass().getDeclaredFields()) {
+            Assert.assertFalse(field.getName(), field.getName().equals("slot$2"));
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void reusedSlotSplitByType() {
+        Yielder<String> strings = new Yielder<String>() {
+            @Override
+            protected void yieldNextCore() {
+                {
+                    int count = 0;
+                    while (count < 2) {
+                        yieldReturn("n" + count);
+                        count++;
+                    }
+                }
+                {
+                    String s = "x";
+                    yieldReturn(s);
+                    yieldReturn(s);
+                }
+            }
+        };
+
+        List<String> result = new ArrayList<String>();
+        for (String s : strings) {
+            result.add(s);
+        }
+
+        Assert.assertEquals(Arrays.asList("n0", "n1", "x", "x"), result);
+
+        // the int and the string share a slot, but not a (boxed) member
+        for (Field field : strings.getClass().getDeclaredFields()) {
+            Assert.assertFalse(field.getName(), field.getName().equals("slot$1"));
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void typedArrayMembers() {
+        final byte[] bytes = {1, 2, 3};
+        final boolean[] flags = {true, false, true};
+
+        Yielder<Integer> it = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                byte[] b = bytes;
+                boolean[] f = flags;
+                for (int i = 0; i < b.length; i++) {
+                    if (f[i]) {
+                        yieldReturn((int) b[i]);
+                    }
+                }
+            }
+        };
+
+        List<Integer> result = new ArrayList<Integer>();
+        for (int i : it) {
+            result.add(i);
+        }
+
+        Assert.assertEquals(Arrays.asList(1, 3), result);
+
+        // the arrays are kept in members of their own type
+        for (Field field : it.getClass().getDeclaredFields()) {
+            Assert.assertFalse(field.getName(), field.getType() == Object.class);
+        }
+    }
+
+    @Test
+    public void moreThanAByteOfYieldPoints() {
+        Yielder<Integer> yielder = new Yielder<Integer>() {
+            @Override
+            protected void yieldNextCore() {
+                yieldReturn(0); yieldReturn(1); yieldReturn(2); yieldReturn(3); yieldReturn(4); yieldReturn(5); yieldReturn(6); yieldReturn(7); yieldReturn(8); yieldReturn(9);
+                yieldReturn(10); yieldReturn(11); yieldReturn(12); yieldReturn(13); yieldReturn(14); yieldReturn(15); yieldReturn(16); yieldReturn(17); yieldReturn(18); yieldReturn(19);
+                yieldReturn(20); yieldReturn(21); yieldReturn(22); yieldReturn(23); yieldReturn(24); yieldReturn(25); yieldReturn(26); yieldReturn(27); yieldReturn(28); yieldReturn(29);
+                yieldReturn(30); yieldReturn(31); yieldReturn(32); yieldReturn(33); yieldReturn(34); yieldReturn(35); yieldReturn(36); yieldReturn(37); yieldReturn(38); yieldReturn(39);
+                yieldReturn(40); yieldReturn(41); yieldReturn(42); yieldReturn(43); yieldReturn(44); yieldReturn(45); yieldReturn(46); yieldReturn(47); yieldReturn(48); yieldReturn(49);
+                yieldReturn(50); yieldReturn(51); yieldReturn(52); yieldReturn(53); yieldReturn(54); yieldReturn(55); yieldReturn(56); yieldReturn(57); yieldReturn(58); yieldReturn(59);
+                yieldReturn(60); yieldReturn(61); yieldReturn(62); yieldReturn(63); yieldReturn(64); yieldReturn(65); yieldReturn(66); yieldReturn(67); yieldReturn(68); yieldReturn(69);
+                yieldReturn(70); yieldReturn(71); yieldReturn(72); yieldReturn(73); yieldReturn(74); yieldReturn(75); yieldReturn(76); yieldReturn(77); yieldReturn(78); yieldReturn(79);
+                yieldReturn(80); yieldReturn(81); yieldReturn(82); yieldReturn(83); yieldReturn(84); yieldReturn(85); yieldReturn(86); yieldReturn(87); yieldReturn(88); yieldReturn(89);
+                yieldReturn(90); yieldReturn(91); yieldReturn(92); yieldReturn(93); yieldReturn(94); yieldReturn(95); yieldReturn(96); yieldReturn(97); yieldReturn(98); yieldReturn(99);
+                yieldReturn(100); yieldReturn(101); yieldReturn(102); yieldReturn(103); yieldReturn(104); yieldReturn(105); yieldReturn(106); yieldReturn(107); yieldReturn(108); yieldReturn(109);
+                yieldReturn(110); yieldReturn(111); yieldReturn(112); yieldReturn(113); yieldReturn(114); yieldReturn(115); yieldReturn(116); yieldReturn(117); yieldReturn(118); yieldReturn(119);
+                yieldReturn(120); yieldReturn(121); yieldReturn(122); yieldReturn(123); yieldReturn(124); yieldReturn(125); yieldReturn(126); yieldReturn(127); yieldReturn(128); yieldReturn(129);
+                yieldReturn(130); yieldReturn(131); yieldReturn(132); yieldReturn(133); yieldReturn(134); yieldReturn(135); yieldReturn(136); yieldReturn(137); yieldReturn(138); yieldReturn(139);
+                yieldReturn(140); yieldReturn(141); yieldReturn(142); yieldReturn(143); yieldReturn(144); yieldReturn(145); yieldReturn(146); yieldReturn(147); yieldReturn(148); yieldReturn(149);
+                yieldReturn(150); yieldReturn(151); yieldReturn(152); yieldReturn(153); yieldReturn(154); yieldReturn(155); yieldReturn(156); yieldReturn(157); yieldReturn(158); yieldReturn(159);
+                yieldReturn(160); yieldReturn(161); yieldReturn(162); yieldReturn(163); yieldReturn(164); yieldReturn(165); yieldReturn(166); yieldReturn(167); yieldReturn(168); yieldReturn(169);
+                yieldReturn(170); yieldReturn(171); yieldReturn(172); yieldReturn(173); yieldReturn(174); yieldReturn(175); yieldReturn(176); yieldReturn(177); yieldReturn(178); yieldReturn(179);
+                yieldReturn(180); yieldReturn(181); yieldReturn(182); yieldReturn(183); yieldReturn(184); yieldReturn(185); yieldReturn(186); yieldReturn(187); yieldReturn(188); yieldReturn(189);
+                yieldReturn(190); yieldReturn(191); yieldReturn(192); yieldReturn(193); yieldReturn(194); yieldReturn(195); yieldReturn(196); yieldReturn(197); yieldReturn(198); yieldReturn(199);
+            }
+        };
+
+        int expected = 0;
+        for (int i : yielder) {
+            Assert.assertEquals(expected++, i);
+        }
+
+        Assert.assertEquals(200, expected);
+    }
 }
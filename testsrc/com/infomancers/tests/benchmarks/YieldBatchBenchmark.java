@@ -0,0 +1,91 @@
+package com.infomancers.tests.benchmarks;
+
+import com.infomancers.collections.yield.IntIterator;
+import com.infomancers.collections.yield.IntYielder;
+import com.infomancers.collections.yield.YieldBatch;
+import com.infomancers.collections.yield.Yielder;
+
+import java.util.Iterator;
+
+/**
+ * Compares the per-element cost of a yielder which resumes
+ * <code>yieldNextCore</code> for every element with one annotated
+ * with {@link YieldBatch}, for both boxed and <code>int</code> yielders.
+ * <p/>
+ * Run with the yielder agent:
+ * <code>java -javaagent:yielder.jar=tree com.infomancers.tests.benchmarks.YieldBatchBenchmark</code>
+ */
+public class YieldBatchBenchmark {
+    private static final int COUNT = 10000000;
+    private static final int ROUNDS = 10;
+
+    private static class Range extends Yielder<Integer> {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < COUNT; i++) {
+                yieldReturn(i);
+            }
+        }
+    }
+
+    @YieldBatch(256)
+    private static class BatchedRange extends Yielder<Integer> {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < COUNT; i++) {
+                yieldReturn(i);
+            }
+        }
+    }
+
+    private static class IntRange extends IntYielder {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < COUNT; i++) {
+                yieldReturn(i);
+            }
+        }
+    }
+
+    @YieldBatch(256)
+    private static class BatchedIntRange extends IntYielder {
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < COUNT; i++) {
+                yieldReturn(i);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("round\tresume ns\tbatched ns\tint resume ns\tint batched ns");
+
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println(round + "\t" + measure(new Range()) + "\t" + measure(new BatchedRange()) + "\t" +
+                    measure(new IntRange()) + "\t" + measure(new BatchedIntRange()));
+        }
+    }
+
+    private static double measure(Iterable<Integer> yielder) {
+        long start = System.nanoTime();
+        long sum = 0;
+        Iterator<Integer> it = yielder.iterator();
+        if (it instanceof IntIterator) {
+            IntIterator ints = (IntIterator) it;
+            while (ints.hasNext()) {
+                sum += ints.nextInt();
+            }
+        } else {
+            while (it.hasNext()) {
+                sum += it.next();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        if (sum != (long) COUNT * (COUNT - 1) / 2) {
+            throw new IllegalStateException("Unexpected sum " + sum);
+        }
+
+        return Math.round(nanos * 100.0 / COUNT) / 100.0;
+    }
+}
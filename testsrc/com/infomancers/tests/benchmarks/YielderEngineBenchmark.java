@@ -0,0 +1,83 @@
+package com.infomancers.tests.benchmarks;
+
+import com.infomancers.collections.yield.Yielder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Measures the hand-off latency per element and the heap retained by a
+ * suspended yielder, for whichever engine the JVM was started with.
+ * <p/>
+ * Run once per engine:
+ * <code>
+ * java -javaagent:yielder.jar com.infomancers.tests.benchmarks.YielderEngineBenchmark
+ * java -javaagent:yielder.jar=tree com.infomancers.tests.benchmarks.YielderEngineBenchmark
+ * java -Dcom.infomancers.collections.yield.engine=thread com.infomancers.tests.benchmarks.YielderEngineBenchmark
+ * </code>
+ * The thread engine additionally reserves a thread stack per suspended
+ * yielder, which is not part of the reported heap size.
+ */
+public class YielderEngineBenchmark {
+    private static final int COUNT = 200000;
+    private static final int ROUNDS = 5;
+    private static final int SUSPENDED = 1000;
+
+    private static class Range extends Yielder<Integer> {
+        private final int count;
+
+        private Range(int count) {
+            this.count = count;
+        }
+
+        @Override
+        protected void yieldNextCore() {
+            for (int i = 0; i < count; i++) {
+                yieldReturn(i);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String engine = System.getProperty("com.infomancers.collections.yield.engine", "bytecode");
+        System.out.println("engine: " + engine);
+        System.out.println("round\thand-off ns");
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int value : new Range(COUNT)) {
+                sum += value;
+            }
+            long nanos = System.nanoTime() - start;
+
+            if (sum != (long) COUNT * (COUNT - 1) / 2) {
+                throw new IllegalStateException("Unexpected sum " + sum);
+            }
+            System.out.println(round + "\t" + nanos / COUNT);
+        }
+
+        long before = usedHeap();
+        List<Iterator<Integer>> suspended = new ArrayList<Iterator<Integer>>(SUSPENDED);
+        for (int i = 0; i < SUSPENDED; i++) {
+            Iterator<Integer> it = new Range(10).iterator();
+            it.next();
+            suspended.add(it);
+        }
+        long after = usedHeap();
+
+        System.out.println("heap bytes per suspended yielder: " + (after - before) / SUSPENDED);
+        System.out.println("live threads: " + Thread.activeCount());
+        suspended.clear();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
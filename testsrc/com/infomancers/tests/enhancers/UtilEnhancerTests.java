@@ -1,5 +1,7 @@
 package com.infomancers.tests.enhancers;
 
+import com.infomancers.collections.yield.asm.NewMember;
+import com.infomancers.collections.yield.asm.TypeDescriptor;
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
 import com.infomancers.collections.yield.asmtree.InsnEnhancer;
 import com.infomancers.collections.yield.asmtree.enhancers.ArraylengthEnhancer;
@@ -42,7 +44,8 @@ public class UtilEnhancerTests extends EnhancerTestsBase {
 
     @Test
     public void arraylength() {
-        YielderInformationContainer info = new TestYIC(1);
+        YielderInformationContainer info = new TestYIC(1,
+                new NewMember(1, TypeDescriptor.Object));
 
         final AbstractInsnNode insn = new InsnNode(Opcodes.ARRAYLENGTH);
         InsnList original = createList(
@@ -61,4 +64,26 @@ public class UtilEnhancerTests extends EnhancerTestsBase {
         compareLists(expected, original);
     }
 
+    @Test
+    public void arraylength_typedMember() {
+        NewMember member = new NewMember(1, TypeDescriptor.Object);
+        member.setDesc("[I");
+        YielderInformationContainer info = new TestYIC(1, member);
+
+        final AbstractInsnNode insn = new InsnNode(Opcodes.ARRAYLENGTH);
+        InsnList original = createList(
+                new VarInsnNode(Opcodes.ALOAD, 1),
+                insn);
+
+        InsnList expected = createList(
+                new VarInsnNode(Opcodes.ALOAD, 1),
+                new InsnNode(Opcodes.ARRAYLENGTH)
+        );
+
+        InsnEnhancer enhancer = new ArraylengthEnhancer();
+
+        enhancer.enhance(owner, original, null, info, insn);
+
+        compareLists(expected, original);
+    }
 }
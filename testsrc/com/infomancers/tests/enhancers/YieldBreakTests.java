@@ -1,15 +1,20 @@
 package com.infomancers.tests.enhancers;
 
+import com.infomancers.collections.yield.asm.NewMember;
+import com.infomancers.collections.yield.asm.TypeDescriptor;
 import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
 import com.infomancers.collections.yield.asmtree.InsnEnhancer;
+import com.infomancers.collections.yield.asmtree.enhancers.ReturnEnhancer;
 import com.infomancers.collections.yield.asmtree.enhancers.YieldBreakEnhancer;
 import com.infomancers.tests.TestYIC;
 import org.junit.Test;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
 
 /**
  * Copyright (c) 2009, Aviad Ben Dov
@@ -61,4 +66,52 @@ public class YieldBreakTests extends EnhancerTestsBase {
 
         compareLists(expected, original);
     }
+
+    @Test
+    public void yieldBreakReleasesReferences() {
+        YielderInformationContainer info = new TestYIC(1,
+                new NewMember(1, TypeDescriptor.Integer),
+                new NewMember(2, TypeDescriptor.Object));
+
+        final AbstractInsnNode insn = new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldBreak", "()V");
+        InsnList original = createList(insn);
+
+        InsnList expected = createList(
+                new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldBreak", "()V"),
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new InsnNode(Opcodes.ACONST_NULL),
+                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "slot$2", "Ljava/lang/Object;"),
+                new InsnNode(Opcodes.RETURN)
+        );
+
+        InsnEnhancer enhancer = new YieldBreakEnhancer();
+
+        enhancer.enhance(owner, original, null, info, insn);
+
+        compareLists(expected, original);
+    }
+
+    @Test
+    public void returnReleasesReferences() {
+        YielderInformationContainer info = new TestYIC(0,
+                new NewMember(1, TypeDescriptor.Object),
+                new NewMember(2, TypeDescriptor.Integer));
+
+        final AbstractInsnNode insn = new InsnNode(Opcodes.RETURN);
+        InsnList original = createList(insn);
+
+        InsnList expected = createList(
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new InsnNode(Opcodes.ACONST_NULL),
+                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "slot$1", "Ljava/lang/Object;"),
+                new InsnNode(Opcodes.RETURN)
+        );
+
+        InsnEnhancer enhancer = new ReturnEnhancer();
+
+        AbstractInsnNode result = enhancer.enhance(owner, original, null, info, insn);
+
+        compareLists(expected, original);
+        org.junit.Assert.assertSame(original.getFirst(), result);
+    }
 }
@@ -4,6 +4,7 @@ import com.infomancers.collections.yield.asmbase.YielderInformationContainer;
 import com.infomancers.collections.yield.asmtree.InsnEnhancer;
 import com.infomancers.collections.yield.asmtree.enhancers.YieldReturnEnhancer;
 import com.infomancers.tests.TestYIC;
+import junit.framework.Assert;
 import org.junit.Test;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
@@ -54,7 +55,7 @@ public class YieldReturnTests extends EnhancerTestsBase {
                 new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldReturn", "(Ljava/lang/Object;)V"),
                 new VarInsnNode(Opcodes.ALOAD, 0),
                 new IntInsnNode(Opcodes.BIPUSH, 1),
-                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "state$", "B"),
+                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "state$", "I"),
                 new InsnNode(Opcodes.RETURN),
                 new LabelNode()
         );
@@ -82,7 +83,7 @@ public class YieldReturnTests extends EnhancerTestsBase {
                 new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldReturn", "(Ljava/lang/Object;)V"),
                 new VarInsnNode(Opcodes.ALOAD, 0),
                 new IntInsnNode(Opcodes.BIPUSH, 1),
-                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "state$", "B"),
+                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "state$", "I"),
                 new InsnNode(Opcodes.RETURN),
                 new LabelNode()
         );
@@ -95,5 +96,63 @@ public class YieldReturnTests extends EnhancerTestsBase {
         compareLists(expected, original);
     }
 
+    @Test
+    public void yieldReturn_batched() {
+        TestYIC info = new TestYIC(1);
+        info.setBatched(true);
+
+        final AbstractInsnNode insn = new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldReturn", "(Ljava/lang/Object;)V");
+        InsnList original = createList(
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                insn
+        );
 
+        InsnList expected = createList(
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldReturn", "(Ljava/lang/Object;)V"),
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "isBatchFull", "()Z"),
+                new JumpInsnNode(Opcodes.IFEQ, null),
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new IntInsnNode(Opcodes.BIPUSH, 1),
+                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "state$", "I"),
+                new InsnNode(Opcodes.RETURN),
+                new LabelNode()
+        );
+
+        InsnEnhancer enhancer = new YieldReturnEnhancer();
+
+        enhancer.enhance(owner, original, null, info, insn);
+
+        compareLists(expected, original);
+        Assert.assertSame(original.getLast(), ((JumpInsnNode) original.get(4)).label);
+    }
+
+    @Test
+    public void yieldAll() {
+        YielderInformationContainer info = new TestYIC(1);
+
+        final AbstractInsnNode insn = new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldAll", "(Ljava/lang/Iterable;)V");
+        InsnList original = createList(
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                insn
+        );
+
+        InsnList expected = createList(
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new MethodInsnNode(Opcodes.INVOKEVIRTUAL, owner.name, "yieldAll", "(Ljava/lang/Iterable;)V"),
+                new VarInsnNode(Opcodes.ALOAD, 0),
+                new IntInsnNode(Opcodes.BIPUSH, 1),
+                new FieldInsnNode(Opcodes.PUTFIELD, owner.name, "state$", "I"),
+                new InsnNode(Opcodes.RETURN),
+                new LabelNode()
+        );
+
+        YieldReturnEnhancer enhancer = new YieldReturnEnhancer();
+
+        Assert.assertTrue(enhancer.shouldEnhance(insn));
+        enhancer.enhance(owner, original, null, info, insn);
+
+        compareLists(expected, original);
+    }
 }